@@ -58,6 +58,8 @@ package org.apache.commons.jrcs.diff.myers;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
 import org.apache.commons.jrcs.diff.Chunk;
 import org.apache.commons.jrcs.diff.Delta;
 import org.apache.commons.jrcs.diff.Diff;
@@ -83,6 +85,7 @@ public class MyersDiff
 {
   private static int MAXTIME = 3000;
   public boolean checkMaxTime = false;
+  private BooleanSupplier cancelCheck;
 
   /**
    * Constructs an instance of the Myers differencing algorithm.
@@ -96,6 +99,11 @@ public class MyersDiff
     this.checkMaxTime = checkMaxTime;
   }
 
+  public void setCancelCheck(BooleanSupplier cancelCheck)
+  {
+    this.cancelCheck = cancelCheck;
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -179,6 +187,11 @@ public class MyersDiff
         throw new org.jmeld.diff.MaxTimeExceededException("Algoritm is taking up to much time");
       }
 
+      if (cancelCheck != null && cancelCheck.getAsBoolean())
+      {
+        throw new CancellationException("Diff cancelled");
+      }
+
       for (int k = -d; k <= d; k += 2)
       {
         kmiddle = middle + k;
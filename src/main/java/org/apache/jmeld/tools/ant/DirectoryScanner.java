@@ -18,9 +18,16 @@ package org.apache.jmeld.tools.ant;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -28,10 +35,12 @@ import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 import org.apache.jmeld.tools.ant.taskdefs.condition.Os;
 import org.apache.jmeld.tools.ant.types.Resource;
 import org.apache.jmeld.tools.ant.types.ResourceFactory;
 import org.apache.jmeld.tools.ant.types.selectors.FileSelector;
+import org.apache.jmeld.tools.ant.types.selectors.PatternMatcher;
 import org.apache.jmeld.tools.ant.types.selectors.SelectorScanner;
 import org.apache.jmeld.tools.ant.types.selectors.SelectorUtils;
 import org.apache.jmeld.tools.ant.util.FileUtils;
@@ -131,6 +140,11 @@ public class DirectoryScanner
    */
   private boolean showStateOn;
 
+  /**
+   * Is told about every included file as soon as it is found.
+   */
+  private Consumer<FileNode> includedFileListener;
+
   /** The base directory to be scanned. */
   protected File basedir;
 
@@ -211,70 +225,33 @@ public class DirectoryScanner
    *
    * @since Ant 1.6
    */
-  private Set scannedDirs = new HashSet();
+  private Set<Object> scannedDirs = new HashSet<Object>();
 
   /**
-   * Set of all include patterns that are full file names and don't contain any wildcards.
-   *
-   * <p>
-   * If this instance is not case sensitive, the file names get turned to lower case.
-   * </p>
+   * The include patterns compiled into one matcher.
    *
    * <p>
    * Gets lazily initialized on the first invocation of isIncluded or isExcluded and cleared at the end of the scan
    * method (cleared in clearCaches, actually).
    * </p>
-   *
-   * @since Ant 1.6.3
    */
-  private List<String> includeNonPatterns = new ArrayList<String>();
+  private PatternMatcher includeMatcher;
 
   /**
-   * Set of all include patterns that are full file names and don't contain any wildcards.
-   *
-   * <p>
-   * If this instance is not case sensitive, the file names get turned to lower case.
-   * </p>
-   *
-   * <p>
-   * Gets lazily initialized on the first invocation of isIncluded or isExcluded and cleared at the end of the scan
-   * method (cleared in clearCaches, actually).
-   * </p>
-   *
-   * @since Ant 1.6.3
+   * The exclude patterns compiled into one matcher.
    */
-  private List<String> excludeNonPatterns = new ArrayList<String>();
+  private PatternMatcher excludeMatcher;
 
   /**
-   * Array of all include patterns that contain wildcards.
-   *
-   * <p>
-   * Gets lazily initialized on the first invocation of isIncluded or isExcluded and cleared at the end of the scan
-   * method (cleared in clearCaches, actually).
-   * </p>
-   *
-   * @since Ant 1.6.3
+   * The exclude patterns that end with "**" (without the "**") compiled into one matcher. A directory that matches
+   * does not have to be scanned.
    */
-  private List<String> includePatterns;
+  private PatternMatcher contentsExcludeMatcher;
 
   /**
-   * Array of all exclude patterns that contain wildcards.
-   *
-   * <p>
-   * Gets lazily initialized on the first invocation of isIncluded or isExcluded and cleared at the end of the scan
-   * method (cleared in clearCaches, actually).
-   * </p>
-   *
-   * @since Ant 1.6.3
+   * Have the matchers for in- and excludes been initialized?
    */
-  private List<String> excludePatterns;
-
-  /**
-   * Have the non-pattern sets and pattern arrays for in- and excludes been initialized?
-   *
-   * @since Ant 1.6.3
-   */
-  private boolean areNonPatternSetsReady = false;
+  private boolean areMatchersReady = false;
 
   /**
    * Scanning flag.
@@ -838,6 +815,7 @@ public class DirectoryScanner
             {
               accountForIncludedDir(currentelement,
                                     myfile,
+                                    null,
                                     true);
             }
             else
@@ -989,17 +967,52 @@ public class DirectoryScanner
     {
       throw new BuildException("dir must not be null.");
     }
-    else if (!dir.exists())
+
+    scandir(dir,
+            null,
+            vpath,
+            fast);
+  }
+
+  /**
+   * The entries of a directory are listed together with their attributes. On most platforms this needs one stat per
+   * entry (on windows the attributes are even part of the listing). The attributes are used to determine the type of
+   * an entry and are kept in the FileNode so they don't have to be read again.
+   *
+   * @param dirAttributes
+   *          the attributes of dir or null if they are not known yet.
+   */
+  private void scandir(File dir,
+      BasicFileAttributes dirAttributes,
+      String vpath,
+      boolean fast)
+  {
+    List<Entry> entries;
+    String name;
+    File file;
+    BasicFileAttributes attributes;
+
+    if (dirAttributes == null)
     {
-      throw new BuildException(dir + " doesn't exists.");
+      try
+      {
+        dirAttributes = Files.readAttributes(dir.toPath(),
+                                             BasicFileAttributes.class);
+      }
+      catch (IOException ex)
+      {
+        throw new BuildException(dir + " doesn't exists.");
+      }
     }
-    else if (!dir.isDirectory())
+
+    if (!dirAttributes.isDirectory())
     {
       throw new BuildException(dir + " is not a directory.");
     }
 
     // avoid double scanning of directories, can only happen in fast mode
-    if (fast && hasBeenScanned(dir))
+    if (fast && hasBeenScanned(dir,
+                               dirAttributes))
     {
       return;
     }
@@ -1007,62 +1020,28 @@ public class DirectoryScanner
     setState("Scan directory: %s",
              vpath);
 
-    String[] newfiles = dir.list();
+    entries = listWithAttributes(dir);
 
-    if (newfiles == null)
+    for (Entry entry : entries)
     {
-      /*
-       * two reasons are mentioned in the API docs for File.list
-       * (1) dir is not a directory. This is impossible as
-       *     we wouldn't get here in this case.
-       * (2) an IO error occurred (why doesn't it throw an exception
-       *     then???)
-       */
-      throw new BuildException("IO error scanning directory " + dir.getAbsolutePath());
-    }
-    if (!followSymlinks)
-    {
-      List<String> noLinks = new ArrayList<String>();
-      for (int i = 0; i < newfiles.length; i++)
+      name = vpath + entry.name;
+      file = new File(dir,
+                      entry.name);
+      attributes = entry.attributes;
+
+      if (!followSymlinks && attributes.isSymbolicLink())
       {
-        try
-        {
-          if (FILE_UTILS.isSymbolicLink(dir,
-                                        newfiles[i]))
-          {
-            String name = vpath + newfiles[i];
-            File file = new File(dir,
-                                 newfiles[i]);
-            (file.isDirectory() ? dirsExcluded : filesExcluded).add(name);
-          }
-          else
-          {
-            noLinks.add(newfiles[i]);
-          }
-        }
-        catch (IOException ioe)
-        {
-          String msg = "IOException caught while checking " + "for links, couldn't get canonical path!";
-          // will be caught and redirected to Ant's logging system
-          System.err.println(msg);
-          noLinks.add(newfiles[i]);
-        }
+        (file.isDirectory() ? dirsExcluded : filesExcluded).add(name);
+        continue;
       }
 
-      newfiles = noLinks.toArray(new String[noLinks.size()]);
-    }
-
-    for (int i = 0; i < newfiles.length; i++)
-    {
-      String name = vpath + newfiles[i];
-      File file = new File(dir,
-                           newfiles[i]);
-      if (file.isDirectory())
+      if (attributes.isDirectory())
       {
         if (isIncluded(name))
         {
           accountForIncludedDir(name,
                                 file,
+                                attributes,
                                 fast);
         }
         else
@@ -1072,6 +1051,7 @@ public class DirectoryScanner
           if (fast && couldHoldIncluded(name) && !contentsExcluded(name))
           {
             scandir(file,
+                    attributes,
                     name + File.separator,
                     fast);
           }
@@ -1079,17 +1059,18 @@ public class DirectoryScanner
         if (!fast)
         {
           scandir(file,
+                  attributes,
                   name + File.separator,
                   fast);
         }
       }
-      else if (file.isFile())
+      else if (attributes.isRegularFile())
       {
         if (isIncluded(name))
         {
           accountForIncludedFile(name,
                                  file,
-                                 dir);
+                                 attributes);
         }
         else
         {
@@ -1100,6 +1081,71 @@ public class DirectoryScanner
     }
   }
 
+  /**
+   * List the entries of a directory with their attributes. Symbolic links are followed if followSymlinks is true.
+   * Entries whose attributes can't be read (a broken link for instance) are skipped.
+   */
+  private List<Entry> listWithAttributes(File dir)
+  {
+    List<Entry> entries;
+    Path start;
+
+    entries = new ArrayList<Entry>();
+    start = dir.toPath();
+
+    try
+    {
+      Files.walkFileTree(start,
+                         followSymlinks ? EnumSet.of(FileVisitOption.FOLLOW_LINKS)
+                                        : EnumSet.noneOf(FileVisitOption.class),
+                         1,
+                         new SimpleFileVisitor<Path>()
+                         {
+                           @Override
+                           public FileVisitResult visitFile(Path path,
+                               BasicFileAttributes attributes)
+                           {
+                             entries.add(new Entry(path.getFileName().toString(),
+                                                   attributes));
+                             return FileVisitResult.CONTINUE;
+                           }
+
+                           @Override
+                           public FileVisitResult visitFileFailed(Path path,
+                               IOException ex)
+                               throws IOException
+                           {
+                             if (path.equals(start))
+                             {
+                               throw ex;
+                             }
+
+                             return FileVisitResult.CONTINUE;
+                           }
+                         });
+    }
+    catch (IOException ex)
+    {
+      throw new BuildException("IO error scanning directory " + dir.getAbsolutePath(),
+                               ex);
+    }
+
+    return entries;
+  }
+
+  private static class Entry
+  {
+    private String name;
+    private BasicFileAttributes attributes;
+
+    Entry(String name,
+        BasicFileAttributes attributes)
+    {
+      this.name = name;
+      this.attributes = attributes;
+    }
+  }
+
   /**
    * Process included file.
    * 
@@ -1110,8 +1156,10 @@ public class DirectoryScanner
    */
   private void accountForIncludedFile(String name,
       File file,
-      File dir)
+      BasicFileAttributes attributes)
   {
+    FileNode fileNode;
+
     if (filesIncludedMap.get(name) != null || filesExcluded.contains(name) || filesDeselected.contains(name))
     {
       return;
@@ -1126,9 +1174,17 @@ public class DirectoryScanner
     {
       included = true;
       filesIncluded.add(name);
+      fileNode = attributes == null ? new FileNode(name,
+                                                   file)
+                                    : new FileNode(name,
+                                                   file,
+                                                   attributes);
       filesIncludedMap.put(name,
-                           new FileNode(name,
-                                        file));
+                           fileNode);
+      if (includedFileListener != null)
+      {
+        includedFileListener.accept(fileNode);
+      }
     }
     else
     {
@@ -1149,6 +1205,7 @@ public class DirectoryScanner
    */
   private void accountForIncludedDir(String name,
       File file,
+      BasicFileAttributes attributes,
       boolean fast)
   {
     if (dirsIncluded.contains(name) || dirsExcluded.contains(name) || dirsDeselected.contains(name))
@@ -1166,8 +1223,11 @@ public class DirectoryScanner
       included = true;
       dirsIncluded.add(name);
       dirsIncludedMap.put(name,
-                          new FileNode(name,
-                                       file));
+                          attributes == null ? new FileNode(name,
+                                                            file)
+                                             : new FileNode(name,
+                                                            file,
+                                                            attributes));
     }
     else
     {
@@ -1177,6 +1237,7 @@ public class DirectoryScanner
     if (fast && couldHoldIncluded(name) && !contentsExcluded(name))
     {
       scandir(file,
+              attributes,
               name + File.separator,
               fast);
     }
@@ -1192,23 +1253,33 @@ public class DirectoryScanner
    */
   protected boolean isIncluded(String name)
   {
-    ensureNonPatternSetsReady();
+    ensureMatchersReady();
 
-    if (isCaseSensitive() ? includeNonPatterns.contains(name) : includeNonPatterns.contains(name.toUpperCase()))
-    {
-      return true;
-    }
+    return includeMatcher.matches(name);
+  }
 
-    for (String includePattern : includePatterns)
-    {
-      if (matchPath(includePattern,
-                    name,
-                    isCaseSensitive()))
-      {
-        return true;
-      }
-    }
-    return false;
+  /**
+   * Test whether a file with this name would be included by a scan: it matches at least one include pattern and no
+   * exclude pattern. The file itself is not examined.
+   *
+   * @param name
+   *          The name to match, relative to the base directory. Must not be <code>null</code>.
+   */
+  public boolean isIncludedFile(String name)
+  {
+    return isIncluded(name) && !isExcluded(name);
+  }
+
+  /**
+   * Test whether a scan would look into a directory with this name: it could hold included files and its contents are
+   * not excluded. The directory itself is not examined.
+   *
+   * @param name
+   *          The name of the directory, relative to the base directory. Must not be <code>null</code>.
+   */
+  public boolean isScannedDirectory(String name)
+  {
+    return couldHoldIncluded(name) && !contentsExcluded(name);
   }
 
   /**
@@ -1221,44 +1292,15 @@ public class DirectoryScanner
    */
   protected boolean couldHoldIncluded(String name)
   {
+    ensureMatchersReady();
+
     if (!isMorePowerfulThanExcludes(name,
                                     null))
     {
       return false;
     }
 
-    for (String include : includes)
-    {
-      if (matchPatternStart(include,
-                            name,
-                            isCaseSensitive())
-          && isMorePowerfulThanExcludes(name,
-                                        include)
-          && isDeeper(include,
-                      name))
-      {
-        return true;
-      }
-    }
-    return false;
-  }
-
-  /**
-   * Verify that a pattern specifies files deeper than the level of the specified file.
-   * 
-   * @param pattern
-   *          the pattern to check.
-   * @param name
-   *          the name to check.
-   * @return whether the pattern is deeper than the name.
-   * @since Ant 1.6.3
-   */
-  private boolean isDeeper(String pattern,
-      String name)
-  {
-    List p = SelectorUtils.tokenizePath(pattern);
-    List n = SelectorUtils.tokenizePath(name);
-    return p.contains("**") || p.size() > n.size();
+    return includeMatcher.couldMatchBelow(name);
   }
 
   /**
@@ -1299,18 +1341,10 @@ public class DirectoryScanner
    */
   private boolean contentsExcluded(String name)
   {
+    ensureMatchersReady();
+
     name = (name.endsWith(File.separator)) ? name : name + File.separator;
-    for (String exclude : excludes)
-    {
-      if (exclude.endsWith("**") && SelectorUtils.matchPath(exclude.substring(0,
-                                                                              exclude.length() - 2),
-                                                            name,
-                                                            isCaseSensitive()))
-      {
-        return true;
-      }
-    }
-    return false;
+    return contentsExcludeMatcher.matches(name);
   }
 
   /**
@@ -1323,22 +1357,9 @@ public class DirectoryScanner
    */
   protected boolean isExcluded(String name)
   {
-    ensureNonPatternSetsReady();
+    ensureMatchersReady();
 
-    if (isCaseSensitive() ? excludeNonPatterns.contains(name) : excludeNonPatterns.contains(name.toUpperCase()))
-    {
-      return true;
-    }
-    for (String excludePattern : excludePatterns)
-    {
-      if (matchPath(excludePattern,
-                    name,
-                    isCaseSensitive()))
-      {
-        return true;
-      }
-    }
-    return false;
+    return excludeMatcher.matches(name);
   }
 
   /**
@@ -1715,8 +1736,16 @@ public class DirectoryScanner
    *
    * @since Ant 1.6
    */
-  private boolean hasBeenScanned(File dir)
+  private boolean hasBeenScanned(File dir,
+      BasicFileAttributes attributes)
   {
+    // The file key (device and inode) identifies a directory without
+    //   resolving its canonical path.
+    if (attributes.fileKey() != null)
+    {
+      return !scannedDirs.add(attributes.fileKey());
+    }
+
     try
     {
       return !scannedDirs.add(dir.getCanonicalFile());
@@ -1746,58 +1775,39 @@ public class DirectoryScanner
   private synchronized void clearCaches()
   {
     fileListMap.clear();
-    includeNonPatterns.clear();
-    excludeNonPatterns.clear();
-    includePatterns = new ArrayList<String>();
-    excludePatterns = new ArrayList<String>();
-    areNonPatternSetsReady = false;
-  }
-
-  /**
-   * Ensure that the in|exclude &quot;patterns&quot; have been properly divided up.
-   *
-   * @since Ant 1.6.3
-   */
-  private synchronized void ensureNonPatternSetsReady()
-  {
-    if (!areNonPatternSetsReady)
-    {
-      includePatterns = fillNonPatternSet(includeNonPatterns,
-                                          includes);
-      excludePatterns = fillNonPatternSet(excludeNonPatterns,
-                                          excludes);
-      areNonPatternSetsReady = true;
-    }
+    includeMatcher = null;
+    excludeMatcher = null;
+    contentsExcludeMatcher = null;
+    areMatchersReady = false;
   }
 
   /**
-   * Add all patterns that are not real patterns (do not contain wildcards) to the set and returns the real patterns.
-   *
-   * @param set
-   *          Set to populate.
-   * @param patterns
-   *          String[] of patterns.
-   * @since Ant 1.6.3
+   * Ensure that the in|exclude &quot;patterns&quot; have been compiled.
    */
-  private List<String> fillNonPatternSet(List<String> set,
-      List<String> patterns)
+  private synchronized void ensureMatchersReady()
   {
-    List<String> al;
+    List<String> contentsExcludes;
 
-    al = new ArrayList<String>(patterns.size());
-    for (String pattern : patterns)
+    if (!areMatchersReady)
     {
-      if (!SelectorUtils.hasWildcards(pattern))
-      {
-        set.add(isCaseSensitive() ? pattern : pattern.toUpperCase());
-      }
-      else
+      contentsExcludes = new ArrayList<String>();
+      for (String exclude : excludes)
       {
-        al.add(pattern);
+        if (exclude.endsWith("**"))
+        {
+          contentsExcludes.add(exclude.substring(0,
+                                                 exclude.length() - 2));
+        }
       }
-    }
 
-    return set.size() == 0 ? patterns : al;
+      includeMatcher = new PatternMatcher(includes,
+                                          isCaseSensitive());
+      excludeMatcher = new PatternMatcher(excludes,
+                                          isCaseSensitive());
+      contentsExcludeMatcher = new PatternMatcher(contentsExcludes,
+                                                  isCaseSensitive());
+      areMatchersReady = true;
+    }
   }
 
   private void setState(String format,
@@ -1814,4 +1824,13 @@ public class DirectoryScanner
   {
     this.showStateOn = showStateOn;
   }
+
+  /**
+   * The listener is called (in the scanning thread) for every included file as soon as it is found. The file is also
+   * added to the included files map.
+   */
+  public void setIncludedFileListener(Consumer<FileNode> includedFileListener)
+  {
+    this.includedFileListener = includedFileListener;
+  }
 }
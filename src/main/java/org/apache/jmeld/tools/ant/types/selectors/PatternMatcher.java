@@ -0,0 +1,399 @@
+/*
+ * Copyright  2002-2004 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.jmeld.tools.ant.types.selectors;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * A list of patterns compiled into one matcher. A path matches if it matches at least one of the patterns, with the
+ * same rules as {@link SelectorUtils#matchPath(String, String, boolean)}.
+ * </p>
+ * <p>
+ * The patterns are split into path elements and kept in a tree. Patterns that start with the same elements share the
+ * same nodes, so every element of a path is only compared once with a literal element (with a map lookup) and once
+ * with every distinct wildcard element. A "**" element is a node that stays active for every following element of
+ * the path.
+ * </p>
+ * <p>
+ * Because all patterns are matched at the same time it is also known when none of them can match anything below a
+ * directory, see {@link #couldMatchBelow(String)}.
+ * </p>
+ * <p>
+ * A PatternMatcher is immutable and can be used by more than one thread.
+ * </p>
+ */
+public final class PatternMatcher
+{
+  private static final String ANY_DEPTH = "**";
+
+  private final boolean isCaseSensitive;
+  private final Node relativeRoot;
+  private final Node absoluteRoot;
+  private int numberOfNodes;
+
+  /**
+   * @param patterns
+   *          The patterns. Must not be <code>null</code>.
+   * @param isCaseSensitive
+   *          Whether or not matching should be performed case sensitively.
+   */
+  public PatternMatcher(List<String> patterns,
+      boolean isCaseSensitive)
+  {
+    this.isCaseSensitive = isCaseSensitive;
+
+    relativeRoot = new Node();
+    absoluteRoot = new Node();
+    for (String pattern : patterns)
+    {
+      add(pattern);
+    }
+  }
+
+  private void add(String pattern)
+  {
+    Node node;
+
+    // When pattern starts with a File.separator, the path has to start
+    // with a File.separator and the other way around.
+    node = pattern.startsWith(File.separator) ? absoluteRoot : relativeRoot;
+    for (String element : tokenize(pattern))
+    {
+      node = node.getChild(element);
+    }
+    node.accepting = true;
+  }
+
+  /**
+   * Tests whether or not a path matches at least one of the patterns.
+   *
+   * @param path
+   *          The path to match. Must not be <code>null</code>.
+   *
+   * @return <code>true</code> if the path matches at least one pattern, or <code>false</code> otherwise.
+   */
+  public boolean matches(String path)
+  {
+    for (Node node : walk(path))
+    {
+      if (node.accepting)
+      {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Tests whether or not a path below a directory can match one of the patterns. If this returns false the directory
+   * doesn't have to be scanned.
+   *
+   * @param directory
+   *          The path of the directory. Must not be <code>null</code>.
+   *
+   * @return <code>false</code> if no path below the directory can match a pattern.
+   */
+  public boolean couldMatchBelow(String directory)
+  {
+    for (Node node : walk(directory))
+    {
+      if (node.hasChildren())
+      {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * @return the nodes that are active after all elements of the path have been matched.
+   */
+  private List<Node> walk(String path)
+  {
+    List<Node> active;
+    List<Node> next;
+    BitSet added;
+    Node child;
+
+    active = new ArrayList<Node>();
+    added = new BitSet(numberOfNodes);
+    activate(path.startsWith(File.separator) ? absoluteRoot : relativeRoot,
+             active,
+             added);
+
+    for (String element : tokenize(path))
+    {
+      if (active.isEmpty())
+      {
+        break;
+      }
+
+      next = new ArrayList<Node>();
+      added.clear();
+      for (Node node : active)
+      {
+        if (node.anyDepth)
+        {
+          activate(node,
+                   next,
+                   added);
+        }
+
+        if (node.literals != null)
+        {
+          child = node.literals.get(isCaseSensitive ? element : toUpperCase(element));
+          if (child != null)
+          {
+            activate(child,
+                     next,
+                     added);
+          }
+        }
+
+        if (node.wildcards != null)
+        {
+          for (int i = 0; i < node.wildcards.size(); i++)
+          {
+            if (node.wildcards.get(i).matches(element))
+            {
+              activate(node.wildcardChildren.get(i),
+                       next,
+                       added);
+            }
+          }
+        }
+      }
+
+      active = next;
+    }
+
+    return active;
+  }
+
+  /**
+   * Add a node to the active nodes. A "**" child matches zero elements so it is active too.
+   */
+  private void activate(Node node,
+      List<Node> active,
+      BitSet added)
+  {
+    while (node != null && !added.get(node.id))
+    {
+      added.set(node.id);
+      active.add(node);
+      node = node.anyDepthChild;
+    }
+  }
+
+  /**
+   * Same as SelectorUtils.tokenizePath but without a Vector.
+   */
+  private static List<String> tokenize(String path)
+  {
+    List<String> elements;
+    char sep;
+    int start;
+
+    elements = new ArrayList<String>();
+    sep = File.separatorChar;
+    start = 0;
+    for (int pos = 0; pos < path.length(); pos++)
+    {
+      if (path.charAt(pos) == sep)
+      {
+        if (pos != start)
+        {
+          elements.add(path.substring(start,
+                                      pos));
+        }
+        start = pos + 1;
+      }
+    }
+    if (path.length() != start)
+    {
+      elements.add(path.substring(start));
+    }
+
+    return elements;
+  }
+
+  /**
+   * SelectorUtils.match() compares every character in upper case. String.toUpperCase() can change the length of a
+   * string so it is not used here.
+   */
+  private static String toUpperCase(String element)
+  {
+    char[] chars;
+
+    chars = element.toCharArray();
+    for (int i = 0; i < chars.length; i++)
+    {
+      chars[i] = Character.toUpperCase(chars[i]);
+    }
+
+    return new String(chars);
+  }
+
+  private class Node
+  {
+    private final int id;
+    // This node matches any number of elements ("**").
+    private boolean anyDepth;
+    // A pattern ends at this node.
+    private boolean accepting;
+    private Map<String, Node> literals;
+    private List<Wildcard> wildcards;
+    private List<Node> wildcardChildren;
+    private Node anyDepthChild;
+
+    Node()
+    {
+      id = numberOfNodes++;
+    }
+
+    Node getChild(String element)
+    {
+      Node child;
+      String key;
+      int index;
+
+      if (element.equals(ANY_DEPTH))
+      {
+        if (anyDepthChild == null)
+        {
+          anyDepthChild = new Node();
+          anyDepthChild.anyDepth = true;
+        }
+        return anyDepthChild;
+      }
+
+      if (SelectorUtils.hasWildcards(element))
+      {
+        if (wildcards == null)
+        {
+          wildcards = new ArrayList<Wildcard>();
+          wildcardChildren = new ArrayList<Node>();
+        }
+
+        for (index = 0; index < wildcards.size(); index++)
+        {
+          if (wildcards.get(index).pattern.equals(element))
+          {
+            return wildcardChildren.get(index);
+          }
+        }
+
+        child = new Node();
+        wildcards.add(new Wildcard(element));
+        wildcardChildren.add(child);
+        return child;
+      }
+
+      if (literals == null)
+      {
+        literals = new HashMap<String, Node>();
+      }
+
+      key = isCaseSensitive ? element : toUpperCase(element);
+      child = literals.get(key);
+      if (child == null)
+      {
+        child = new Node();
+        literals.put(key,
+                     child);
+      }
+      return child;
+    }
+
+    boolean hasChildren()
+    {
+      return anyDepth || literals != null || wildcards != null || anyDepthChild != null;
+    }
+  }
+
+  /**
+   * An element with wildcards. Most of them are like "*.java" (one '*' and no '?') and they are matched without
+   * SelectorUtils.match().
+   */
+  private class Wildcard
+  {
+    private final String pattern;
+    private final boolean simple;
+    private final String prefix;
+    private final String suffix;
+
+    Wildcard(String pattern)
+    {
+      int star;
+
+      this.pattern = pattern;
+
+      star = pattern.indexOf('*');
+      simple = star != -1 && pattern.indexOf('*',
+                                             star + 1) == -1 && pattern.indexOf('?') == -1;
+      prefix = simple ? pattern.substring(0,
+                                          star) : null;
+      suffix = simple ? pattern.substring(star + 1) : null;
+    }
+
+    boolean matches(String element)
+    {
+      if (!simple)
+      {
+        return SelectorUtils.match(pattern,
+                                   element,
+                                   isCaseSensitive);
+      }
+
+      return element.length() >= prefix.length() + suffix.length()
+             && regionEquals(element,
+                             0,
+                             prefix)
+             && regionEquals(element,
+                             element.length() - suffix.length(),
+                             suffix);
+    }
+
+    private boolean regionEquals(String element,
+        int offset,
+        String part)
+    {
+      char c1;
+      char c2;
+
+      for (int i = 0; i < part.length(); i++)
+      {
+        c1 = element.charAt(offset + i);
+        c2 = part.charAt(i);
+        if (c1 != c2 && (isCaseSensitive || Character.toUpperCase(c1) != Character.toUpperCase(c2)))
+        {
+          return false;
+        }
+      }
+
+      return true;
+    }
+  }
+}
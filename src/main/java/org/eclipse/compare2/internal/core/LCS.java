@@ -13,6 +13,9 @@
  *******************************************************************************/
 package org.eclipse.compare2.internal.core;
 
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+
 /* Used to determine the change set responsible for each line */
 public abstract class LCS
 {
@@ -23,11 +26,22 @@ public abstract class LCS
   private static final double POW_LIMIT = 1.5; // limit the time to
   // D^POW_LIMIT
 
+  private static final long PATH_MEMORY_PER_DIFFERENCE = 2 * 2 * 4 + 24; // the
+  // bytes needed per difference to find a middle snake
+
+  private static final long PATH_MEMORY_OVERHEAD = 2 * 2 * 4 + 64;
+
   private int max_differences; // the maximum number of differences from
   // each end to consider
 
   private int length;
 
+  private long memoryLimit; // the maximum number of bytes to use, 0 means
+  // no limit
+
+  private BooleanSupplier cancelCheck; // stops the computation if it
+  // returns true
+
   /**
    * Myers' algorithm for longest common subsequence. O((M + N)D) worst case time, O(M + N + D^2) expected time, O(M +
    * N) space (http://citeseer.ist.psu.edu/myers86ond.html)
@@ -58,6 +72,20 @@ public abstract class LCS
                                             POW_LIMIT - 1.0);
     }
 
+    if (this.memoryLimit > 0)
+    {
+      long available = this.memoryLimit - getLcsMemory(length1);
+      if (available < getPathMemory(1))
+      {
+        // Not even the result fits, report everything as changed
+        this.length = 0;
+        return;
+      }
+
+      this.max_differences = (int) Math.min(this.max_differences,
+                                            (available - PATH_MEMORY_OVERHEAD) / PATH_MEMORY_PER_DIFFERENCE);
+    }
+
     initializeLcs(length1);
 
     /*
@@ -90,11 +118,58 @@ public abstract class LCS
                                                                      backBoundL1,
                                                                      forwardBound,
                                                                      backBoundL2,
-                                                                     new int[2][length1 + length2 + 1],
+                                                                     new int[2][2 * this.max_differences + 2],
                                                                      new int[3]);
 
   }
 
+  /**
+   * Limit the memory used by the LCS computation. The furthest reaching D-paths are only kept for the number of
+   * differences that fit in the limit. If the sequences have more differences the middle snake is approximated, the
+   * result is still a valid but not necessarily the longest common subsequence.
+   *
+   * @param memoryLimit
+   *          the maximum number of bytes to use, 0 means no limit
+   */
+  public void setMemoryLimit(long memoryLimit)
+  {
+    this.memoryLimit = memoryLimit;
+  }
+
+  public long getMemoryLimit()
+  {
+    return this.memoryLimit;
+  }
+
+  /**
+   * The check is polled while searching for a middle snake.
+   *
+   * @param cancelCheck
+   *          stops the computation with a {@link CancellationException} if it returns true, null means the computation
+   *          can't be cancelled
+   */
+  public void setCancelCheck(BooleanSupplier cancelCheck)
+  {
+    this.cancelCheck = cancelCheck;
+  }
+
+  /**
+   * The number of bytes needed to find the middle snakes if maxDifferences are considered: 2 slots in each of the 2
+   * furthest reaching D-path arrays and an int[3] for every other diagonal in findMostProgress().
+   */
+  private static long getPathMemory(int maxDifferences)
+  {
+    return PATH_MEMORY_OVERHEAD + PATH_MEMORY_PER_DIFFERENCE * maxDifferences;
+  }
+
+  /**
+   * The number of bytes needed to store the result, see {@link #initializeLcs(int)}
+   */
+  protected long getLcsMemory(int lcsLength)
+  {
+    return 2L * 4L * lcsLength;
+  }
+
   private boolean isCappingDisabled()
   {
     return false;
@@ -117,7 +192,7 @@ public abstract class LCS
    * @param topl2
    *          Index in the 2nd sequence to end on (inclusive)
    * @param V
-   *          should be allocated as int[2][l1.length + l2.length + 1], used to store furthest reaching D-paths
+   *          should be allocated as int[2][2 * max_differences + 2], used to store furthest reaching D-paths
    * @param snake
    *          should be allocated as int[3], used to store the beginning x, y coordinates and the length of the latest
    *          snake traversed
@@ -219,7 +294,7 @@ public abstract class LCS
    * @param topl2
    *          Index in the 2nd sequence to end on (inclusive)
    * @param V
-   *          should be allocated as int[2][l1.length + l2.length + 1], used to store furthest reaching D-paths
+   *          should be allocated as int[2][2 * max_differences + 2], used to store furthest reaching D-paths
    * @param snake
    *          should be allocated as int[3], used to store the beginning x, y coordinates and the length of the middle
    *          snake
@@ -282,6 +357,10 @@ public abstract class LCS
     V[1][limit - 1] = N;
     for (int d = 0; d <= limit; d++)
     {
+      if (this.cancelCheck != null && this.cancelCheck.getAsBoolean())
+      {
+        throw new CancellationException();
+      }
 
       int start_diag = Math.max(value_to_add_forward + start_forward,
                                 -d);
@@ -15,6 +15,7 @@ package org.eclipse.compare2.rangedifferencer;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.BooleanSupplier;
 import org.eclipse.compare2.internal.core.LCS;
 
 /* package */ class RangeComparatorLCS
@@ -26,12 +27,16 @@ import org.eclipse.compare2.internal.core.LCS;
 
   public static RangeDifference[] findDifferences(AbstractRangeDifferenceFactory factory,
       IRangeComparator left,
-      IRangeComparator right)
+      IRangeComparator right,
+      long memoryLimit,
+      BooleanSupplier cancelCheck)
   {
     RangeComparatorLCS lcs = new RangeComparatorLCS(left,
                                                     right);
     try
     {
+      lcs.setMemoryLimit(memoryLimit);
+      lcs.setCancelCheck(cancelCheck);
       lcs.longestCommonSubsequence();
       return lcs.getDifferences(factory);
     }
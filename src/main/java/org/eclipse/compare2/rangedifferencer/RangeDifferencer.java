@@ -15,6 +15,7 @@ package org.eclipse.compare2.rangedifferencer;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.BooleanSupplier;
 
 /**
  * A <code>RangeDifferencer</code> finds the differences between two or three <code>IRangeComparator</code>s.
@@ -91,10 +92,70 @@ public final class RangeDifferencer
   public static RangeDifference[] findDifferences(AbstractRangeDifferenceFactory factory,
       IRangeComparator left,
       IRangeComparator right)
+  {
+    return findDifferences(factory,
+                           left,
+                           right,
+                           0,
+                           null);
+  }
+
+  /**
+   * Finds the differences between two <code>IRangeComparator</code>s within a memory limit. The LCS is computed in
+   * linear space; the limit bounds the number of differences that are considered when searching for a middle snake.
+   * If there are more differences the result is still correct but not necessarily minimal. If the limit is too small
+   * to store the result at all, the whole input is returned as one difference. The computation stops with a
+   * {@link java.util.concurrent.CancellationException} as soon as the cancel check returns true.
+   *
+   * @param left
+   *          the left range comparator
+   * @param right
+   *          the right range comparator
+   * @param memoryLimit
+   *          the maximum number of bytes to use, 0 means no limit
+   * @param cancelCheck
+   *          polled during the computation, null means the computation can't be cancelled
+   * @return an array of range differences, or an empty array if no differences were found
+   */
+  public static RangeDifference[] findDifferences(IRangeComparator left,
+      IRangeComparator right,
+      long memoryLimit,
+      BooleanSupplier cancelCheck)
+  {
+    return findDifferences(defaultFactory,
+                           left,
+                           right,
+                           memoryLimit,
+                           cancelCheck);
+  }
+
+  /**
+   * Finds the differences between two <code>IRangeComparator</code>s within a memory limit.
+   *
+   * @param factory
+   *          factory to instantiate new {@link RangeDifference}s
+   * @param left
+   *          the left range comparator
+   * @param right
+   *          the right range comparator
+   * @param memoryLimit
+   *          the maximum number of bytes to use, 0 means no limit
+   * @param cancelCheck
+   *          polled during the computation, null means the computation can't be cancelled
+   * @return an array of range differences, or an empty array if no differences were found
+   * @see #findDifferences(IRangeComparator, IRangeComparator, long, BooleanSupplier)
+   */
+  public static RangeDifference[] findDifferences(AbstractRangeDifferenceFactory factory,
+      IRangeComparator left,
+      IRangeComparator right,
+      long memoryLimit,
+      BooleanSupplier cancelCheck)
   {
     return RangeComparatorLCS.findDifferences(factory,
                                               left,
-                                              right);
+                                              right,
+                                              memoryLimit,
+                                              cancelCheck);
   }
 
   /**
@@ -16,10 +16,15 @@
  */
 package org.jmeld.diff;
 
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+import org.jmeld.JMeldException;
+
 public abstract class AbstractJMDiffAlgorithm
     implements JMDiffAlgorithmIF
 {
   private boolean checkMaxTime;
+  private BooleanSupplier cancelCheck;
 
   public AbstractJMDiffAlgorithm()
   {
@@ -34,4 +39,50 @@ public abstract class AbstractJMDiffAlgorithm
   {
     return checkMaxTime;
   }
+
+  public void setCancelCheck(BooleanSupplier cancelCheck)
+  {
+    this.cancelCheck = cancelCheck;
+  }
+
+  public BooleanSupplier getCancelCheck()
+  {
+    return cancelCheck;
+  }
+
+  /**
+   * Algorithms call this regularly so a cancelled diff stops as soon as possible.
+   */
+  protected void checkCancelled()
+      throws CancellationException
+  {
+    if (cancelCheck != null && cancelCheck.getAsBoolean())
+    {
+      throw new CancellationException("Diff cancelled");
+    }
+  }
+
+  /**
+   * Default implementation for algorithms that only know how to compare objects.
+   */
+  public JMRevision diff(int[] orig,
+      int[] rev)
+      throws JMeldException, MaxTimeExceededException
+  {
+    return diff(box(orig),
+                box(rev));
+  }
+
+  private Integer[] box(int[] array)
+  {
+    Integer[] result;
+
+    result = new Integer[array.length];
+    for (int i = 0; i < array.length; i++)
+    {
+      result[i] = array[i];
+    }
+
+    return result;
+  }
 }
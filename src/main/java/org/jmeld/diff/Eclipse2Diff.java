@@ -24,8 +24,21 @@ import org.jmeld.JMeldException;
 public class Eclipse2Diff
     extends AbstractJMDiffAlgorithm
 {
+  // Instance variables:
+  private long memoryLimit;
+
   public Eclipse2Diff()
   {
+    // Leave room for the documents and the rest of the application.
+    memoryLimit = Runtime.getRuntime().maxMemory() / 4;
+  }
+
+  /**
+   * The maximum number of bytes the LCS computation may use. 0 means no limit.
+   */
+  public void setMemoryLimit(long memoryLimit)
+  {
+    this.memoryLimit = memoryLimit;
   }
 
   public JMRevision diff(Object[] orig,
@@ -35,19 +48,35 @@ public class Eclipse2Diff
     RangeDifference[] differences;
 
     differences = RangeDifferencer.findDifferences(new RangeComparator(orig),
-                                                   new RangeComparator(rev));
+                                                   new RangeComparator(rev),
+                                                   memoryLimit,
+                                                   getCancelCheck());
 
     return buildRevision(differences,
                          orig,
                          rev);
   }
 
+  public JMRevision diff(int[] orig,
+      int[] rev)
+      throws JMeldException
+  {
+    RangeDifference[] differences;
+
+    differences = RangeDifferencer.findDifferences(new IntRangeComparator(orig),
+                                                   new IntRangeComparator(rev),
+                                                   memoryLimit,
+                                                   getCancelCheck());
+
+    return buildRevision(differences,
+                         new JMRevision(null,
+                                        null));
+  }
+
   private JMRevision buildRevision(RangeDifference[] differences,
       Object[] orig,
       Object[] rev)
   {
-    JMRevision result;
-
     if (orig == null)
     {
       throw new IllegalArgumentException("original sequence is null");
@@ -58,8 +87,14 @@ public class Eclipse2Diff
       throw new IllegalArgumentException("revised sequence is null");
     }
 
-    result = new JMRevision(orig,
-                            rev);
+    return buildRevision(differences,
+                         new JMRevision(orig,
+                                        rev));
+  }
+
+  private JMRevision buildRevision(RangeDifference[] differences,
+      JMRevision result)
+  {
     for (RangeDifference rd : differences)
     {
       result.add(new JMDelta(new JMChunk(rd.leftStart(),
@@ -121,4 +156,34 @@ public class Eclipse2Diff
       return false;
     }
   }
+
+  private class IntRangeComparator
+      implements IRangeComparator
+  {
+    private int[] idArray;
+
+    IntRangeComparator(int[] idArray)
+    {
+      this.idArray = idArray;
+    }
+
+    public int getRangeCount()
+    {
+      return idArray.length;
+    }
+
+    public boolean rangesEqual(int thisIndex,
+        IRangeComparator other,
+        int otherIndex)
+    {
+      return idArray[thisIndex] == ((IntRangeComparator) other).idArray[otherIndex];
+    }
+
+    public boolean skipRangeComparison(int length,
+        int maxLength,
+        IRangeComparator other)
+    {
+      return false;
+    }
+  }
 }
@@ -0,0 +1,377 @@
+/*
+   JMeld is a visual diff and merge tool.
+   Copyright (C) 2007  Kees Kuip
+   This library is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Lesser General Public
+   License as published by the Free Software Foundation; either
+   version 2.1 of the License, or (at your option) any later version.
+   This library is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Lesser General Public License for more details.
+   You should have received a copy of the GNU Lesser General Public
+   License along with this library; if not, write to the Free Software
+   Foundation, Inc., 51 Franklin Street, Fifth Floor,
+   Boston, MA  02110-1301  USA
+ */
+package org.jmeld.diff;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import org.jmeld.JMeldException;
+
+/**
+ * Histogram diff as implemented by git. It is an extension of the patience diff: the common lines that occur the
+ * least in the original are used as anchors and the regions between the anchors are diffed recursively.
+ * <p>
+ * Lines that are unique (like method declarations) become anchors first. This makes the diff near linear on
+ * typical source files and gives readable hunks. Files without any common line are reported as one change
+ * immediately. If a region only has lines that occur very often (empty lines, closing braces) the region is
+ * diffed with Eclipse2Diff.
+ */
+public class HistogramDiff
+    extends AbstractJMDiffAlgorithm
+{
+  // Class variables:
+  // Lines that occur more often in a region are never used as an anchor.
+  private static final int MAX_CHAIN_LENGTH = 64;
+
+  // Instance variables:
+  private int[] orig;
+  private int[] rev;
+  private int[] counts;
+  private int[] heads;
+  private int[] next;
+  private JMRevision result;
+  // The best anchor of the current region:
+  private int anchorOrgStart;
+  private int anchorOrgEnd;
+  private int anchorRevStart;
+  private int anchorRevEnd;
+  private int anchorCount;
+
+  public HistogramDiff()
+  {
+  }
+
+  public JMRevision diff(Object[] orig,
+      Object[] rev)
+      throws JMeldException
+  {
+    JMLineTable lineTable;
+    JMRevision revision;
+    JMRevision objectRevision;
+
+    if (orig == null)
+    {
+      throw new IllegalArgumentException("original sequence is null");
+    }
+
+    if (rev == null)
+    {
+      throw new IllegalArgumentException("revised sequence is null");
+    }
+
+    lineTable = new JMLineTable(orig.length + rev.length);
+    revision = diff(lineTable.intern(orig),
+                    lineTable.intern(rev));
+
+    objectRevision = new JMRevision(orig,
+                                    rev);
+    for (JMDelta delta : revision.getDeltas())
+    {
+      objectRevision.add(delta);
+    }
+
+    return objectRevision;
+  }
+
+  public JMRevision diff(int[] orig,
+      int[] rev)
+      throws JMeldException
+  {
+    Deque<int[]> regions;
+    int[] region;
+    int numberOfIds;
+
+    numberOfIds = 0;
+    for (int id : orig)
+    {
+      numberOfIds = Math.max(numberOfIds,
+                             id + 1);
+    }
+    for (int id : rev)
+    {
+      numberOfIds = Math.max(numberOfIds,
+                             id + 1);
+    }
+
+    this.orig = orig;
+    this.rev = rev;
+    counts = new int[numberOfIds];
+    heads = new int[numberOfIds];
+    Arrays.fill(heads,
+                -1);
+    next = new int[orig.length];
+    result = new JMRevision(null,
+                            null);
+
+    // Regions are kept on a stack instead of recursing so a very large
+    //   file can't overflow the stack. The region before an anchor is
+    //   pushed last so the deltas are found in ascending order.
+    regions = new ArrayDeque<int[]>();
+    regions.push(new int[] { 0, orig.length, 0, rev.length });
+    while (!regions.isEmpty())
+    {
+      checkCancelled();
+      region = regions.pop();
+      diffRegion(regions,
+                 region[0],
+                 region[1],
+                 region[2],
+                 region[3]);
+    }
+
+    return result;
+  }
+
+  private void diffRegion(Deque<int[]> regions,
+      int orgStart,
+      int orgEnd,
+      int revStart,
+      int revEnd)
+      throws JMeldException
+  {
+    while (orgStart < orgEnd && revStart < revEnd && orig[orgStart] == rev[revStart])
+    {
+      orgStart++;
+      revStart++;
+    }
+
+    while (orgEnd > orgStart && revEnd > revStart && orig[orgEnd - 1] == rev[revEnd - 1])
+    {
+      orgEnd--;
+      revEnd--;
+    }
+
+    if (orgStart == orgEnd && revStart == revEnd)
+    {
+      return;
+    }
+
+    if (orgStart == orgEnd || revStart == revEnd)
+    {
+      addDelta(orgStart,
+               orgEnd,
+               revStart,
+               revEnd);
+      return;
+    }
+
+    switch (findAnchor(orgStart,
+                       orgEnd,
+                       revStart,
+                       revEnd))
+    {
+      case FOUND:
+        regions.push(new int[] { anchorOrgEnd, orgEnd, anchorRevEnd, revEnd });
+        regions.push(new int[] { orgStart, anchorOrgStart, revStart, anchorRevStart });
+        break;
+
+      case NO_COMMON_LINES:
+        addDelta(orgStart,
+                 orgEnd,
+                 revStart,
+                 revEnd);
+        break;
+
+      case TOO_MANY_OCCURRENCES:
+        fallback(orgStart,
+                 orgEnd,
+                 revStart,
+                 revEnd);
+        break;
+    }
+  }
+
+  /**
+   * Find the longest common sequence that contains the line with the lowest number of occurrences in the original.
+   */
+  private Anchor findAnchor(int orgStart,
+      int orgEnd,
+      int revStart,
+      int revEnd)
+  {
+    boolean common;
+    int revIndex;
+
+    // Build the histogram of the original region. Every line points to
+    //   the next occurrence of the same line.
+    for (int i = orgEnd - 1; i >= orgStart; i--)
+    {
+      next[i] = heads[orig[i]];
+      heads[orig[i]] = i;
+      counts[orig[i]]++;
+    }
+
+    try
+    {
+      common = false;
+      anchorOrgStart = anchorOrgEnd = 0;
+      anchorCount = MAX_CHAIN_LENGTH + 1;
+      revIndex = revStart;
+      while (revIndex < revEnd)
+      {
+        if (counts[rev[revIndex]] > 0)
+        {
+          common = true;
+        }
+        revIndex = tryAnchor(revIndex,
+                             orgStart,
+                             orgEnd,
+                             revStart,
+                             revEnd);
+      }
+
+      if (anchorOrgEnd > anchorOrgStart)
+      {
+        return Anchor.FOUND;
+      }
+
+      return common ? Anchor.TOO_MANY_OCCURRENCES : Anchor.NO_COMMON_LINES;
+    }
+    finally
+    {
+      for (int i = orgStart; i < orgEnd; i++)
+      {
+        heads[orig[i]] = -1;
+        counts[orig[i]] = 0;
+      }
+    }
+  }
+
+  /**
+   * Try all the occurrences of rev[revIndex] in the original as an anchor. Of equally good anchors the one nearest to
+   * the middle of the region is taken. Otherwise a region with many small changes is split into a small and a large
+   * region every time and the diff becomes quadratic.
+   *
+   * @return the next index in the revised region to try.
+   */
+  private int tryAnchor(int revIndex,
+      int orgStart,
+      int orgEnd,
+      int revStart,
+      int revEnd)
+  {
+    int revNext;
+    int os;
+    int oe;
+    int rs;
+    int re;
+    int count;
+
+    revNext = revIndex + 1;
+    count = counts[rev[revIndex]];
+    if (count > MAX_CHAIN_LENGTH || count > anchorCount)
+    {
+      return revNext;
+    }
+
+    for (int orgIndex = heads[rev[revIndex]]; orgIndex != -1;)
+    {
+      count = counts[orig[orgIndex]];
+
+      os = orgIndex;
+      rs = revIndex;
+      while (os > orgStart && rs > revStart && orig[os - 1] == rev[rs - 1])
+      {
+        os--;
+        rs--;
+        count = Math.min(count,
+                         counts[orig[os]]);
+      }
+
+      oe = orgIndex + 1;
+      re = revIndex + 1;
+      while (oe < orgEnd && re < revEnd && orig[oe] == rev[re])
+      {
+        count = Math.min(count,
+                         counts[orig[oe]]);
+        oe++;
+        re++;
+      }
+
+      revNext = Math.max(revNext,
+                         re);
+
+      if (anchorOrgEnd - anchorOrgStart < oe - os || count < anchorCount
+          || (anchorOrgEnd - anchorOrgStart == oe - os && count == anchorCount
+              && Math.abs(rs + re - revStart - revEnd) < Math.abs(anchorRevStart + anchorRevEnd - revStart - revEnd)))
+      {
+        anchorOrgStart = os;
+        anchorOrgEnd = oe;
+        anchorRevStart = rs;
+        anchorRevEnd = re;
+        anchorCount = count;
+      }
+
+      // Occurrences within the sequence just found can't give a longer sequence.
+      orgIndex = next[orgIndex];
+      while (orgIndex != -1 && orgIndex < oe)
+      {
+        orgIndex = next[orgIndex];
+      }
+    }
+
+    return revNext;
+  }
+
+  private void fallback(int orgStart,
+      int orgEnd,
+      int revStart,
+      int revEnd)
+      throws JMeldException
+  {
+    Eclipse2Diff diff;
+    JMRevision revision;
+    JMChunk original;
+    JMChunk revised;
+
+    diff = new Eclipse2Diff();
+    diff.setCancelCheck(getCancelCheck());
+    revision = diff.diff(Arrays.copyOfRange(orig,
+                                            orgStart,
+                                            orgEnd),
+                         Arrays.copyOfRange(rev,
+                                            revStart,
+                                            revEnd));
+    for (JMDelta delta : revision.getDeltas())
+    {
+      original = delta.getOriginal();
+      revised = delta.getRevised();
+      addDelta(orgStart + original.getAnchor(),
+               orgStart + original.getAnchor() + original.getSize(),
+               revStart + revised.getAnchor(),
+               revStart + revised.getAnchor() + revised.getSize());
+    }
+  }
+
+  private void addDelta(int orgStart,
+      int orgEnd,
+      int revStart,
+      int revEnd)
+  {
+    result.add(new JMDelta(new JMChunk(orgStart,
+                                       orgEnd - orgStart),
+                           new JMChunk(revStart,
+                                       revEnd - revStart)));
+  }
+
+  private enum Anchor
+  {
+    FOUND,
+    NO_COMMON_LINES,
+    TOO_MANY_OCCURRENCES;
+  }
+}
@@ -16,9 +16,7 @@
  */
 package org.jmeld.diff;
 
-import java.util.List;
-import org.jmeld.util.TokenizerFactory;
-import org.jmeld.util.WordTokenizer;
+import org.jmeld.util.Ignore;
 
 public class JMDelta
 {
@@ -30,15 +28,12 @@ public class JMDelta
     CHANGE;
   }
 
-  private static boolean debug = false;
-
   // Instance variables:
   private JMChunk original;
   private JMChunk revised;
   private Type type;
   private JMRevision revision;
-  private boolean changeRevisionEvaluated;
-  private JMRevision changeRevision;
+  private Boolean reallyChanged;
 
   public JMDelta(JMChunk original,
       JMChunk revised)
@@ -81,122 +76,81 @@ public class JMDelta
 
   public void invalidateChangeRevision()
   {
-    changeRevisionEvaluated = false;
+    reallyChanged = null;
+    revision.removeChangeRevision(this);
   }
 
+  /**
+   * A change can only be reduced to nothing if some characters are ignored. In that case the change revision has to be
+   * calculated once. Only the outcome is remembered because the change revision itself can be removed from the cache.
+   */
   public boolean isReallyChanged()
   {
-    return getChangeRevision() == null || getChangeRevision().getDeltas().size() > 0;
-  }
+    Ignore ignore;
+    JMRevision changeRevision;
 
-  public JMRevision getChangeRevision()
-  {
-    if (!changeRevisionEvaluated)
+    if (reallyChanged == null)
     {
-      changeRevision = createChangeRevision();
-      changeRevisionEvaluated = true;
+      ignore = revision.getIgnore();
+      if (ignore == null || !ignore.getIgnore())
+      {
+        return true;
+      }
+
+      changeRevision = getChangeRevision();
+      reallyChanged = changeRevision == null || changeRevision.getDeltas().size() > 0;
     }
 
-    return changeRevision;
+    return reallyChanged;
   }
 
-  private JMRevision createChangeRevision()
+  /**
+   * The outcome of {@link #isReallyChanged()} if it is known without calculating the change revision.
+   *
+   * @return null if the outcome is not known yet.
+   */
+  public Boolean getKnownReallyChanged()
   {
-    char[] original1;
-    Character[] original2;
-    char[] revised1;
-    Character[] revised2;
-    List<String> o2;
-    List<String> r2;
-    JMRevision rev;
-    JMRevision rev2;
-    JMChunk o;
-    JMChunk r;
-    JMDelta d2;
-    int anchor;
-    int size;
-    WordTokenizer wt;
-    int[] oIndex;
-    int[] rIndex;
-    int oAnchor;
-    int oLength;
-    int rAnchor;
-    int rLength;
+    Ignore ignore;
 
-    original1 = revision.getOriginalString(original).toCharArray();
-    original2 = new Character[original1.length];
-    for (int j = 0; j < original1.length; j++)
+    ignore = revision.getIgnore();
+    if (ignore == null || !ignore.getIgnore())
     {
-      original2[j] = new Character(original1[j]);
+      return Boolean.TRUE;
     }
 
-    revised1 = revision.getRevisedString(revised).toCharArray();
-    revised2 = new Character[revised1.length];
-    for (int j = 0; j < revised1.length; j++)
-    {
-      revised2[j] = new Character(revised1[j]);
-    }
-
-    try
-    {
-      wt = TokenizerFactory.getInnerDiffTokenizer();
-      o2 = wt.getTokens(revision.getOriginalString(original));
-      r2 = wt.getTokens(revision.getRevisedString(revised));
-
-      rev = new JMDiff().diff(o2,
-                              r2,
-                              revision.getIgnore());
+    return reallyChanged;
+  }
 
-      oIndex = new int[o2.size()];
-      for (int i = 0; i < o2.size(); i++)
-      {
-        oIndex[i] = o2.get(i).length();
-        if (i > 0)
-        {
-          oIndex[i] += oIndex[i - 1];
-        }
-        debug("oIndex[" + i + "] = " + oIndex[i] + " \"" + o2.get(i) + "\"");
-      }
+  /**
+   * The change revision is calculated when it is asked for and is kept in a cache of the revision.
+   */
+  public JMRevision getChangeRevision()
+  {
+    JMRevision changeRevision;
 
-      rIndex = new int[r2.size()];
-      for (int i = 0; i < r2.size(); i++)
+    changeRevision = revision.getChangeRevision(this);
+    if (changeRevision == null)
+    {
+      changeRevision = createChangeRevision();
+      if (changeRevision != null)
       {
-        rIndex[i] = r2.get(i).length();
-        if (i > 0)
-        {
-          rIndex[i] += rIndex[i - 1];
-        }
-        debug("rIndex[" + i + "] = " + rIndex[i] + " \"" + r2.get(i) + "\"");
+        revision.putChangeRevision(this,
+                                   changeRevision);
+        reallyChanged = changeRevision.getDeltas().size() > 0;
       }
+    }
 
-      rev2 = new JMRevision(original2,
-                            revised2);
-      rev2.setIgnore(revision.getIgnore());
-      for (JMDelta d : rev.getDeltas())
-      {
-        o = d.getOriginal();
-        r = d.getRevised();
-
-        anchor = o.getAnchor();
-        size = o.getSize();
-        oAnchor = anchor == 0 ? 0 : oIndex[anchor - 1];
-        oLength = size > 0 ? (oIndex[anchor + size - 1] - oAnchor) : 0;
-
-        anchor = r.getAnchor();
-        size = r.getSize();
-        rAnchor = anchor == 0 ? 0 : rIndex[anchor - 1];
-        rLength = size > 0 ? (rIndex[anchor + size - 1] - rAnchor) : 0;
-
-        d2 = new JMDelta(new JMChunk(oAnchor,
-                                     oLength),
-                         new JMChunk(rAnchor,
-                                     rLength));
-        rev2.add(d2);
-
-        debug("delta = " + d + " -> " + d2);
-      }
+    return changeRevision;
+  }
 
-      return rev2;
+  private JMRevision createChangeRevision()
+  {
+    try
+    {
+      return JMWordDiff.getInstance().diff(revision.getOriginalString(original),
+                                           revision.getRevisedString(revised),
+                                           revision.getIgnore());
     }
     catch (Exception ex)
     {
@@ -246,14 +200,6 @@ public class JMDelta
     return true;
   }
 
-  private void debug(String s)
-  {
-    if (debug)
-    {
-      System.out.println(s);
-    }
-  }
-
   @Override
   public String toString()
   {
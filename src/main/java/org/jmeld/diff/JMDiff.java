@@ -20,55 +20,57 @@ import java.nio.CharBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CancellationException;
 import org.jmeld.JMeldException;
+import org.jmeld.settings.JMeldSettings;
 import org.jmeld.ui.text.AbstractBufferDocument;
 import org.jmeld.util.Ignore;
 import org.jmeld.util.StopWatch;
-import org.jmeld.util.file.CompareUtil;
+import org.jmeld.util.file.LineBuffer;
 
 public class JMDiff
 {
   // Class variables:
-  // Allocate a charBuffer once for performance. The charbuffer is used to
-  // store a 'line' without it's ignored characters.
-  static final private CharBuffer inputLine = CharBuffer.allocate(10000);
-  static final private CharBuffer outputLine = CharBuffer.allocate(10000);
-  // Instance variables:
-  private List<JMDiffAlgorithmIF> algorithms;
+  // The automatic selection chooses Myers only if the estimated number
+  //   of differences is very small. Myers' running time grows quickly
+  //   with the number of differences.
+  static final private int MYERS_MAX_DIFFERENCES = 256;
+  // If there are only a few distinct lines the estimation of the
+  //   number of differences is not reliable.
+  static final private double MIN_UNIQUE_LINE_RATIO = 0.05;
 
+  // Instance variables:
+  private JMDiffAlgorithmType algorithmType;
+
+  // Timing/Memory (msec/Mb):
+  // Myers Eclipse GNU Hunt
+  // ================================================================================
+  // 2 Totally different files (116448 lines) 31317 1510 340 195
+  // 2 Totally different files (232896 lines) 170673 212 788 354
+  // 2 Medium different files (1778583 lines) 41 55 140 24679
+  // 2 Medium different files (10673406 lines) 216 922 632 >300000
+  // 2 Equal files (1778583 lines) 32 55 133 24632
+  // 2 Equal files (10673406 lines) 121 227 581 >60000
+  //
+  // MyersDiff is the fastest but can be very slow when 2 files
+  // are very different.
+  // GNUDiff is a little bit slower than Myersdiff but performs way
+  // better if the files are very different.
+  // Don't use it because of GPL
+  // EclipseDiff looks like Myersdiff but is slower.
+  // It performs much better if the files are totally different
+  // HuntDiff (from netbeans) is very, very slow
+  // HistogramDiff needs 50 msec for the 116448 totally different lines.
+  // It is a little bit slower than Eclipse2Diff if there are only a
+  // few distinct lines.
   public JMDiff()
   {
-    MyersDiff myersDiff;
-
-    // Timing/Memory (msec/Mb):
-    // Myers Eclipse GNU Hunt
-    // ================================================================================
-    // 2 Totally different files (116448 lines) 31317 1510 340 195
-    // 2 Totally different files (232896 lines) 170673 212 788 354
-    // 2 Medium different files (1778583 lines) 41 55 140 24679
-    // 2 Medium different files (10673406 lines) 216 922 632 >300000
-    // 2 Equal files (1778583 lines) 32 55 133 24632
-    // 2 Equal files (10673406 lines) 121 227 581 >60000
-    myersDiff = new MyersDiff();
-    myersDiff.checkMaxTime(true);
-
-    // MyersDiff is the fastest but can be very slow when 2 files
-    // are very different.
-    algorithms = new ArrayList<JMDiffAlgorithmIF>();
-    // algorithms.add(myersDiff);
-
-    // GNUDiff is a little bit slower than Myersdiff but performs way
-    // better if the files are very different.
-    // Don't use it for now because of GPL
-    // algorithms.add(new GNUDiff());
-
-    // EclipseDiff looks like Myersdiff but is slower.
-    // It performs much better if the files are totally different
-    //algorithms.add(new EclipseDiff());
-    algorithms.add(new Eclipse2Diff());
-
-    // HuntDiff (from netbeans) is very, very slow
-    // algorithms.add(new HuntDiff());
+    this(JMeldSettings.getInstance().getEditor().getDiffAlgorithm());
+  }
+
+  public JMDiff(JMDiffAlgorithmType algorithmType)
+  {
+    this.algorithmType = algorithmType == null ? JMDiffAlgorithmType.AUTOMATIC : algorithmType;
   }
 
   public JMRevision diff(List<String> a,
@@ -100,6 +102,10 @@ public class JMDiff
     Object[] org;
     Object[] rev;
     long filteredTime;
+    long internedTime;
+    JMLineTable lineTable;
+    int[] orgIds;
+    int[] revIds;
 
     org = a;
     rev = b;
@@ -136,13 +142,26 @@ public class JMDiff
     }
 
     filteredTime = sp.getElapsedTime();
+    checkCancelled();
+
+    // Map every distinct line to an int id. The algorithms will then
+    //   compare ints instead of calling equals() on the lines.
+    lineTable = new JMLineTable(org.length + rev.length);
+    orgIds = lineTable.intern(org);
+    revIds = lineTable.intern(rev);
 
-    for (JMDiffAlgorithmIF algorithm : algorithms)
+    internedTime = sp.getElapsedTime() - filteredTime;
+    checkCancelled();
+
+    for (JMDiffAlgorithmIF algorithm : getAlgorithms(orgIds,
+                                                     revIds,
+                                                     lineTable.size()))
     {
       try
       {
-        revision = algorithm.diff(org,
-                                  rev);
+        algorithm.setCancelCheck(this::isCancelled);
+        revision = algorithm.diff(orgIds,
+                                  revIds);
         revision.setIgnore(ignore);
         revision.update(a,
                         b);
@@ -158,8 +177,8 @@ public class JMDiff
 
         if (a.length > 1000)
         {
-          System.out.println("diff took " + sp.getElapsedTime() + " msec. [filter=" + filteredTime + " msec]["
-              + algorithm.getClass() + "]");
+          System.out.println("diff took " + sp.getElapsedTime() + " msec. [filter=" + filteredTime + " msec][intern="
+              + internedTime + " msec, " + lineTable.size() + " unique lines][" + algorithm.getClass() + "]");
         }
 
         return revision;
@@ -175,11 +194,134 @@ public class JMDiff
           throw ex;
         }
       }
+      catch (CancellationException ex)
+      {
+        throw new JMeldException("Diff cancelled",
+                                 ex);
+      }
     }
 
     return null;
   }
 
+  /**
+   * The algorithms to try in that order. The next algorithm is tried if an algorithm exceeds it's maximum time.
+   */
+  private List<JMDiffAlgorithmIF> getAlgorithms(int[] orgIds,
+      int[] revIds,
+      int numberOfIds)
+  {
+    List<JMDiffAlgorithmIF> result;
+    JMDiffAlgorithmType type;
+
+    type = algorithmType;
+    if (type == JMDiffAlgorithmType.AUTOMATIC)
+    {
+      type = selectAlgorithm(orgIds,
+                             revIds,
+                             numberOfIds);
+    }
+
+    result = new ArrayList<JMDiffAlgorithmIF>();
+    result.add(type.createAlgorithm());
+    if (type != JMDiffAlgorithmType.ECLIPSE2)
+    {
+      // Eclipse2Diff bounds it's running time.
+      result.add(JMDiffAlgorithmType.ECLIPSE2.createAlgorithm());
+    }
+
+    return result;
+  }
+
+  /**
+   * Select an algorithm with some cheap statistics of the input.
+   */
+  private JMDiffAlgorithmType selectAlgorithm(int[] orgIds,
+      int[] revIds,
+      int numberOfIds)
+  {
+    int start;
+    int orgEnd;
+    int revEnd;
+    boolean[] inOrg;
+    boolean[] inRev;
+    int estimatedDifferences;
+
+    // The common prefix and suffix are not part of the differences.
+    start = 0;
+    orgEnd = orgIds.length;
+    revEnd = revIds.length;
+    while (start < orgEnd && start < revEnd && orgIds[start] == revIds[start])
+    {
+      start++;
+    }
+    while (orgEnd > start && revEnd > start && orgIds[orgEnd - 1] == revIds[revEnd - 1])
+    {
+      orgEnd--;
+      revEnd--;
+    }
+
+    if (numberOfIds < MIN_UNIQUE_LINE_RATIO * (orgIds.length + revIds.length))
+    {
+      return JMDiffAlgorithmType.ECLIPSE2;
+    }
+
+    // A line that doesn't occur on the other side is certainly a difference.
+    inOrg = new boolean[numberOfIds];
+    inRev = new boolean[numberOfIds];
+    for (int i = start; i < orgEnd; i++)
+    {
+      inOrg[orgIds[i]] = true;
+    }
+    for (int i = start; i < revEnd; i++)
+    {
+      inRev[revIds[i]] = true;
+    }
+
+    estimatedDifferences = 0;
+    for (int i = start; i < orgEnd; i++)
+    {
+      if (!inRev[orgIds[i]])
+      {
+        estimatedDifferences++;
+      }
+    }
+    for (int i = start; i < revEnd; i++)
+    {
+      if (!inOrg[revIds[i]])
+      {
+        estimatedDifferences++;
+      }
+    }
+
+    if (estimatedDifferences <= MYERS_MAX_DIFFERENCES)
+    {
+      return JMDiffAlgorithmType.MYERS;
+    }
+
+    // Histogram anchors on the unique lines so it stays fast if the
+    //   files are very different.
+    return JMDiffAlgorithmType.HISTOGRAM;
+  }
+
+  /**
+   * A diff that is executed in the background is cancelled by interrupting it's thread. The algorithms poll the same
+   * check.
+   */
+  private void checkCancelled()
+      throws JMeldException
+  {
+    if (isCancelled())
+    {
+      throw new JMeldException("Diff cancelled");
+    }
+  }
+
+  private boolean isCancelled()
+  {
+    return Thread.currentThread().isInterrupted();
+  }
+
   private void adjustRevision(JMRevision revision,
       Object[] orgArray,
       JMString[] orgArrayFiltered,
@@ -260,8 +402,11 @@ public class JMDiff
     List<JMString> result;
     JMString jms;
     int lineNumber;
+    LineBuffer lineBuffer;
+    CharBuffer outputLine;
 
-    synchronized (inputLine)
+    lineBuffer = LineBuffer.acquire();
+    try
     {
       // System.out.println("> start");
       result = new ArrayList<JMString>(array.length);
@@ -270,11 +415,9 @@ public class JMDiff
       {
         lineNumber++;
 
-        inputLine.clear();
-        inputLine.put(o.toString());
-        CompareUtil.removeIgnoredChars(inputLine,
-                                       ignore,
-                                       outputLine);
+        lineBuffer.clear();
+        lineBuffer.put(o.toString());
+        outputLine = lineBuffer.removeIgnoredChars(ignore);
         if (outputLine.remaining() == 0)
         {
           continue;
@@ -288,6 +431,10 @@ public class JMDiff
         // System.out.println(" " + jms);
       }
     }
+    finally
+    {
+      lineBuffer.release();
+    }
 
     return result.toArray(new JMString[result.size()]);
   }
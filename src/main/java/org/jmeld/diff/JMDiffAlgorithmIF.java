@@ -16,13 +16,27 @@
  */
 package org.jmeld.diff;
 
+import java.util.function.BooleanSupplier;
 import org.jmeld.JMeldException;
 
 public interface JMDiffAlgorithmIF
 {
   public void checkMaxTime(boolean checkMaxTime);
 
+  /**
+   * The algorithm stops with a {@link java.util.concurrent.CancellationException} as soon as the check returns true.
+   */
+  public void setCancelCheck(BooleanSupplier cancelCheck);
+
   public JMRevision diff(Object[] orig,
       Object[] rev)
       throws JMeldException, MaxTimeExceededException;
+
+  /**
+   * Diff 2 sequences of line ids (see {@link JMLineTable}). Equal ids mean equal lines. The arrays of the returned
+   * revision are not the original lines, the caller is responsible to update them.
+   */
+  public JMRevision diff(int[] orig,
+      int[] rev)
+      throws JMeldException, MaxTimeExceededException;
 }
@@ -0,0 +1,67 @@
+/*
+   JMeld is a visual diff and merge tool.
+   Copyright (C) 2007  Kees Kuip
+   This library is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Lesser General Public
+   License as published by the Free Software Foundation; either
+   version 2.1 of the License, or (at your option) any later version.
+   This library is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Lesser General Public License for more details.
+   You should have received a copy of the GNU Lesser General Public
+   License along with this library; if not, write to the Free Software
+   Foundation, Inc., 51 Franklin Street, Fifth Floor,
+   Boston, MA  02110-1301  USA
+ */
+package org.jmeld.diff;
+
+/**
+ * The diff algorithms a user can choose from. AUTOMATIC lets JMDiff choose an algorithm for every diff.
+ */
+public enum JMDiffAlgorithmType
+{
+  AUTOMATIC("automatic"),
+  MYERS("Myers"),
+  ECLIPSE("Eclipse"),
+  ECLIPSE2("Eclipse (compare2)"),
+  HISTOGRAM("Histogram");
+
+  // instance variables:
+  private String text;
+
+  private JMDiffAlgorithmType(String text)
+  {
+    this.text = text;
+  }
+
+  public JMDiffAlgorithmIF createAlgorithm()
+  {
+    JMDiffAlgorithmIF algorithm;
+
+    switch (this)
+    {
+      case MYERS:
+        algorithm = new MyersDiff();
+        // Myers can be very slow if the files are very different.
+        algorithm.checkMaxTime(true);
+        return algorithm;
+
+      case ECLIPSE:
+        return new EclipseDiff();
+
+      case HISTOGRAM:
+        return new HistogramDiff();
+
+      case ECLIPSE2:
+      default:
+        return new Eclipse2Diff();
+    }
+  }
+
+  @Override
+  public String toString()
+  {
+    return text;
+  }
+}
@@ -0,0 +1,203 @@
+/*
+   JMeld is a visual diff and merge tool.
+   Copyright (C) 2007  Kees Kuip
+   This library is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Lesser General Public
+   License as published by the Free Software Foundation; either
+   version 2.1 of the License, or (at your option) any later version.
+   This library is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Lesser General Public License for more details.
+   You should have received a copy of the GNU Lesser General Public
+   License along with this library; if not, write to the Free Software
+   Foundation, Inc., 51 Franklin Street, Fifth Floor,
+   Boston, MA  02110-1301  USA
+ */
+package org.jmeld.diff;
+
+/**
+ * Maps every distinct line to a dense int id. Both sides of a diff are interned in the same table so the diff
+ * algorithms only have to compare ints instead of calling equals() on the lines themselves.
+ */
+public class JMLineTable
+{
+  // Instance variables:
+  private int[] slots;
+  private int[] hashes;
+  private Object[] lines;
+  private int size;
+
+  public JMLineTable(int expectedSize)
+  {
+    int capacity;
+
+    capacity = 16;
+    while (capacity < expectedSize * 2)
+    {
+      capacity <<= 1;
+    }
+
+    slots = new int[capacity];
+    hashes = new int[capacity / 2];
+    lines = new Object[capacity / 2];
+  }
+
+  public int[] intern(Object[] array)
+  {
+    int[] result;
+
+    result = new int[array.length];
+    for (int i = 0; i < array.length; i++)
+    {
+      result[i] = intern(array[i]);
+    }
+
+    return result;
+  }
+
+  public int intern(Object line)
+  {
+    int hash;
+    int mask;
+    int index;
+    int id;
+
+    hash = line == null ? 0 : line.hashCode();
+    mask = slots.length - 1;
+    index = mix(hash) & mask;
+
+    // Open addressing with linear probing. A slot contains id + 1 so 0 means the slot is empty.
+    while ((id = slots[index]) != 0)
+    {
+      id--;
+      if (hashes[id] == hash && equals(lines[id],
+                                       line))
+      {
+        return id;
+      }
+
+      index = (index + 1) & mask;
+    }
+
+    id = size++;
+    if (id == lines.length)
+    {
+      grow();
+      return intern(line,
+                    hash,
+                    id);
+    }
+
+    return intern(line,
+                  hash,
+                  id,
+                  index);
+  }
+
+  /**
+   * The number of distinct lines in this table.
+   */
+  public int size()
+  {
+    return size;
+  }
+
+  public Object getLine(int id)
+  {
+    return lines[id];
+  }
+
+  private int intern(Object line,
+      int hash,
+      int id)
+  {
+    int mask;
+    int index;
+
+    mask = slots.length - 1;
+    index = mix(hash) & mask;
+    while (slots[index] != 0)
+    {
+      index = (index + 1) & mask;
+    }
+
+    return intern(line,
+                  hash,
+                  id,
+                  index);
+  }
+
+  private int intern(Object line,
+      int hash,
+      int id,
+      int index)
+  {
+    slots[index] = id + 1;
+    hashes[id] = hash;
+    lines[id] = line;
+
+    return id;
+  }
+
+  private void grow()
+  {
+    int[] newHashes;
+    Object[] newLines;
+    int mask;
+    int index;
+
+    newHashes = new int[hashes.length * 2];
+    newLines = new Object[lines.length * 2];
+    System.arraycopy(hashes,
+                     0,
+                     newHashes,
+                     0,
+                     hashes.length);
+    System.arraycopy(lines,
+                     0,
+                     newLines,
+                     0,
+                     lines.length);
+    hashes = newHashes;
+    lines = newLines;
+
+    // Rehash all the known ids into a slot table twice the size of the id table.
+    slots = new int[newLines.length * 2];
+    mask = slots.length - 1;
+    for (int id = 0; id < size - 1; id++)
+    {
+      index = mix(hashes[id]) & mask;
+      while (slots[index] != 0)
+      {
+        index = (index + 1) & mask;
+      }
+      slots[index] = id + 1;
+    }
+  }
+
+  private static boolean equals(Object o1,
+      Object o2)
+  {
+    if (o1 == o2)
+    {
+      return true;
+    }
+
+    if (o1 == null || o2 == null)
+    {
+      return false;
+    }
+
+    return o1.equals(o2);
+  }
+
+  /**
+   * Spread the bits of the hash. String hashcodes of similar lines differ mostly in the lower bits.
+   */
+  private static int mix(int hash)
+  {
+    hash *= 0x9E3779B9;
+    return hash ^ (hash >>> 16);
+  }
+}
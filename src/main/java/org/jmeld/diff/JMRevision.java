@@ -17,21 +17,28 @@
 package org.jmeld.diff;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
 import java.util.List;
-import org.jmeld.util.DiffUtil;
+import java.util.Map;
 import org.jmeld.util.Ignore;
 
 public class JMRevision
 {
   // Class variables:
-  private static boolean incrementalUpdateActivated = false;
+  private static boolean incrementalUpdateActivated = true;
+  // The number of lines around an edit that are always re-diffed.
+  private static final int INCREMENTAL_CONTEXT = 3;
+  // The maximum number of change revisions kept in memory.
+  private static final int CHANGE_REVISION_CACHE_SIZE = 500;
 
   // Instance variables:
   private Object[] orgArray;
   private Object[] revArray;
-  private LinkedList<JMDelta> deltaList;
+  // Sorted on anchor (on both sides).
+  private ArrayList<JMDelta> deltaList;
   private Ignore ignore;
+  private Map<JMDelta, JMRevision> changeRevisions;
+  private int modificationCount;
 
   public JMRevision(Object[] orgArray,
       Object[] revArray)
@@ -39,7 +46,7 @@ public class JMRevision
     this.orgArray = orgArray;
     this.revArray = revArray;
 
-    deltaList = new LinkedList<JMDelta>();
+    deltaList = new ArrayList<JMDelta>();
 
     ignore = Ignore.NULL_IGNORE;
   }
@@ -58,6 +65,16 @@ public class JMRevision
   {
     deltaList.add(delta);
     delta.setRevision(this);
+    modificationCount++;
+  }
+
+  /**
+   * The number of times the delta's have been changed. Can be used to find out if something that has been derived from
+   * the delta's is still up to date.
+   */
+  public int getModificationCount()
+  {
+    return modificationCount;
   }
 
   public List<JMDelta> getDeltas()
@@ -65,6 +82,80 @@ public class JMRevision
     return deltaList;
   }
 
+  /**
+   * Binary search for the delta that contains a line or is just before it.
+   *
+   * @return the index of the last delta whose anchor is at or before the line, -1 if there is none.
+   */
+  public int getDeltaIndex(boolean original,
+      int line)
+  {
+    int low;
+    int high;
+    int mid;
+
+    low = 0;
+    high = deltaList.size();
+    while (low < high)
+    {
+      mid = (low + high) >>> 1;
+      if (getChunk(deltaList.get(mid),
+                   original).getAnchor() <= line)
+      {
+        low = mid + 1;
+      }
+      else
+      {
+        high = mid;
+      }
+    }
+
+    return low - 1;
+  }
+
+  /**
+   * The change revisions are only calculated for the delta's that are displayed. Only the most recently used ones are
+   * kept. JMDelta does not override hashCode() so the delta's are kept by identity.
+   */
+  synchronized JMRevision getChangeRevision(JMDelta delta)
+  {
+    if (changeRevisions == null)
+    {
+      return null;
+    }
+
+    return changeRevisions.get(delta);
+  }
+
+  synchronized void putChangeRevision(JMDelta delta,
+      JMRevision changeRevision)
+  {
+    if (changeRevisions == null)
+    {
+      changeRevisions = new LinkedHashMap<JMDelta, JMRevision>(16,
+                                                               0.75f,
+                                                               true)
+      {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<JMDelta, JMRevision> eldest)
+        {
+          return size() > CHANGE_REVISION_CACHE_SIZE;
+        }
+      };
+    }
+
+    changeRevisions.put(delta,
+                        changeRevision);
+  }
+
+  synchronized void removeChangeRevision(JMDelta delta)
+  {
+    if (changeRevisions != null)
+    {
+      changeRevisions.remove(delta);
+    }
+  }
+
   public void update(Object[] oArray,
       Object[] rArray)
   {
@@ -82,155 +173,168 @@ public class JMRevision
       int startLine,
       int numberOfLines)
   {
+    int oldOrgSize;
+    int oldRevSize;
+
+    oldOrgSize = getOrgSize();
+    oldRevSize = getRevSize();
+
     update(oArray,
            rArray);
+
+    if (!incrementalUpdateActivated)
+    {
+      return false;
+    }
+
+    // Only one side can be changed by an edit.
+    if (original ? getRevSize() != oldRevSize : getOrgSize() != oldOrgSize)
+    {
+      return false;
+    }
+
     return incrementalUpdate(original,
                              startLine,
-                             numberOfLines);
+                             original ? getOrgSize() - oldOrgSize : getRevSize() - oldRevSize);
   }
 
+  /**
+   * Re-diff only the lines around an edit and splice the result into the delta list.
+   * <p>
+   * The window starts at the edited line (minus some context) and is widened until no delta crosses its boundaries. The
+   * lines just outside the window are therefore unchanged lines and can be mapped to the other side. Delta's before the
+   * window are kept, delta's after the window are shifted by the number of lines that were inserted or removed.
+   * 
+   * @param original
+   *          true if the original side has been edited.
+   * @param startLine
+   *          the first line that has been edited.
+   * @param numberOfLines
+   *          the number of lines inserted (positive) or removed (negative).
+   */
   private boolean incrementalUpdate(boolean original,
       int startLine,
       int numberOfLines)
   {
     JMChunk chunk;
-    List<JMDelta> deltaListToRemove;
-    List<JMChunk> chunkListToChange;
-    int endLine;
-    int orgStartLine;
-    int orgEndLine;
-    int revStartLine;
-    int revEndLine;
+    int editedSize;
+    int windowStart;
+    int windowEnd;
+    int otherStart;
+    int otherEnd;
+    int firstIndex;
+    int lastIndex;
+    boolean widened;
+    Object[] editedArray;
+    Object[] otherArray;
+    Object[] editedArrayDelta;
+    Object[] otherArrayDelta;
     JMRevision deltaRevision;
-    int index;
-    Object[] orgArrayDelta;
-    Object[] revArrayDelta;
-    JMDelta firstDelta;
-    int length;
 
-    // It is not yet prroduction ready !
-    if (!incrementalUpdateActivated)
+    editedArray = original ? orgArray : revArray;
+    otherArray = original ? revArray : orgArray;
+    editedSize = editedArray.length;
+
+    // The window in coordinates of the edited side BEFORE the edit.
+    windowStart = Math.max(0,
+                           startLine - INCREMENTAL_CONTEXT);
+    windowEnd = Math.min(editedSize,
+                         startLine + Math.max(0,
+                                              numberOfLines)
+                             + 1 + INCREMENTAL_CONTEXT)
+        - numberOfLines;
+    if (windowStart > windowEnd)
     {
       return false;
     }
 
-    System.out.println((original ? "left" : "right") + " changed starting at line " + startLine + " #" + numberOfLines);
-
-    if (original)
+    // Widen the window until no delta crosses it's boundaries. The
+    //   delta's are sorted so they can be searched for.
+    firstIndex = Math.max(0,
+                          getDeltaIndex(original,
+                                        windowStart));
+    while (firstIndex < deltaList.size() && getEnd(deltaList.get(firstIndex),
+                                                   original) < windowStart)
     {
-      orgStartLine = startLine;
-      orgEndLine = startLine + (numberOfLines < 0 ? 0 : numberOfLines) + 1;
-      revStartLine = DiffUtil.getRevisedLine(this,
-                                             startLine);
-      revEndLine = DiffUtil.getRevisedLine(this,
-                                           startLine + (numberOfLines > 0 ? 0 : -numberOfLines))
-          + 1;
+      firstIndex++;
     }
-    else
-    {
-      revStartLine = startLine;
-      revEndLine = startLine + (numberOfLines < 0 ? 0 : numberOfLines) + 1;
-      orgStartLine = DiffUtil.getOriginalLine(this,
-                                              startLine);
-      orgEndLine = DiffUtil.getOriginalLine(this,
-                                            startLine + (numberOfLines > 0 ? 0 : -numberOfLines))
-          + 1;
-    }
-
-    System.out.println("orgStartLine=" + orgStartLine);
-    System.out.println("orgEndLine  =" + orgEndLine);
-    System.out.println("revStartLine=" + revStartLine);
-    System.out.println("revEndLine  =" + revEndLine);
-
-    deltaListToRemove = new ArrayList<JMDelta>();
-    chunkListToChange = new ArrayList<JMChunk>();
-
-    // Find the delta's of this change!
-    endLine = startLine + Math.abs(numberOfLines);
-    for (JMDelta delta : deltaList)
+    lastIndex = firstIndex - 1;
+    do
     {
-      chunk = original ? delta.getOriginal() : delta.getRevised();
-
-      // The change is above this Chunk! It will not change!
-      if (endLine < chunk.getAnchor() - 5)
+      widened = false;
+      while (firstIndex > 0 && getEnd(deltaList.get(firstIndex - 1),
+                                      original) >= windowStart)
       {
-        continue;
+        firstIndex--;
+        widened = true;
       }
-
-      // The change is below this chunk! The anchor of the chunk will be changed!
-      if (startLine > chunk.getAnchor() + chunk.getSize() + 5)
+      if (lastIndex < firstIndex - 1)
       {
-        // No need to change chunks if the numberoflines haven't changed.
-        if (numberOfLines != 0)
-        {
-          chunkListToChange.add(chunk);
-        }
-        continue;
+        lastIndex = firstIndex - 1;
       }
-
-      // This chunk is affected by the change. It will eventually be removed.
-      // The lines that are affected will be compared and they will insert
-      // new delta's if necessary.
-      deltaListToRemove.add(delta);
-
-      // Revise the start and end if there are overlapping chunks.
-      chunk = delta.getOriginal();
-      if (chunk.getAnchor() < orgStartLine)
+      while (lastIndex + 1 < deltaList.size() && getChunk(deltaList.get(lastIndex + 1),
+                                                          original).getAnchor() <= windowEnd)
       {
-        orgStartLine = chunk.getAnchor();
-      }
-      if (chunk.getAnchor() + chunk.getSize() > orgEndLine)
-      {
-        orgEndLine = chunk.getAnchor() + chunk.getSize();
+        lastIndex++;
+        widened = true;
       }
 
-      chunk = delta.getRevised();
-      if (chunk.getAnchor() < revStartLine)
-      {
-        revStartLine = chunk.getAnchor();
-      }
-      if (chunk.getAnchor() + chunk.getSize() > revEndLine)
+      if (lastIndex >= firstIndex)
       {
-        revEndLine = chunk.getAnchor() + chunk.getSize();
+        windowStart = Math.min(windowStart,
+                               getChunk(deltaList.get(firstIndex),
+                                        original).getAnchor());
+        windowEnd = Math.max(windowEnd,
+                             getEnd(deltaList.get(lastIndex),
+                                    original));
       }
     }
+    while (widened);
+
+    // Map the window to the other side. The boundaries are unchanged lines
+    //   so they are shifted as much as the end of the delta before them.
+    otherStart = windowStart;
+    if (firstIndex > 0)
+    {
+      otherStart += getEnd(deltaList.get(firstIndex - 1),
+                           !original)
+          - getEnd(deltaList.get(firstIndex - 1),
+                   original);
+    }
+    otherEnd = windowEnd;
+    if (lastIndex >= 0)
+    {
+      otherEnd += getEnd(deltaList.get(lastIndex),
+                         !original)
+          - getEnd(deltaList.get(lastIndex),
+                   original);
+    }
+
+    // The edited side has already been changed.
+    windowEnd += numberOfLines;
+    if (windowEnd > editedSize || otherEnd > otherArray.length || otherStart > otherEnd)
+    {
+      return false;
+    }
 
-    orgStartLine = orgStartLine < 0 ? 0 : orgStartLine;
-    revStartLine = revStartLine < 0 ? 0 : revStartLine;
-
-    // Check with 'max' if we are dealing with the end of the file.
-    length = Math.min(orgArray.length,
-                      orgEndLine)
-        - orgStartLine;
-    orgArrayDelta = new Object[length];
-    System.arraycopy(orgArray,
-                     orgStartLine,
-                     orgArrayDelta,
+    editedArrayDelta = new Object[windowEnd - windowStart];
+    System.arraycopy(editedArray,
+                     windowStart,
+                     editedArrayDelta,
                      0,
-                     orgArrayDelta.length);
-
-    length = Math.min(revArray.length,
-                      revEndLine)
-        - revStartLine;
-    revArrayDelta = new Object[length];
-    System.arraycopy(revArray,
-                     revStartLine,
-                     revArrayDelta,
+                     editedArrayDelta.length);
+
+    otherArrayDelta = new Object[otherEnd - otherStart];
+    System.arraycopy(otherArray,
+                     otherStart,
+                     otherArrayDelta,
                      0,
-                     revArrayDelta.length);
+                     otherArrayDelta.length);
 
     try
     {
-      for (int i = 0; i < orgArrayDelta.length; i++)
-      {
-        System.out.println("  org[" + i + "]:" + orgArrayDelta[i]);
-      }
-      for (int i = 0; i < revArrayDelta.length; i++)
-      {
-        System.out.println("  rev[" + i + "]:" + revArrayDelta[i]);
-      }
-      deltaRevision = new JMDiff().diff(orgArrayDelta,
-                                        revArrayDelta,
+      deltaRevision = new JMDiff().diff(original ? editedArrayDelta : otherArrayDelta,
+                                        original ? otherArrayDelta : editedArrayDelta,
                                         ignore);
     }
     catch (Exception ex)
@@ -240,100 +344,50 @@ public class JMRevision
     }
 
     // OK, Make the changes now
-    if (!deltaListToRemove.isEmpty())
-    {
-      for (JMDelta delta : deltaListToRemove)
-      {
-        deltaList.remove(delta);
-      }
-    }
-
-    for (JMChunk c : chunkListToChange)
-    {
-      c.setAnchor(c.getAnchor() + numberOfLines);
-    }
-
-    // Prepare the diff's to be copied into this revision.
     for (JMDelta delta : deltaRevision.deltaList)
     {
-      chunk = delta.getOriginal();
-      chunk.setAnchor(chunk.getAnchor() + orgStartLine);
+      chunk = getChunk(delta,
+                       original);
+      chunk.setAnchor(chunk.getAnchor() + windowStart);
 
-      chunk = delta.getRevised();
-      chunk.setAnchor(chunk.getAnchor() + revStartLine);
+      chunk = getChunk(delta,
+                       !original);
+      chunk.setAnchor(chunk.getAnchor() + otherStart);
+
+      delta.setRevision(this);
     }
 
-    // Find insertion index point
-    if (deltaRevision.deltaList.size() > 0)
+    for (int i = lastIndex + 1; i < deltaList.size(); i++)
     {
-      firstDelta = deltaRevision.deltaList.get(0);
-      index = 0;
-      for (JMDelta delta : deltaList)
-      {
-        if (delta.getOriginal().getAnchor() > firstDelta.getOriginal().getAnchor())
-        {
-          break;
-        }
-
-        index++;
-      }
-
-      for (JMDelta diffDelta : deltaRevision.deltaList)
-      {
-        diffDelta.setRevision(this);
-        deltaList.add(index,
-                      diffDelta);
-        index++;
-      }
+      chunk = getChunk(deltaList.get(i),
+                       original);
+      chunk.setAnchor(chunk.getAnchor() + numberOfLines);
     }
 
+    deltaList.subList(firstIndex,
+                      lastIndex + 1).clear();
+    deltaList.addAll(firstIndex,
+                     deltaRevision.deltaList);
+    modificationCount++;
+
     return true;
   }
 
-  private void insert(JMDelta delta)
+  private JMChunk getChunk(JMDelta delta,
+      boolean original)
   {
-    int index;
-    int anchor;
-
-    index = 0;
-    anchor = delta.getOriginal().getAnchor();
-    for (JMDelta d : deltaList)
-    {
-      if (d.getOriginal().getAnchor() > anchor)
-      {
-        deltaList.add(index,
-                      delta);
-        return;
-      }
-
-      index++;
-    }
-
-    deltaList.add(delta);
+    return original ? delta.getOriginal() : delta.getRevised();
   }
 
-  private JMDelta findDelta(boolean original,
-      int anchor,
-      int size)
+  private int getEnd(JMDelta delta,
+      boolean original)
   {
     JMChunk chunk;
 
-    size = size == 0 ? 1 : size;
-    for (JMDelta delta : deltaList)
-    {
-      chunk = original ? delta.getOriginal() : delta.getRevised();
-      if (anchor >= chunk.getAnchor() && anchor <= chunk.getAnchor() + chunk.getSize())
-      {
-        return delta;
-      }
-
-      if (anchor + size >= chunk.getAnchor() && anchor + size <= chunk.getAnchor() + chunk.getSize())
-      {
-        return delta;
-      }
-    }
+    chunk = getChunk(delta,
+                     original);
 
-    return null;
+    return chunk.getAnchor() + chunk.getSize();
   }
 
   public int getOrgSize()
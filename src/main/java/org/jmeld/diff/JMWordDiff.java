@@ -0,0 +1,645 @@
+/*
+   JMeld is a visual diff and merge tool.
+   Copyright (C) 2007  Kees Kuip
+   This library is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Lesser General Public
+   License as published by the Free Software Foundation; either
+   version 2.1 of the License, or (at your option) any later version.
+   This library is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Lesser General Public License for more details.
+   You should have received a copy of the GNU Lesser General Public
+   License along with this library; if not, write to the Free Software
+   Foundation, Inc., 51 Franklin Street, Fifth Floor,
+   Boston, MA  02110-1301  USA
+ */
+package org.jmeld.diff;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import org.jmeld.util.Ignore;
+import org.jmeld.util.file.CompareUtil;
+
+/**
+ * Diff of the words within a changed chunk. The result is a revision with the changed ranges of characters.
+ * <p>
+ * The text is split into runs of word characters and runs of other characters (the same tokens as the regular
+ * expression "\b\B*"). The tokens are mapped to int ids and diffed with Myers' linear space algorithm. All the
+ * buffers are kept between calls, so apart from the result nothing is allocated when the buffers are large enough.
+ * An instance is not thread safe, use getInstance() to get the instance of the current thread.
+ */
+public class JMWordDiff
+{
+  // Class variables:
+  private static final ThreadLocal<JMWordDiff> instances = ThreadLocal.withInitial(JMWordDiff::new);
+
+  // Instance variables:
+  private Sequence org;
+  private Sequence rev;
+  // The distinct (normalized) tokens. A slot contains id + 1.
+  private int[] slots;
+  private int[] tokenHashes;
+  private int[] tokenStarts;
+  private int[] tokenLengths;
+  private char[] pool;
+  private int poolSize;
+  private int numberOfTokens;
+  private CharBuffer inputToken;
+  private CharBuffer outputToken;
+  // Furthest reaching paths of the forward and backward search.
+  private int[] v1;
+  private int[] v2;
+  // Every edit is stored as: orgStart, orgSize, revStart, revSize
+  private int[] edits;
+  private int numberOfEdits;
+
+  private JMWordDiff()
+  {
+    org = new Sequence();
+    rev = new Sequence();
+    slots = new int[256];
+    tokenHashes = new int[128];
+    tokenStarts = new int[128];
+    tokenLengths = new int[128];
+    pool = new char[1024];
+    inputToken = CharBuffer.allocate(256);
+    outputToken = CharBuffer.allocate(256);
+    v1 = new int[256];
+    v2 = new int[256];
+    edits = new int[64];
+  }
+
+  public static JMWordDiff getInstance()
+  {
+    return instances.get();
+  }
+
+  public JMRevision diff(CharSequence original,
+      CharSequence revised,
+      Ignore ignore)
+  {
+    JMRevision result;
+    int orgAnchor;
+    int orgSize;
+    int revAnchor;
+    int revSize;
+
+    Arrays.fill(slots,
+                0);
+    numberOfTokens = 0;
+    poolSize = 0;
+    numberOfEdits = 0;
+
+    if (ignore != null && !ignore.getIgnore())
+    {
+      ignore = null;
+    }
+
+    org.init(original,
+             ignore);
+    rev.init(revised,
+             ignore);
+
+    diff(0,
+         org.size,
+         0,
+         rev.size);
+
+    result = new JMRevision(null,
+                            null);
+    result.setIgnore(ignore);
+    for (int i = 0; i < numberOfEdits; i += 4)
+    {
+      orgAnchor = org.getTokenAnchor(edits[i]);
+      orgSize = org.getTokenSize(edits[i],
+                                 edits[i + 1]);
+      revAnchor = rev.getTokenAnchor(edits[i + 2]);
+      revSize = rev.getTokenSize(edits[i + 2],
+                                 edits[i + 3]);
+
+      result.add(new JMDelta(new JMChunk(org.getCharOffset(orgAnchor),
+                                         org.getCharOffset(orgAnchor + orgSize) - org.getCharOffset(orgAnchor)),
+                             new JMChunk(rev.getCharOffset(revAnchor),
+                                         rev.getCharOffset(revAnchor + revSize) - rev.getCharOffset(revAnchor))));
+    }
+
+    return result;
+  }
+
+  private void diff(int orgStart,
+      int orgEnd,
+      int revStart,
+      int revEnd)
+  {
+    int[] o;
+    int[] r;
+
+    o = org.ids;
+    r = rev.ids;
+
+    while (orgStart < orgEnd && revStart < revEnd && o[orgStart] == r[revStart])
+    {
+      orgStart++;
+      revStart++;
+    }
+
+    while (orgStart < orgEnd && revStart < revEnd && o[orgEnd - 1] == r[revEnd - 1])
+    {
+      orgEnd--;
+      revEnd--;
+    }
+
+    if (orgStart == orgEnd || revStart == revEnd)
+    {
+      addEdit(orgStart,
+              orgEnd - orgStart,
+              revStart,
+              revEnd - revStart);
+      return;
+    }
+
+    bisect(orgStart,
+           orgEnd,
+           revStart,
+           revEnd);
+  }
+
+  /**
+   * Find the middle snake and diff both halves. This is the bisection of Myers' paper "An O(ND) Difference Algorithm
+   * and Its Variations".
+   */
+  private void bisect(int orgStart,
+      int orgEnd,
+      int revStart,
+      int revEnd)
+  {
+    int[] o;
+    int[] r;
+    int n;
+    int m;
+    int maxD;
+    int vOffset;
+    int vLength;
+    int delta;
+    boolean front;
+    int k1start;
+    int k1end;
+    int k2start;
+    int k2end;
+    int k1Offset;
+    int k2Offset;
+    int x1;
+    int y1;
+    int x2;
+    int y2;
+
+    o = org.ids;
+    r = rev.ids;
+    n = orgEnd - orgStart;
+    m = revEnd - revStart;
+    maxD = (n + m + 1) / 2;
+    vOffset = maxD;
+    vLength = 2 * maxD;
+    if (v1.length < vLength + 2)
+    {
+      v1 = new int[vLength + 2];
+      v2 = new int[vLength + 2];
+    }
+    Arrays.fill(v1,
+                0,
+                vLength + 2,
+                -1);
+    Arrays.fill(v2,
+                0,
+                vLength + 2,
+                -1);
+    v1[vOffset + 1] = 0;
+    v2[vOffset + 1] = 0;
+
+    delta = n - m;
+    // If the total number of tokens is odd, the front path will collide
+    //   with the reverse path.
+    front = (delta % 2 != 0);
+    k1start = 0;
+    k1end = 0;
+    k2start = 0;
+    k2end = 0;
+
+    for (int d = 0; d < maxD; d++)
+    {
+      for (int k1 = -d + k1start; k1 <= d - k1end; k1 += 2)
+      {
+        k1Offset = vOffset + k1;
+        if (k1 == -d || (k1 != d && v1[k1Offset - 1] < v1[k1Offset + 1]))
+        {
+          x1 = v1[k1Offset + 1];
+        }
+        else
+        {
+          x1 = v1[k1Offset - 1] + 1;
+        }
+        y1 = x1 - k1;
+        while (x1 < n && y1 < m && o[orgStart + x1] == r[revStart + y1])
+        {
+          x1++;
+          y1++;
+        }
+        v1[k1Offset] = x1;
+
+        if (x1 > n)
+        {
+          // Ran off the right of the graph.
+          k1end += 2;
+        }
+        else if (y1 > m)
+        {
+          // Ran off the bottom of the graph.
+          k1start += 2;
+        }
+        else if (front)
+        {
+          k2Offset = vOffset + delta - k1;
+          if (k2Offset >= 0 && k2Offset < vLength && v2[k2Offset] != -1)
+          {
+            // Mirror x2 onto top-left coordinate system.
+            x2 = n - v2[k2Offset];
+            if (x1 >= x2)
+            {
+              split(orgStart,
+                    orgEnd,
+                    revStart,
+                    revEnd,
+                    x1,
+                    y1);
+              return;
+            }
+          }
+        }
+      }
+
+      for (int k2 = -d + k2start; k2 <= d - k2end; k2 += 2)
+      {
+        k2Offset = vOffset + k2;
+        if (k2 == -d || (k2 != d && v2[k2Offset - 1] < v2[k2Offset + 1]))
+        {
+          x2 = v2[k2Offset + 1];
+        }
+        else
+        {
+          x2 = v2[k2Offset - 1] + 1;
+        }
+        y2 = x2 - k2;
+        while (x2 < n && y2 < m && o[orgEnd - x2 - 1] == r[revEnd - y2 - 1])
+        {
+          x2++;
+          y2++;
+        }
+        v2[k2Offset] = x2;
+
+        if (x2 > n)
+        {
+          k2end += 2;
+        }
+        else if (y2 > m)
+        {
+          k2start += 2;
+        }
+        else if (!front)
+        {
+          k1Offset = vOffset + delta - k2;
+          if (k1Offset >= 0 && k1Offset < vLength && v1[k1Offset] != -1)
+          {
+            x1 = v1[k1Offset];
+            y1 = vOffset + x1 - k1Offset;
+            // Mirror x2 onto top-left coordinate system.
+            x2 = n - x2;
+            if (x1 >= x2)
+            {
+              split(orgStart,
+                    orgEnd,
+                    revStart,
+                    revEnd,
+                    x1,
+                    y1);
+              return;
+            }
+          }
+        }
+      }
+    }
+
+    // No common token at all.
+    addEdit(orgStart,
+            n,
+            revStart,
+            m);
+  }
+
+  private void split(int orgStart,
+      int orgEnd,
+      int revStart,
+      int revEnd,
+      int x,
+      int y)
+  {
+    // The recursion only modifies v1 and v2 after the values are used.
+    diff(orgStart,
+         orgStart + x,
+         revStart,
+         revStart + y);
+    diff(orgStart + x,
+         orgEnd,
+         revStart + y,
+         revEnd);
+  }
+
+  /**
+   * Edits are found in ascending order. Adjacent edits are joined.
+   */
+  private void addEdit(int orgStart,
+      int orgSize,
+      int revStart,
+      int revSize)
+  {
+    if (orgSize == 0 && revSize == 0)
+    {
+      return;
+    }
+
+    if (numberOfEdits > 0 && edits[numberOfEdits - 4] + edits[numberOfEdits - 3] == orgStart
+        && edits[numberOfEdits - 2] + edits[numberOfEdits - 1] == revStart)
+    {
+      edits[numberOfEdits - 3] += orgSize;
+      edits[numberOfEdits - 1] += revSize;
+      return;
+    }
+
+    if (numberOfEdits + 4 > edits.length)
+    {
+      edits = Arrays.copyOf(edits,
+                            edits.length * 2);
+    }
+
+    edits[numberOfEdits++] = orgStart;
+    edits[numberOfEdits++] = orgSize;
+    edits[numberOfEdits++] = revStart;
+    edits[numberOfEdits++] = revSize;
+  }
+
+  /**
+   * The id of a token. Equal tokens get the same id.
+   */
+  private int intern(CharSequence text,
+      int start,
+      int end)
+  {
+    int hash;
+    int mask;
+    int index;
+    int id;
+    int length;
+
+    hash = 0;
+    for (int i = start; i < end; i++)
+    {
+      hash = 31 * hash + text.charAt(i);
+    }
+
+    length = end - start;
+    mask = slots.length - 1;
+    index = (hash * 0x9E3779B9) >>> 16 & mask;
+    while ((id = slots[index]) != 0)
+    {
+      id--;
+      if (tokenHashes[id] == hash && tokenLengths[id] == length && equals(id,
+                                                                          text,
+                                                                          start))
+      {
+        return id;
+      }
+
+      index = (index + 1) & mask;
+    }
+
+    id = numberOfTokens++;
+    if (id == tokenHashes.length)
+    {
+      tokenHashes = Arrays.copyOf(tokenHashes,
+                                  id * 2);
+      tokenStarts = Arrays.copyOf(tokenStarts,
+                                  id * 2);
+      tokenLengths = Arrays.copyOf(tokenLengths,
+                                   id * 2);
+    }
+
+    if (poolSize + length > pool.length)
+    {
+      pool = Arrays.copyOf(pool,
+                           Math.max(pool.length * 2,
+                                    poolSize + length));
+    }
+    for (int i = start; i < end; i++)
+    {
+      pool[poolSize++] = text.charAt(i);
+    }
+
+    tokenHashes[id] = hash;
+    tokenStarts[id] = poolSize - length;
+    tokenLengths[id] = length;
+    slots[index] = id + 1;
+
+    if (numberOfTokens * 2 > slots.length)
+    {
+      rehash();
+    }
+
+    return id;
+  }
+
+  private boolean equals(int id,
+      CharSequence text,
+      int start)
+  {
+    int poolIndex;
+
+    poolIndex = tokenStarts[id];
+    for (int i = 0; i < tokenLengths[id]; i++)
+    {
+      if (pool[poolIndex + i] != text.charAt(start + i))
+      {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  private void rehash()
+  {
+    int mask;
+    int index;
+
+    slots = new int[slots.length * 2];
+    mask = slots.length - 1;
+    for (int id = 0; id < numberOfTokens; id++)
+    {
+      index = (tokenHashes[id] * 0x9E3779B9) >>> 16 & mask;
+      while (slots[index] != 0)
+      {
+        index = (index + 1) & mask;
+      }
+      slots[index] = id + 1;
+    }
+  }
+
+  /**
+   * Same definition as the \b in a regular expression.
+   */
+  private static boolean isWordCharacter(char c)
+  {
+    return Character.isLetterOrDigit(c) || c == '_';
+  }
+
+  /**
+   * The tokens of one side of the diff.
+   */
+  private class Sequence
+  {
+    // End offset of every token.
+    private int[] bounds = new int[64];
+    private int numberOfBounds;
+    // The ids of the tokens that are not ignored and their token index.
+    private int[] ids = new int[64];
+    private int[] tokenIndexes = new int[64];
+    private int size;
+
+    void init(CharSequence text,
+        Ignore ignore)
+    {
+      int length;
+      boolean word;
+      boolean previousWord;
+      int start;
+
+      length = text.length();
+      numberOfBounds = 0;
+      size = 0;
+      previousWord = false;
+      for (int i = 0; i < length; i++)
+      {
+        word = isWordCharacter(text.charAt(i));
+        if (i > 0 && word != previousWord)
+        {
+          addBound(i);
+        }
+        previousWord = word;
+      }
+      if (length > 0)
+      {
+        addBound(length);
+      }
+
+      if (ids.length < numberOfBounds)
+      {
+        ids = new int[bounds.length];
+        tokenIndexes = new int[bounds.length];
+      }
+
+      start = 0;
+      for (int i = 0; i < numberOfBounds; i++)
+      {
+        if (ignore == null)
+        {
+          add(i,
+              intern(text,
+                     start,
+                     bounds[i]));
+        }
+        else if (normalize(text,
+                           start,
+                           bounds[i],
+                           ignore))
+        {
+          add(i,
+              intern(outputToken,
+                     0,
+                     outputToken.remaining()));
+        }
+
+        start = bounds[i];
+      }
+    }
+
+    private void addBound(int offset)
+    {
+      if (numberOfBounds == bounds.length)
+      {
+        bounds = Arrays.copyOf(bounds,
+                               bounds.length * 2);
+      }
+      bounds[numberOfBounds++] = offset;
+    }
+
+    private void add(int tokenIndex,
+        int id)
+    {
+      ids[size] = id;
+      tokenIndexes[size] = tokenIndex;
+      size++;
+    }
+
+    /**
+     * Remove the ignored characters of a token (the same way JMDiff does for a line).
+     *
+     * @return false if the whole token is ignored.
+     */
+    private boolean normalize(CharSequence text,
+        int start,
+        int end,
+        Ignore ignore)
+    {
+      if (inputToken.capacity() < end - start + 1)
+      {
+        inputToken = CharBuffer.allocate((end - start + 1) * 2);
+        outputToken = CharBuffer.allocate((end - start + 1) * 2);
+      }
+
+      inputToken.clear();
+      for (int i = start; i < end; i++)
+      {
+        inputToken.put(text.charAt(i));
+      }
+
+      CompareUtil.removeIgnoredChars(inputToken,
+                                     ignore,
+                                     outputToken);
+
+      return outputToken.remaining() > 0;
+    }
+
+    /**
+     * Convert an index in ids to a token index.
+     */
+    int getTokenAnchor(int index)
+    {
+      return index < size ? tokenIndexes[index] : numberOfBounds;
+    }
+
+    int getTokenSize(int index,
+        int count)
+    {
+      if (count == 0)
+      {
+        return 0;
+      }
+
+      return tokenIndexes[index + count - 1] - tokenIndexes[index] + 1;
+    }
+
+    int getCharOffset(int tokenIndex)
+    {
+      return tokenIndex == 0 ? 0 : bounds[tokenIndex - 1];
+    }
+  }
+}
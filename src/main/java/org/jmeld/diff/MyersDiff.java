@@ -39,6 +39,7 @@ public class MyersDiff
     {
       diff = new org.apache.commons.jrcs.diff.myers.MyersDiff();
       diff.checkMaxTime(isMaxTimeChecked());
+      diff.setCancelCheck(getCancelCheck());
       revision = diff.diff(orig,
                            rev);
     }
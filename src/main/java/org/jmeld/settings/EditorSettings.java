@@ -18,6 +18,7 @@ package org.jmeld.settings;
 
 import java.awt.Color;
 import java.awt.Font;
+import org.jmeld.diff.JMDiffAlgorithmType;
 import org.jmeld.ui.util.Colors;
 import org.jmeld.util.Ignore;
 import org.jmeld.util.ObjectUtil;
@@ -45,6 +46,7 @@ public class EditorSettings
   private String lookAndFeelName;
   private ToolbarButtonIcon toolbarButtonIcon = ToolbarButtonIcon.LARGE;
   private boolean toolbarButtonTextEnabled = true;
+  private JMDiffAlgorithmType diffAlgorithm = JMDiffAlgorithmType.AUTOMATIC;
 
   public EditorSettings()
   {
@@ -325,6 +327,27 @@ public class EditorSettings
     return toolbarButtonTextEnabled;
   }
 
+  public void setDiffAlgorithm(JMDiffAlgorithmType diffAlgorithm)
+  {
+    if (this.diffAlgorithm == diffAlgorithm)
+    {
+      return;
+    }
+
+    this.diffAlgorithm = diffAlgorithm;
+    fireChanged();
+  }
+
+  public JMDiffAlgorithmType getDiffAlgorithm()
+  {
+    return diffAlgorithm;
+  }
+
+  public JMDiffAlgorithmType[] getDiffAlgorithms()
+  {
+    return JMDiffAlgorithmType.values();
+  }
+
   public void enableCustomFont(boolean customFont)
   {
     this.customFont = customFont;
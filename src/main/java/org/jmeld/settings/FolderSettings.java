@@ -48,6 +48,14 @@ public class FolderSettings
   private boolean leftRightChanged = true;
   private boolean onlyRight = false;
   private boolean leftRightUnChanged = false;
+  // The number of threads that compare the contents of files.
+  //   0 means: use all available processors.
+  private int compareParallelism = 0;
+  // Keep a folder comparison up to date with the files on disk.
+  private boolean watchDirectories = true;
+  // Changes on disk are handled after no change has happened for this
+  //   number of milliseconds.
+  private int watchDelay = 500;
 
   public FolderSettings()
   {
@@ -122,4 +130,46 @@ public class FolderSettings
   {
     return leftRightUnChanged;
   }
+
+  public void setCompareParallelism(int compareParallelism)
+  {
+    if (this.compareParallelism != compareParallelism)
+    {
+      this.compareParallelism = compareParallelism;
+      fireChanged();
+    }
+  }
+
+  public int getCompareParallelism()
+  {
+    return compareParallelism;
+  }
+
+  public void setWatchDirectories(boolean watchDirectories)
+  {
+    if (this.watchDirectories != watchDirectories)
+    {
+      this.watchDirectories = watchDirectories;
+      fireChanged();
+    }
+  }
+
+  public boolean getWatchDirectories()
+  {
+    return watchDirectories;
+  }
+
+  public void setWatchDelay(int watchDelay)
+  {
+    if (this.watchDelay != watchDelay)
+    {
+      this.watchDelay = watchDelay;
+      fireChanged();
+    }
+  }
+
+  public int getWatchDelay()
+  {
+    return watchDelay;
+  }
 }
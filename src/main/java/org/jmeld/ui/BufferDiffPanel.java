@@ -28,6 +28,7 @@ import javax.swing.JViewport;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.JTextComponent;
 import javax.swing.text.PlainDocument;
+import org.jdesktop.swingworker.SwingWorker;
 import org.jmeld.JMeldException;
 import org.jmeld.diff.JMChunk;
 import org.jmeld.diff.JMDelta;
@@ -39,6 +40,7 @@ import org.jmeld.ui.search.SearchHits;
 import org.jmeld.ui.text.AbstractBufferDocument;
 import org.jmeld.ui.text.BufferDocumentIF;
 import org.jmeld.ui.text.JMDocumentEvent;
+import org.jmeld.util.Ignore;
 import org.jmeld.util.StringUtil;
 import org.jmeld.util.node.BufferNode;
 import org.jmeld.util.node.JMDiffNode;
@@ -58,6 +60,10 @@ public class BufferDiffPanel
   private int selectedLine;
   private ScrollSynchronizer scrollSynchronizer;
   private JMDiff diff;
+  private DiffWorker diffWorker;
+  // The current revision doesn't match the documents anymore. It will be
+  //   replaced by the next diff.
+  private boolean revisionOutdated;
 
   BufferDiffPanel(JMeldPanel mainPanel)
   {
@@ -190,33 +196,38 @@ public class BufferDiffPanel
     BufferDocumentIF bd1;
     BufferDocumentIF bd2;
 
-    if (currentRevision == null)
+    // The current revision is outdated if a diff is still running. It
+    //   can't be patched. The result of the running diff is outdated
+    //   too, the timer of the filepanel will start one diff for all the
+    //   edits.
+    if (currentRevision == null || diffWorker != null || revisionOutdated)
     {
-      diff();
+      cancelDiff();
+      revisionOutdated = true;
+      return false;
     }
-    else
-    {
-      fp = getFilePanel(de.getDocument());
-      if (fp == null)
-      {
-        return false;
-      }
 
-      bd1 = filePanels[LEFT].getBufferDocument();
-      bd2 = filePanels[RIGHT].getBufferDocument();
+    fp = getFilePanel(de.getDocument());
+    if (fp == null)
+    {
+      return false;
+    }
 
-      if (!currentRevision.update(bd1 != null ? bd1.getLines() : null,
-                                  bd2 != null ? bd2.getLines() : null,
-                                  fp == filePanels[LEFT],
-                                  de.getStartLine(),
-                                  de.getNumberOfLines()))
-      {
-        return false;
-      }
+    bd1 = filePanels[LEFT].getBufferDocument();
+    bd2 = filePanels[RIGHT].getBufferDocument();
 
-      reDisplay();
+    if (!currentRevision.update(bd1 != null ? bd1.getLines() : null,
+                                bd2 != null ? bd2.getLines() : null,
+                                fp == filePanels[LEFT],
+                                de.getStartLine(),
+                                de.getNumberOfLines()))
+    {
+      revisionOutdated = true;
+      return false;
     }
 
+    reDisplay();
+
     return true;
   }
 
@@ -248,11 +259,107 @@ public class BufferDiffPanel
 
     if (bd1 != null && bd2 != null)
     {
+      cancelDiff();
+
+      revisionOutdated = false;
+      diffWorker = new DiffWorker(bd1,
+                                  bd2,
+                                  diffNode.getIgnore());
+      diffWorker.execute();
+    }
+  }
+
+  private void cancelDiff()
+  {
+    if (diffWorker != null)
+    {
+      diffWorker.cancel(true);
+      diffWorker = null;
+    }
+  }
+
+  /**
+   * Calculates the differences in the background. The current revision stays visible until the new revision is ready.
+   * A result is thrown away if it has been superseded by a newer diff or if one of the documents changed while
+   * calculating it.
+   */
+  class DiffWorker
+      extends SwingWorker<JMRevision, Object>
+  {
+    private BufferDocumentIF bd1;
+    private BufferDocumentIF bd2;
+    private int version1;
+    private int version2;
+    private Object[] lines1;
+    private Object[] lines2;
+    private Ignore ignore;
+
+    DiffWorker(BufferDocumentIF bd1,
+        BufferDocumentIF bd2,
+        Ignore ignore)
+    {
+      this.bd1 = bd1;
+      this.bd2 = bd2;
+      this.ignore = ignore;
+
+      version1 = bd1.getVersion();
+      version2 = bd2.getVersion();
+      lines1 = getLines(bd1);
+      lines2 = getLines(bd2);
+    }
+
+    /**
+     * The lines of an editable document are copied on the event dispatch thread. The content of a document can't be
+     * read by the worker while it is edited. The content of a readonly document never changes, it's lines are compared
+     * without decoding them.
+     */
+    private Object[] getLines(BufferDocumentIF bd)
+    {
+      Object[] lines;
+      String[] result;
+
+      lines = bd.getLines();
+      if (bd.isReadonly())
+      {
+        return lines;
+      }
+
+      result = new String[lines.length];
+      for (int i = 0; i < lines.length; i++)
+      {
+        result[i] = lines[i].toString();
+      }
+
+      return result;
+    }
+
+    @Override
+    public JMRevision doInBackground()
+        throws Exception
+    {
+      return diff.diff(lines1,
+                       lines2,
+                       ignore);
+    }
+
+    @Override
+    protected void done()
+    {
+      if (diffWorker != this)
+      {
+        return;
+      }
+
+      diffWorker = null;
+
+      if (isCancelled() || bd1.getVersion() != version1 || bd2.getVersion() != version2)
+      {
+        return;
+      }
+
       try
       {
-        currentRevision = diff.diff(bd1.getLines(),
-                                    bd2.getLines(),
-                                    diffNode.getIgnore());
+        currentRevision = get();
 
         reDisplay();
       }
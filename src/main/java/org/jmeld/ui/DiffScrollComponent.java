@@ -17,6 +17,7 @@
 package org.jmeld.ui;
 
 import java.awt.Color;
+import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Point;
@@ -31,8 +32,13 @@ import java.awt.event.MouseWheelEvent;
 import java.awt.event.MouseWheelListener;
 import java.awt.geom.CubicCurve2D;
 import java.awt.geom.GeneralPath;
+import java.awt.geom.Line2D;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import javax.swing.JComponent;
 import javax.swing.JViewport;
 import javax.swing.event.ChangeEvent;
@@ -55,7 +61,7 @@ public class DiffScrollComponent
   private BufferDiffPanel diffPanel;
   private int fromPanelIndex;
   private int toPanelIndex;
-  private List<Command> commands;
+  private Layout layout;
   private Object antiAlias;
   private boolean leftsideReadonly;
   private boolean rightsideReadonly;
@@ -98,6 +104,7 @@ public class DiffScrollComponent
   public void configurationChanged()
   {
     initSettings();
+    layout = null;
     repaint();
   }
 
@@ -130,22 +137,22 @@ public class DiffScrollComponent
   public boolean executeCommand(double x,
       double y)
   {
-    if (commands == null)
+    Command command;
+
+    if (layout == null)
     {
       return false;
     }
 
-    for (Command command : commands)
+    command = layout.getCommand(x,
+                                y);
+    if (command == null)
     {
-      if (command.contains(x,
-                           y))
-      {
-        command.execute();
-        return true;
-      }
+      return false;
     }
 
-    return false;
+    command.execute();
+    return true;
   }
 
   @Override
@@ -171,7 +178,50 @@ public class DiffScrollComponent
     paintDiffs(g2);
   }
 
+  /**
+   * The shapes of the visible delta's are kept in a layout. It is only created again if something has changed that
+   * changes the shapes (the revision, the scroll positions, the selected delta, ...).
+   */
   private void paintDiffs(Graphics2D g2)
+  {
+    JMRevision revision;
+    Layout newLayout;
+
+    revision = diffPanel.getCurrentRevision();
+    if (revision == null)
+    {
+      layout = null;
+      return;
+    }
+
+    if (getFromPanel().getBufferDocument() == null || getToPanel().getBufferDocument() == null)
+    {
+      return;
+    }
+
+    antiAlias = g2.getRenderingHint(RenderingHints.KEY_ANTIALIASING);
+
+    newLayout = new Layout(revision);
+    if (!newLayout.equals(layout))
+    {
+      try
+      {
+        createShapes(newLayout);
+      }
+      catch (BadLocationException ex)
+      {
+        ex.printStackTrace();
+      }
+
+      newLayout.initCommands();
+      layout = newLayout;
+    }
+
+    layout.paint(g2);
+  }
+
+  private void createShapes(Layout layout)
+      throws BadLocationException
   {
     JViewport viewportFrom;
     JViewport viewportTo;
@@ -198,7 +248,6 @@ public class DiffScrollComponent
     int y;
     int width;
     int height;
-    Rectangle bounds;
     int x0;
     int y0;
     int x1;
@@ -211,28 +260,17 @@ public class DiffScrollComponent
     int selectionWidth;
     FilePanel fromPanel;
     FilePanel toPanel;
+    List<JMDelta> deltas;
+    JMDelta delta;
+    int startIndex;
 
-    bounds = g2.getClipBounds();
-
-    revision = diffPanel.getCurrentRevision();
-    if (revision == null)
-    {
-      return;
-    }
-
-    commands = new ArrayList<Command>();
-
-    antiAlias = g2.getRenderingHint(RenderingHints.KEY_ANTIALIASING);
+    revision = layout.revision;
 
     // From side:
     fromPanel = getFromPanel();
     viewportFrom = fromPanel.getScrollPane().getViewport();
     editorFrom = fromPanel.getEditor();
     bdFrom = fromPanel.getBufferDocument();
-    if (bdFrom == null)
-    {
-      return;
-    }
 
     r = viewportFrom.getViewRect();
 
@@ -246,7 +284,6 @@ public class DiffScrollComponent
     p = new Point(r.x,
                   r.y + r.height);
     offset = editorFrom.viewToModel(p);
-    bdFrom = fromPanel.getBufferDocument();
     lastLineFrom = bdFrom.getLineForOffset(offset) + 1;
 
     // To side:
@@ -254,10 +291,6 @@ public class DiffScrollComponent
     viewportTo = toPanel.getScrollPane().getViewport();
     editorTo = toPanel.getEditor();
     bdTo = toPanel.getBufferDocument();
-    if (bdTo == null)
-    {
-      return;
-    }
 
     r = viewportTo.getViewRect();
 
@@ -273,442 +306,420 @@ public class DiffScrollComponent
     offset = editorTo.viewToModel(p);
     lastLineTo = bdTo.getLineForOffset(offset) + 1;
 
-    try
+    // Draw only the delta's that have some line's drawn in one of the viewports.
+    //   The search starts just before the first delta that can be visible.
+    deltas = revision.getDeltas();
+    startIndex = Math.max(0,
+                          Math.min(revision.getDeltaIndex(true,
+                                                          firstLineFrom),
+                                   revision.getDeltaIndex(false,
+                                                          firstLineTo))
+                              - 1);
+    for (int i = startIndex; i < deltas.size(); i++)
     {
-      // Draw only the delta's that have some line's drawn in one of the viewports.
-      for (JMDelta delta : revision.getDeltas())
+      delta = deltas.get(i);
+      original = delta.getOriginal();
+      revised = delta.getRevised();
+
+      // This delta is before the firstLine of the screen: Keep on searching!
+      if (original.getAnchor() + original.getSize() < firstLineFrom
+          && revised.getAnchor() + revised.getSize() < firstLineTo)
       {
-        original = delta.getOriginal();
-        revised = delta.getRevised();
-        
-        if(delta.isChange() && !delta.isReallyChanged())
-        {
-          continue;
-        }
+        continue;
+      }
 
-        // This delta is before the firstLine of the screen: Keep on searching!
-        if (original.getAnchor() + original.getSize() < firstLineFrom
-            && revised.getAnchor() + revised.getSize() < firstLineTo)
-        {
-          continue;
-        }
+      // This delta is after the lastLine of the screen: stop! 
+      if (original.getAnchor() > lastLineFrom && revised.getAnchor() > lastLineTo)
+      {
+        break;
+      }
 
-        // This delta is after the lastLine of the screen: stop! 
-        if (original.getAnchor() > lastLineFrom && revised.getAnchor() > lastLineTo)
-        {
-          break;
-        }
+      if (delta.isChange() && !delta.isReallyChanged())
+      {
+        continue;
+      }
 
-        selected = (delta == diffPanel.getSelectedDelta());
+      selected = (delta == layout.selectedDelta);
 
-        // OK, this delta has some visible lines. Now draw it!
-        color = RevisionUtil.getColor(delta);
-        darkerColor = RevisionUtil.getDarkerColor(delta);
-        g2.setColor(color);
+      // OK, this delta has some visible lines. Now draw it!
+      color = RevisionUtil.getColor(delta);
+      darkerColor = RevisionUtil.getDarkerColor(delta);
 
-        // Draw original chunk:
-        fromLine = original.getAnchor();
-        toLine = original.getAnchor() + original.getSize();
-        viewportRect = viewportFrom.getViewRect();
-        offset = bdFrom.getOffsetForLine(fromLine);
-        if (offset < 0)
-        {
-          continue;
-        }
+      // Draw original chunk:
+      fromLine = original.getAnchor();
+      toLine = original.getAnchor() + original.getSize();
+      viewportRect = layout.fromViewRect;
+      offset = bdFrom.getOffsetForLine(fromLine);
+      if (offset < 0)
+      {
+        continue;
+      }
 
-        fromRect = editorFrom.modelToView(offset);
-        offset = bdFrom.getOffsetForLine(toLine);
-        if (offset < 0)
-        {
-          continue;
-        }
-        toRect = editorFrom.modelToView(offset);
-        //System.out.println("from=" + fromRect + ", to=" + toRect);
-
-        x = 0;
-        y = fromRect.y - viewportRect.y + 1;
-        y = y < 0 ? 0 : y;
-        width = 10;
-        height = 0;
-
-        // start of diff is before the first visible line.
-        // end   of diff is before the last visible line.
-        // (The first part of diff should not be visible)
-        if (fromRect.y <= viewportRect.y && toRect.y <= viewportRect.y + viewportRect.height)
-        {
-          //height = toRect.y - viewportRect.y - 1;
-          height = original.getSize() * fromRect.height;
-          height -= viewportRect.y - fromRect.y;
-        }
-        // start of diff is after the first visible line.
-        // end   of diff is after the last visible line.
-        // (The last part of diff should not be visible)
-        else if (fromRect.y > viewportRect.y && toRect.y > viewportRect.y + viewportRect.height)
-        {
-          //height = viewportRect.y + viewportRect.height - fromRect.y - 1;
-          height = original.getSize() * fromRect.height;
-          height -= viewportRect.y + viewportRect.height - toRect.y;
-        }
-        // start of diff is after the first visible line.
-        // end   of diff is before the last visible line.
-        // (The diff is completely visible)
-        else if (fromRect.y > viewportRect.y && toRect.y <= viewportRect.y + viewportRect.height)
-        {
-          //height = toRect.y - fromRect.y - 1;
-          height = original.getSize() * fromRect.height;
-        }
-        // start of diff is before the first visible line.
-        // end   of diff is after the last visible line.
-        // (The first part of diff should not be visible)
-        // (The last part of diff should not be visible)
-        else if (fromRect.y <= viewportRect.y && toRect.y > viewportRect.y + viewportRect.height)
+      fromRect = editorFrom.modelToView(offset);
+      offset = bdFrom.getOffsetForLine(toLine);
+      if (offset < 0)
+      {
+        continue;
+      }
+      toRect = editorFrom.modelToView(offset);
+
+      x = 0;
+      y = fromRect.y - viewportRect.y + 1;
+      y = y < 0 ? 0 : y;
+      width = 10;
+      height = getChunkHeight(original,
+                              fromRect,
+                              toRect,
+                              viewportRect);
+
+      x0 = x + width;
+      y0 = y;
+
+      if (simpleDraw)
+      {
+        if (height > 0)
         {
-          //height = viewportRect.height - 1;
-          height = viewportRect.height;
+          layout.fill(color,
+                      new Rectangle(x,
+                                    y,
+                                    width,
+                                    height));
         }
 
-        x0 = x + width;
-        y0 = y;
-
-        if (simpleDraw)
+        layout.line(darkerColor,
+                    x,
+                    y,
+                    x + width,
+                    y);
+        if (height > 0)
         {
-          if (height > 0)
-          {
-            g2.setColor(color);
-            g2.fillRect(x,
-                        y,
-                        width,
-                        height);
-          }
-
-          g2.setColor(darkerColor);
-          g2.drawLine(x,
+          layout.line(darkerColor,
+                      x,
+                      y + height,
+                      x + width,
+                      y + height);
+          layout.line(darkerColor,
+                      x + width,
                       y,
                       x + width,
-                      y);
-          if (height > 0)
-          {
-            g2.drawLine(x,
-                        y + height,
-                        x + width,
-                        y + height);
-            if (simpleDraw)
-            {
-              g2.drawLine(x + width,
-                          y,
-                          x + width,
-                          y + height);
-            }
-          }
-
-          x = x + width + 1;
+                      y + height);
         }
 
-        if (selected)
-        {
-          selectionWidth = 5;
+        x = x + width + 1;
+      }
 
-          g2.setColor(Color.yellow);
-          g2.fillRect(x,
-                      y,
-                      selectionWidth,
-                      height);
-          g2.setColor(Color.yellow.darker());
-          g2.drawLine(x,
+      if (selected)
+      {
+        selectionWidth = 5;
+
+        layout.fill(Color.yellow,
+                    new Rectangle(x,
+                                  y,
+                                  selectionWidth,
+                                  height));
+        layout.line(Color.yellow.darker(),
+                    x,
+                    y,
+                    x + selectionWidth,
+                    y);
+        if (height > 0)
+        {
+          layout.line(Color.yellow.darker(),
+                      x + selectionWidth,
                       y,
                       x + selectionWidth,
-                      y);
-          if (height > 0)
-          {
-            g2.drawLine(x + selectionWidth,
-                        y,
-                        x + selectionWidth,
-                        y + height);
-            g2.drawLine(x,
-                        y + height,
-                        x + selectionWidth,
-                        y + height);
-          }
-
-          x = x + selectionWidth;
+                      y + height);
+          layout.line(Color.yellow.darker(),
+                      x,
+                      y + height,
+                      x + selectionWidth,
+                      y + height);
         }
 
-        int curveX1 = x;
-        int curveY1 = y;
-        int curveX4 = x;
-        int curveY4 = y + (height > 0 ? height : 0);
-
-        // Draw revised chunk:
-        fromLine = revised.getAnchor();
-        toLine = revised.getAnchor() + revised.getSize();
-        viewportRect = viewportTo.getViewRect();
-        offset = bdTo.getOffsetForLine(fromLine);
-        if (offset < 0)
-        {
-          continue;
-        }
+        x = x + selectionWidth;
+      }
 
-        fromRect = editorTo.modelToView(offset);
-        offset = bdTo.getOffsetForLine(toLine);
-        if (offset < 0)
-        {
-          continue;
-        }
-        toRect = editorTo.modelToView(offset);
-
-        x = bounds.x + bounds.width - 10;
-        y = fromRect.y - viewportRect.y + 1;
-        y = y < 0 ? 0 : y;
-        width = 10;
-        height = 0;
-        if (fromRect.y <= viewportRect.y && toRect.y <= viewportRect.y + viewportRect.height)
-        {
-          //height = toRect.y - viewportRect.y - 1;
-          height = revised.getSize() * fromRect.height;
-          height -= viewportRect.y - fromRect.y;
-        }
-        else if (fromRect.y > viewportRect.y && toRect.y > viewportRect.y + viewportRect.height)
-        {
-          //height = viewportRect.y + viewportRect.height - fromRect.y - 1;
-          height = revised.getSize() * fromRect.height;
-          height -= viewportRect.y + viewportRect.height - toRect.y;
-        }
-        else if (fromRect.y > viewportRect.y && toRect.y <= viewportRect.y + viewportRect.height)
-        {
-          //height = toRect.y - fromRect.y - 1;
-          height = revised.getSize() * fromRect.height;
-        }
-        else if (fromRect.y <= viewportRect.y && toRect.y > viewportRect.y + viewportRect.height)
-        {
-          //height = viewportRect.height - 1;
-          height = viewportRect.height;
-        }
+      int curveX1 = x;
+      int curveY1 = y;
+      int curveX4 = x;
+      int curveY4 = y + (height > 0 ? height : 0);
+
+      // Draw revised chunk:
+      fromLine = revised.getAnchor();
+      toLine = revised.getAnchor() + revised.getSize();
+      viewportRect = layout.toViewRect;
+      offset = bdTo.getOffsetForLine(fromLine);
+      if (offset < 0)
+      {
+        continue;
+      }
+
+      fromRect = editorTo.modelToView(offset);
+      offset = bdTo.getOffsetForLine(toLine);
+      if (offset < 0)
+      {
+        continue;
+      }
+      toRect = editorTo.modelToView(offset);
+
+      x = layout.width - 10;
+      y = fromRect.y - viewportRect.y + 1;
+      y = y < 0 ? 0 : y;
+      width = 10;
+      height = getChunkHeight(revised,
+                              fromRect,
+                              toRect,
+                              viewportRect);
 
-        x1 = x;
-        y1 = y;
+      x1 = x;
+      y1 = y;
 
-        if (simpleDraw)
+      if (simpleDraw)
+      {
+        if (height > 0)
         {
-          if (height > 0)
-          {
-            g2.setColor(color);
-            g2.fillRect(x,
-                        y,
-                        width,
-                        height);
-          }
-
-          g2.setColor(darkerColor);
-          g2.drawLine(x,
-                      y,
-                      x + width,
-                      y);
-          if (height > 0)
-          {
-            g2.drawLine(x,
-                        y + height,
-                        x + width,
-                        y + height);
-            if (simpleDraw)
-            {
-              g2.drawLine(x,
-                          y,
-                          x,
-                          y + height);
-            }
-          }
+          layout.fill(color,
+                      new Rectangle(x,
+                                    y,
+                                    width,
+                                    height));
         }
 
-        if (!simpleDraw)
+        layout.line(darkerColor,
+                    x,
+                    y,
+                    x + width,
+                    y);
+        if (height > 0)
         {
-          int curveX2 = x + width;
-          int curveY2 = y;
-          int curveX3 = x + width;
-          int curveY3 = y + (height > 0 ? height : 0);
-
-          GeneralPath curve = new GeneralPath();
-          /*
-          curve.append(new Line2D.Float(curveX4, curveY4, curveX1, curveY1),
-            false);
-          */
-          curve.append(new CubicCurve2D.Float(curveX1,
-                                              curveY1,
-                                              curveX1 + ((curveX2 - curveX1) / 2),
-                                              curveY1,
-                                              curveX1 + ((curveX2 - curveX1) / 2),
-                                              curveY2,
-                                              curveX2,
-                                              curveY2),
-                       true);
-          //curve.append(new CubicCurve2D.Float(curveX1, curveY1, curveX2, curveY1,
-          //  curveX1, curveY2, curveX2, curveY2), true);
-          /*
-          curve.append(new Line2D.Float(curveX2, curveY2, curveX3, curveY3),
-            false);
-          */
-          //curve.append(new CubicCurve2D.Float(curveX3, curveY3, curveX4, curveY3,
-          //    curveX3, curveY4, curveX4, curveY4), true);
-          curve.append(new CubicCurve2D.Float(curveX3,
-                                              curveY3,
-                                              curveX3 + ((curveX4 - curveX3) / 2),
-                                              curveY3,
-                                              curveX3 + ((curveX4 - curveX3) / 2),
-                                              curveY4,
-                                              curveX4,
-                                              curveY4),
-                       true);
-          g2.setColor(color);
-          g2.fill(curve);
-          g2.setColor(darkerColor);
-          setAntiAlias(g2);
-          g2.draw(curve);
-          resetAntiAlias(g2);
+          layout.line(darkerColor,
+                      x,
+                      y + height,
+                      x + width,
+                      y + height);
+          layout.line(darkerColor,
+                      x,
+                      y,
+                      x,
+                      y + height);
         }
+      }
 
-        if (selected)
-        {
-          selectionWidth = 5;
-          x = x - selectionWidth;
+      if (!simpleDraw)
+      {
+        int curveX2 = x + width;
+        int curveY2 = y;
+        int curveX3 = x + width;
+        int curveY3 = y + (height > 0 ? height : 0);
+
+        GeneralPath curve = new GeneralPath();
+        curve.append(new CubicCurve2D.Float(curveX1,
+                                            curveY1,
+                                            curveX1 + ((curveX2 - curveX1) / 2),
+                                            curveY1,
+                                            curveX1 + ((curveX2 - curveX1) / 2),
+                                            curveY2,
+                                            curveX2,
+                                            curveY2),
+                     true);
+        curve.append(new CubicCurve2D.Float(curveX3,
+                                            curveY3,
+                                            curveX3 + ((curveX4 - curveX3) / 2),
+                                            curveY3,
+                                            curveX3 + ((curveX4 - curveX3) / 2),
+                                            curveY4,
+                                            curveX4,
+                                            curveY4),
+                     true);
+        layout.fill(color,
+                    curve);
+        layout.antiAliasedDraw(darkerColor,
+                               curve);
+      }
 
-          g2.setColor(Color.yellow);
-          g2.fillRect(x,
-                      y,
-                      selectionWidth,
-                      height);
-          g2.setColor(Color.yellow.darker());
-          g2.drawLine(x,
+      if (selected)
+      {
+        selectionWidth = 5;
+        x = x - selectionWidth;
+
+        layout.fill(Color.yellow,
+                    new Rectangle(x,
+                                  y,
+                                  selectionWidth,
+                                  height));
+        layout.line(Color.yellow.darker(),
+                    x,
+                    y,
+                    x + selectionWidth,
+                    y);
+        if (height > 0)
+        {
+          layout.line(Color.yellow.darker(),
+                      x,
                       y,
+                      x,
+                      y + height);
+          layout.line(Color.yellow.darker(),
+                      x,
+                      y + height,
                       x + selectionWidth,
-                      y);
-          if (height > 0)
-          {
-            g2.drawLine(x,
-                        y,
-                        x,
-                        y + height);
-            g2.drawLine(x,
-                        y + height,
-                        x + selectionWidth,
-                        y + height);
-          }
-          g2.setColor(color);
+                      y + height);
         }
+      }
 
-        // Draw the chunk connection:
-        if (simpleDraw)
-        {
-          g2.setColor(darkerColor);
-          g2.drawLine(x0,
-                      y0,
-                      x0 + 15,
-                      y0);
-          setAntiAlias(g2);
-          g2.drawLine(x0 + 15,
-                      y0,
-                      x1 - 15,
-                      y1);
-          resetAntiAlias(g2);
-          g2.drawLine(x1 - 15,
-                      y1,
-                      x1,
-                      y1);
-        }
+      // Draw the chunk connection:
+      if (simpleDraw)
+      {
+        layout.line(darkerColor,
+                    x0,
+                    y0,
+                    x0 + 15,
+                    y0);
+        layout.antiAliasedDraw(darkerColor,
+                               new Line2D.Float(x0 + 15,
+                                                y0,
+                                                x1 - 15,
+                                                y1));
+        layout.line(darkerColor,
+                    x1 - 15,
+                    y1,
+                    x1,
+                    y1);
+      }
 
-        // Draw merge right->left command.
-        if (!leftsideReadonly && !bdFrom.isReadonly())
+      // Draw merge right->left command.
+      if (!layout.leftsideReadonly)
+      {
+        shape = new Polygon();
+        shape.addPoint(x0,
+                       y0);
+        shape.addPoint(x0 + 11,
+                       y0 - 4);
+        shape.addPoint(x0 + 11,
+                       y0 + 4);
+        layout.antiAliasedFill(color,
+                               shape);
+        layout.antiAliasedDraw(darkerColor,
+                               shape);
+        layout.addCommand(new DiffChangeCommand(shape,
+                                                delta,
+                                                toPanelIndex,
+                                                fromPanelIndex));
+
+        // Draw delete right command
+        if (original.getSize() > 0)
         {
-          shape = new Polygon();
-          shape.addPoint(x0,
-                         y0);
-          shape.addPoint(x0 + 11,
-                         y0 - 4);
-          shape.addPoint(x0 + 11,
-                         y0 + 4);
-          setAntiAlias(g2);
-          g2.setColor(color);
-          g2.fill(shape);
-          g2.setColor(darkerColor);
-          g2.draw(shape);
-          resetAntiAlias(g2);
-          commands.add(new DiffChangeCommand(shape,
-                                             delta,
-                                             toPanelIndex,
-                                             fromPanelIndex));
-
-          // Draw delete right command
-          if (original.getSize() > 0)
-          {
-            g2.setColor(Color.red);
-            g2.drawLine(x0 + 3 - width,
-                        y0 + 3,
-                        x0 + 7 - width,
-                        y0 + 7);
-            g2.drawLine(x0 + 7 - width,
-                        y0 + 3,
-                        x0 + 3 - width,
-                        y0 + 7);
-            rect = new Rectangle(x0 + 2 - width,
-                                 y0 + 2,
-                                 6,
-                                 6);
-            commands.add(new DiffDeleteCommand(rect,
-                                               delta,
-                                               fromPanelIndex,
-                                               toPanelIndex));
-          }
+          layout.line(Color.red,
+                      x0 + 3 - width,
+                      y0 + 3,
+                      x0 + 7 - width,
+                      y0 + 7);
+          layout.line(Color.red,
+                      x0 + 7 - width,
+                      y0 + 3,
+                      x0 + 3 - width,
+                      y0 + 7);
+          rect = new Rectangle(x0 + 2 - width,
+                               y0 + 2,
+                               6,
+                               6);
+          layout.addCommand(new DiffDeleteCommand(rect,
+                                                  delta,
+                                                  fromPanelIndex,
+                                                  toPanelIndex));
         }
+      }
 
-        // Draw merge left->right command.
-        if (!rightsideReadonly && !bdTo.isReadonly())
+      // Draw merge left->right command.
+      if (!layout.rightsideReadonly)
+      {
+        shape = new Polygon();
+        shape.addPoint(x1,
+                       y1);
+        shape.addPoint(x1 - 11,
+                       y1 - 4);
+        shape.addPoint(x1 - 11,
+                       y1 + 4);
+        layout.antiAliasedFill(color,
+                               shape);
+        layout.antiAliasedDraw(darkerColor,
+                               shape);
+        layout.addCommand(new DiffChangeCommand(shape,
+                                                delta,
+                                                fromPanelIndex,
+                                                toPanelIndex));
+
+        // Draw delete right command
+        if (revised.getSize() > 0)
         {
-          shape = new Polygon();
-          shape.addPoint(x1,
-                         y1);
-          shape.addPoint(x1 - 11,
-                         y1 - 4);
-          shape.addPoint(x1 - 11,
-                         y1 + 4);
-          setAntiAlias(g2);
-          g2.setColor(color);
-          g2.fillPolygon(shape);
-          g2.setColor(darkerColor);
-          g2.drawPolygon(shape);
-          resetAntiAlias(g2);
-          commands.add(new DiffChangeCommand(shape,
-                                             delta,
-                                             fromPanelIndex,
-                                             toPanelIndex));
-
-          // Draw delete right command
-          if (revised.getSize() > 0)
-          {
-            g2.setColor(Color.red);
-            g2.drawLine(x1 + 3,
-                        y1 + 3,
-                        x1 + 7,
-                        y1 + 7);
-            g2.drawLine(x1 + 7,
-                        y1 + 3,
-                        x1 + 3,
-                        y1 + 7);
-            rect = new Rectangle(x1 + 2,
-                                 y1 + 2,
-                                 6,
-                                 6);
-            commands.add(new DiffDeleteCommand(rect,
-                                               delta,
-                                               toPanelIndex,
-                                               fromPanelIndex));
-          }
+          layout.line(Color.red,
+                      x1 + 3,
+                      y1 + 3,
+                      x1 + 7,
+                      y1 + 7);
+          layout.line(Color.red,
+                      x1 + 7,
+                      y1 + 3,
+                      x1 + 3,
+                      y1 + 7);
+          rect = new Rectangle(x1 + 2,
+                               y1 + 2,
+                               6,
+                               6);
+          layout.addCommand(new DiffDeleteCommand(rect,
+                                                  delta,
+                                                  toPanelIndex,
+                                                  fromPanelIndex));
         }
       }
     }
-    catch (BadLocationException ex)
+  }
+
+  /**
+   * The height of the part of a chunk that is visible in the viewport.
+   */
+  private int getChunkHeight(JMChunk chunk,
+      Rectangle fromRect,
+      Rectangle toRect,
+      Rectangle viewportRect)
+  {
+    int height;
+
+    height = 0;
+
+    // start of diff is before the first visible line.
+    // end   of diff is before the last visible line.
+    // (The first part of diff should not be visible)
+    if (fromRect.y <= viewportRect.y && toRect.y <= viewportRect.y + viewportRect.height)
+    {
+      height = chunk.getSize() * fromRect.height;
+      height -= viewportRect.y - fromRect.y;
+    }
+    // start of diff is after the first visible line.
+    // end   of diff is after the last visible line.
+    // (The last part of diff should not be visible)
+    else if (fromRect.y > viewportRect.y && toRect.y > viewportRect.y + viewportRect.height)
+    {
+      height = chunk.getSize() * fromRect.height;
+      height -= viewportRect.y + viewportRect.height - toRect.y;
+    }
+    // start of diff is after the first visible line.
+    // end   of diff is before the last visible line.
+    // (The diff is completely visible)
+    else if (fromRect.y > viewportRect.y && toRect.y <= viewportRect.y + viewportRect.height)
+    {
+      height = chunk.getSize() * fromRect.height;
+    }
+    // start of diff is before the first visible line.
+    // end   of diff is after the last visible line.
+    // (The first part of diff should not be visible)
+    // (The last part of diff should not be visible)
+    else if (fromRect.y <= viewportRect.y && toRect.y > viewportRect.y + viewportRect.height)
     {
-      ex.printStackTrace();
+      height = viewportRect.height;
     }
 
-    resetAntiAlias(g2);
+    return height;
   }
 
   class DiffChangeCommand
@@ -763,6 +774,7 @@ public class DiffScrollComponent
     JMDelta delta;
     int fromIndex;
     int toIndex;
+    int index;
 
     Command(Shape shape,
         JMDelta delta,
@@ -785,6 +797,275 @@ public class DiffScrollComponent
     public abstract void execute();
   }
 
+  /**
+   * The shapes of the visible delta's and the commands that can be clicked on. The shapes are collected in one path
+   * for every color so that they can be painted with a few calls.
+   */
+  private class Layout
+  {
+    // Instance variables:
+    // These fields determine the shapes:
+    private JMRevision revision;
+    private int modificationCount;
+    private Rectangle fromViewRect;
+    private Rectangle toViewRect;
+    private int width;
+    private int height;
+    private JMDelta selectedDelta;
+    private boolean leftsideReadonly;
+    private boolean rightsideReadonly;
+    private Font fromFont;
+    private Font toFont;
+    private int fromVersion;
+    private int toVersion;
+    private boolean simpleDraw;
+    // The shapes:
+    private Map<Color, GeneralPath> fills = new LinkedHashMap<Color, GeneralPath>();
+    private Map<Color, GeneralPath> lines = new LinkedHashMap<Color, GeneralPath>();
+    private Map<Color, GeneralPath> antiAliasedFills = new LinkedHashMap<Color, GeneralPath>();
+    private Map<Color, GeneralPath> antiAliasedLines = new LinkedHashMap<Color, GeneralPath>();
+    // The commands sorted on the y of their bounds:
+    private List<Command> commands = new ArrayList<Command>();
+    private Command[] sortedCommands;
+    private int maxCommandHeight;
+
+    Layout(JMRevision revision)
+    {
+      FilePanel fromPanel;
+      FilePanel toPanel;
+
+      fromPanel = getFromPanel();
+      toPanel = getToPanel();
+
+      this.revision = revision;
+      modificationCount = revision.getModificationCount();
+      fromViewRect = fromPanel.getScrollPane().getViewport().getViewRect();
+      toViewRect = toPanel.getScrollPane().getViewport().getViewRect();
+      width = getWidth();
+      height = getHeight();
+      selectedDelta = diffPanel.getSelectedDelta();
+      leftsideReadonly = DiffScrollComponent.this.leftsideReadonly || fromPanel.getBufferDocument().isReadonly();
+      rightsideReadonly = DiffScrollComponent.this.rightsideReadonly || toPanel.getBufferDocument().isReadonly();
+      fromFont = fromPanel.getEditor().getFont();
+      toFont = toPanel.getEditor().getFont();
+      fromVersion = fromPanel.getBufferDocument().getVersion();
+      toVersion = toPanel.getBufferDocument().getVersion();
+      simpleDraw = DiffScrollComponent.this.simpleDraw;
+    }
+
+    void fill(Color color,
+        Shape shape)
+    {
+      append(fills,
+             color,
+             shape);
+    }
+
+    void line(Color color,
+        int x1,
+        int y1,
+        int x2,
+        int y2)
+    {
+      GeneralPath path;
+
+      path = getPath(lines,
+                     color);
+      path.moveTo(x1,
+                  y1);
+      path.lineTo(x2,
+                  y2);
+    }
+
+    void antiAliasedFill(Color color,
+        Shape shape)
+    {
+      append(antiAliasedFills,
+             color,
+             shape);
+    }
+
+    void antiAliasedDraw(Color color,
+        Shape shape)
+    {
+      append(antiAliasedLines,
+             color,
+             shape);
+    }
+
+    private void append(Map<Color, GeneralPath> paths,
+        Color color,
+        Shape shape)
+    {
+      getPath(paths,
+              color).append(shape,
+                            false);
+    }
+
+    private GeneralPath getPath(Map<Color, GeneralPath> paths,
+        Color color)
+    {
+      GeneralPath path;
+
+      path = paths.get(color);
+      if (path == null)
+      {
+        path = new GeneralPath();
+        paths.put(color,
+                  path);
+      }
+
+      return path;
+    }
+
+    void addCommand(Command command)
+    {
+      command.index = commands.size();
+      commands.add(command);
+    }
+
+    void initCommands()
+    {
+      sortedCommands = commands.toArray(new Command[commands.size()]);
+      Arrays.sort(sortedCommands,
+                  new Comparator<Command>()
+                  {
+                    public int compare(Command c1,
+                        Command c2)
+                    {
+                      return Integer.compare(c1.bounds.y,
+                                             c2.bounds.y);
+                    }
+                  });
+
+      maxCommandHeight = 0;
+      for (Command command : sortedCommands)
+      {
+        maxCommandHeight = Math.max(maxCommandHeight,
+                                    command.bounds.height);
+      }
+    }
+
+    /**
+     * The command at (x,y). If commands overlap the one that was added first wins.
+     */
+    Command getCommand(double x,
+        double y)
+    {
+      Command result;
+      Command command;
+      int low;
+      int high;
+      int mid;
+
+      // Find the first command that can contain y.
+      low = 0;
+      high = sortedCommands.length;
+      while (low < high)
+      {
+        mid = (low + high) >>> 1;
+        if (sortedCommands[mid].bounds.y < y - maxCommandHeight)
+        {
+          low = mid + 1;
+        }
+        else
+        {
+          high = mid;
+        }
+      }
+
+      result = null;
+      for (int i = low; i < sortedCommands.length; i++)
+      {
+        command = sortedCommands[i];
+        if (command.bounds.y > y)
+        {
+          break;
+        }
+
+        if (command.contains(x,
+                             y)
+            && (result == null || command.index < result.index))
+        {
+          result = command;
+        }
+      }
+
+      return result;
+    }
+
+    void paint(Graphics2D g2)
+    {
+      paint(g2,
+            fills,
+            true);
+      paint(g2,
+            lines,
+            false);
+
+      setAntiAlias(g2);
+      paint(g2,
+            antiAliasedFills,
+            true);
+      paint(g2,
+            antiAliasedLines,
+            false);
+      resetAntiAlias(g2);
+    }
+
+    private void paint(Graphics2D g2,
+        Map<Color, GeneralPath> paths,
+        boolean fill)
+    {
+      for (Map.Entry<Color, GeneralPath> entry : paths.entrySet())
+      {
+        g2.setColor(entry.getKey());
+        if (fill)
+        {
+          g2.fill(entry.getValue());
+        }
+        else
+        {
+          g2.draw(entry.getValue());
+        }
+      }
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+      Layout l;
+
+      if (!(o instanceof Layout))
+      {
+        return false;
+      }
+
+      l = (Layout) o;
+
+      return revision == l.revision
+             && modificationCount == l.modificationCount
+             && fromViewRect.equals(l.fromViewRect)
+             && toViewRect.equals(l.toViewRect)
+             && width == l.width
+             && height == l.height
+             && selectedDelta == l.selectedDelta
+             && leftsideReadonly == l.leftsideReadonly
+             && rightsideReadonly == l.rightsideReadonly
+             && fromFont.equals(l.fromFont)
+             && toFont.equals(l.toFont)
+             && fromVersion == l.fromVersion
+             && toVersion == l.toVersion
+             && simpleDraw == l.simpleDraw;
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return fromViewRect.hashCode() ^ toViewRect.hashCode();
+    }
+  }
+
   private void setAntiAlias(Graphics2D g2)
   {
     g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
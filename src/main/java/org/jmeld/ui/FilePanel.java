@@ -18,11 +18,14 @@ package org.jmeld.ui;
 
 import java.awt.Font;
 import java.awt.FontMetrics;
+import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.FocusAdapter;
 import java.awt.event.FocusEvent;
 import java.awt.event.FocusListener;
+import java.util.List;
 import javax.swing.BorderFactory;
 import javax.swing.Icon;
 import javax.swing.JButton;
@@ -36,6 +39,8 @@ import javax.swing.Timer;
 import javax.swing.border.Border;
 import javax.swing.event.CaretEvent;
 import javax.swing.event.CaretListener;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.Document;
 import javax.swing.text.Highlighter;
@@ -65,6 +70,8 @@ public class FilePanel
 {
   // Class variables:
   private static final int MAXSIZE_CHANGE_DIFF = 1000;
+  // The minimum number of lines above and below the viewport that are highlighted.
+  private static final int PREFETCH_LINES = 100;
 
   // Instance variables:
   private BufferDiffPanel diffPanel;
@@ -80,6 +87,9 @@ public class FilePanel
   private SearchHits searchHits;
   private boolean selected;
   private FilePanelBar filePanelBar;
+  // The lines that have revision highlights.
+  private int highlightedFromLine;
+  private int highlightedToLine;
 
   FilePanel(BufferDiffPanel diffPanel,
       String name,
@@ -105,6 +115,7 @@ public class FilePanel
 
     scrollPane = new JScrollPane(editor);
     scrollPane.getViewport().setScrollMode(JViewport.SIMPLE_SCROLL_MODE);
+    scrollPane.getViewport().addChangeListener(getViewportChangeListener());
     if (BufferDocumentIF.ORIGINAL.equals(name))
     {
       // Dirty trick to have the scrollbar on the other side!
@@ -372,10 +383,20 @@ public class FilePanel
     }
   }
 
+  /**
+   * Only the delta's near the viewport are highlighted. Inner diffs are expensive so this way they are only calculated
+   * for the delta's that can be seen.
+   */
   private void paintRevisionHighlights()
   {
     JMChunk original;
     JMChunk revised;
+    JMChunk chunk;
+    int[] visibleLines;
+    int margin;
+    List<JMDelta> deltas;
+    JMDelta delta;
+    int startIndex;
     int fromOffset;
     int toOffset;
     int fromOffset2;
@@ -396,11 +417,36 @@ public class FilePanel
       return;
     }
 
-    for (JMDelta delta : revision.getDeltas())
+    visibleLines = getVisibleLines();
+    margin = Math.max(PREFETCH_LINES,
+                      visibleLines[1] - visibleLines[0]);
+    highlightedFromLine = Math.max(0,
+                                   visibleLines[0] - margin);
+    highlightedToLine = visibleLines[1] + margin;
+
+    // Start at the delta before the first highlighted line.
+    deltas = revision.getDeltas();
+    startIndex = Math.max(0,
+                          revision.getDeltaIndex(BufferDocumentIF.ORIGINAL.equals(name),
+                                                 highlightedFromLine) - 1);
+    for (int i = startIndex; i < deltas.size(); i++)
     {
+      delta = deltas.get(i);
       original = delta.getOriginal();
       revised = delta.getRevised();
 
+      chunk = BufferDocumentIF.ORIGINAL.equals(name) ? original : revised;
+      if (chunk.getAnchor() + chunk.getSize() < highlightedFromLine)
+      {
+        continue;
+      }
+
+      // The delta's are sorted so all the next ones are also not shown.
+      if (chunk.getAnchor() > highlightedToLine)
+      {
+        break;
+      }
+
       if (BufferDocumentIF.ORIGINAL.equals(name))
       {
         fromOffset = bufferDocument.getOffsetForLine(original.getAnchor());
@@ -531,6 +577,48 @@ public class FilePanel
     }
   }
 
+  /**
+   * @return the first and last line of the document that are shown in the viewport.
+   */
+  private int[] getVisibleLines()
+  {
+    Rectangle r;
+    Point p;
+    int firstLine;
+    int lastLine;
+
+    r = scrollPane.getViewport().getViewRect();
+
+    p = new Point(r.x,
+                  r.y);
+    firstLine = bufferDocument.getLineForOffset(editor.viewToModel(p));
+
+    p = new Point(r.x,
+                  r.y + r.height);
+    lastLine = bufferDocument.getLineForOffset(editor.viewToModel(p));
+
+    return new int[] { firstLine, lastLine };
+  }
+
+  /**
+   * Redisplay if the viewport is scrolled to lines that have no revision highlights yet.
+   */
+  private void checkRevisionHighlights()
+  {
+    int[] visibleLines;
+
+    if (bufferDocument == null || diffPanel.getCurrentRevision() == null)
+    {
+      return;
+    }
+
+    visibleLines = getVisibleLines();
+    if (visibleLines[0] < highlightedFromLine || visibleLines[1] > highlightedToLine)
+    {
+      reDisplay();
+    }
+  }
+
   private JMHighlighter getHighlighter()
   {
     return (JMHighlighter) editor.getHighlighter();
@@ -652,6 +740,17 @@ public class FilePanel
     };
   }
 
+  public ChangeListener getViewportChangeListener()
+  {
+    return new ChangeListener()
+    {
+      public void stateChanged(ChangeEvent e)
+      {
+        checkRevisionHighlights();
+      }
+    };
+  }
+
   public FocusListener getFocusListener()
   {
     return new FocusAdapter()
@@ -22,6 +22,7 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -50,17 +51,20 @@ import org.jmeld.ui.util.ImageUtil;
 import org.jmeld.ui.util.SwingUtil;
 import org.jmeld.util.conf.ConfigurationListenerIF;
 import org.jmeld.util.file.FolderDiff;
+import org.jmeld.util.file.FolderDiffListenerIF;
 import org.jmeld.util.file.cmd.AbstractCmd;
 import org.jmeld.util.node.JMDiffNode;
 
 public class FolderDiffPanel
     extends FolderDiffForm
-    implements ConfigurationListenerIF
+    implements ConfigurationListenerIF, FolderDiffListenerIF
 {
   private JMeldPanel mainPanel;
   private FolderDiff diff;
   private ActionHandler actionHandler;
   private JMTreeTableModel treeTableModel;
+  // The UINode of every node that is shown.
+  private Map<JMDiffNode, UINode> uiNodeMap;
 
   FolderDiffPanel(JMeldPanel mainPanel,
       FolderDiff diff)
@@ -294,100 +298,110 @@ public class FolderDiffPanel
 
   private TreeTableNode filter(JMDiffNode diffNode)
   {
-    List<JMDiffNode> nodes;
-    UINode uiParentNode;
-    UINode uiNode;
     UINode rootNode;
-    JMDiffNode parent;
-    Object hierarchy;
 
-    // Filter the nodes:
-    nodes = new ArrayList<>();
+    rootNode = new UINode(getTreeTableModel(),
+                          "<root>",
+                          false);
+    uiNodeMap = new HashMap<JMDiffNode, UINode>();
+
     for (JMDiffNode node : diff.getNodes())
     {
-      if (!node.isLeaf())
+      if (isVisible(node))
       {
-        continue;
+        addUINode(rootNode,
+                  node);
       }
+    }
 
-      if (node.isCompareEqual(JMDiffNode.Compare.Equal))
-      {
-        if (leftRightUnChangedButton.isSelected())
-        {
-          nodes.add(node);
-        }
-      }
-      else if (node.isCompareEqual(JMDiffNode.Compare.NotEqual))
-      {
-        if (leftRightChangedButton.isSelected())
-        {
-          nodes.add(node);
-        }
-      }
-      else if (node.isCompareEqual(JMDiffNode.Compare.RightMissing))
-      {
-        if (onlyLeftButton.isSelected())
-        {
-          nodes.add(node);
-        }
-      }
-      else if (node.isCompareEqual(JMDiffNode.Compare.LeftMissing))
-      {
-        if (onlyRightButton.isSelected())
-        {
-          nodes.add(node);
-        }
-      }
+    return rootNode;
+  }
+
+  private boolean isVisible(JMDiffNode node)
+  {
+    if (!node.isLeaf())
+    {
+      return false;
     }
 
-    rootNode = new UINode(getTreeTableModel(),
-                          "<root>",
-                          false);
+    if (node.isCompareEqual(JMDiffNode.Compare.Equal))
+    {
+      return leftRightUnChangedButton.isSelected();
+    }
+
+    if (node.isCompareEqual(JMDiffNode.Compare.NotEqual))
+    {
+      return leftRightChangedButton.isSelected();
+    }
+
+    if (node.isCompareEqual(JMDiffNode.Compare.RightMissing))
+    {
+      return onlyLeftButton.isSelected();
+    }
+
+    if (node.isCompareEqual(JMDiffNode.Compare.LeftMissing))
+    {
+      return onlyRightButton.isSelected();
+    }
+
+    return false;
+  }
+
+  /**
+   * Add a node to the hierarchy that has been selected.
+   *
+   * @return the UINode of the node.
+   */
+  private UINode addUINode(UINode rootNode,
+      JMDiffNode node)
+  {
+    UINode uiParentNode;
+    UINode uiNode;
+    JMDiffNode parent;
+    Object hierarchy;
+
     hierarchy = hierarchyComboBox.getSelectedItem();
+    uiNode = null;
 
-    // Build the hierarchy:
     if (hierarchy == FolderSettings.FolderView.packageView)
     {
-      for (JMDiffNode node : nodes)
-      {
-        parent = node.getParent();
-        uiNode = new UINode(getTreeTableModel(),
-                            node);
+      parent = node.getParent();
+      uiNode = new UINode(getTreeTableModel(),
+                          node);
 
-        if (parent != null)
-        {
-          uiParentNode = new UINode(getTreeTableModel(),
-                                    parent);
-          uiParentNode = rootNode.addChild(uiParentNode);
-          uiParentNode.addChild(uiNode);
-        }
-        else
-        {
-          rootNode.addChild(uiNode);
-        }
+      if (parent != null)
+      {
+        uiParentNode = new UINode(getTreeTableModel(),
+                                  parent);
+        uiParentNode = rootNode.addChild(uiParentNode);
+        uiNode = uiParentNode.addChild(uiNode);
+      }
+      else
+      {
+        uiNode = rootNode.addChild(uiNode);
       }
     }
     else if (hierarchy == FolderSettings.FolderView.fileView)
     {
-      for (JMDiffNode node : nodes)
-      {
-        rootNode.addChild(new UINode(getTreeTableModel(),
-                                     node));
-      }
+      uiNode = rootNode.addChild(new UINode(getTreeTableModel(),
+                                            node));
     }
     else if (hierarchy == FolderSettings.FolderView.directoryView)
     {
-      for (JMDiffNode node : nodes)
-      {
-        addDirectoryViewNode(rootNode,
-                             node);
-      }
+      uiNode = addDirectoryViewNode(rootNode,
+                                    node);
     }
 
-    return rootNode;
+    if (uiNode != null)
+    {
+      uiNodeMap.put(node,
+                    uiNode);
+    }
+
+    return uiNode;
   }
 
-  private void addDirectoryViewNode(UINode rootNode,
+  private UINode addDirectoryViewNode(UINode rootNode,
       JMDiffNode node)
   {
     UINode parent;
@@ -410,6 +424,120 @@ public class FolderDiffPanel
       parent = parent.addChild(new UINode(getTreeTableModel(),
                                           uiNode));
     }
+
+    return parent;
+  }
+
+  /**
+   * Files have been changed on disk. Only the UINodes of the changed nodes are updated.
+   */
+  public void nodesChanged(Collection<JMDiffNode> changedNodes,
+      Collection<JMDiffNode> removedNodes)
+  {
+    UINode uiNode;
+
+    for (JMDiffNode node : removedNodes)
+    {
+      removeUINode(node);
+    }
+
+    for (JMDiffNode node : changedNodes)
+    {
+      if (!node.isLeaf())
+      {
+        continue;
+      }
+
+      uiNode = uiNodeMap.get(node);
+      if (!isVisible(node))
+      {
+        removeUINode(node);
+      }
+      else if (uiNode == null)
+      {
+        insertUINode(node);
+      }
+      else
+      {
+        getTreeTableModel().nodeChanged(uiNode);
+      }
+    }
+
+    // The states of the directories are painted again.
+    mainPanel.checkActions();
+    repaint();
+  }
+
+  public void folderDiffChanged()
+  {
+    doRefresh(null);
+  }
+
+  private void insertUINode(JMDiffNode node)
+  {
+    UINode rootNode;
+    UINode uiNode;
+    UINode topNode;
+
+    rootNode = getTreeTableModel().getRoot();
+    uiNode = addUINode(rootNode,
+                       node);
+    if (uiNode == null)
+    {
+      return;
+    }
+
+    // Parents that have been created for this node have no other children.
+    topNode = uiNode;
+    while (topNode.getParent() != rootNode && topNode.getParent().getChildCount() == 1)
+    {
+      topNode = topNode.getParent();
+    }
+
+    getTreeTableModel().nodeInserted(topNode.getParent(),
+                                     topNode);
+    folderTreeTable.expandPath(getTreeTableModel().getPath(uiNode.getParent()));
+  }
+
+  private void removeUINode(JMDiffNode node)
+  {
+    UINode rootNode;
+    UINode uiNode;
+    UINode parent;
+    int index;
+
+    uiNode = uiNodeMap.remove(node);
+    if (uiNode == null)
+    {
+      return;
+    }
+
+    // Parents without other children are removed too.
+    rootNode = getTreeTableModel().getRoot();
+    while (uiNode.getParent() != rootNode && uiNode.getParent().getChildCount() == 1)
+    {
+      uiNode = uiNode.getParent();
+    }
+
+    parent = uiNode.getParent();
+    index = parent.removeChild(uiNode);
+    getTreeTableModel().nodeRemoved(parent,
+                                    index,
+                                    uiNode);
+  }
+
+  @Override
+  public void addNotify()
+  {
+    super.addNotify();
+    diff.startWatching(this);
+  }
+
+  @Override
+  public void removeNotify()
+  {
+    diff.stopWatching();
+    super.removeNotify();
   }
 
   public void doSelectPreviousRow(ActionEvent ae)
@@ -659,12 +787,17 @@ public class FolderDiffPanel
     @Override
     protected void done()
     {
-      treeTableModel = null;
-      folderTreeTable.setTreeTableModel(getTreeTableModel());
-      folderTreeTable.expandAll();
+      resetTreeTableModel();
     }
   }
 
+  private void resetTreeTableModel()
+  {
+    treeTableModel = null;
+    folderTreeTable.setTreeTableModel(getTreeTableModel());
+    folderTreeTable.expandAll();
+  }
+
   public boolean isRemoveRightEnabled()
   {
     return !getEditorSettings().getRightsideReadonly();
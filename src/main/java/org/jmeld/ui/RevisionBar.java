@@ -25,26 +25,34 @@ import java.awt.Rectangle;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
 import javax.swing.AbstractButton;
 import javax.swing.BorderFactory;
 import javax.swing.JComponent;
 import javax.swing.JScrollBar;
 import javax.swing.JViewport;
 import javax.swing.text.JTextComponent;
+import org.jdesktop.swingworker.SwingWorker;
 import org.jmeld.diff.JMChunk;
 import org.jmeld.diff.JMDelta;
 import org.jmeld.diff.JMRevision;
+import org.jmeld.settings.JMeldSettings;
 import org.jmeld.ui.text.BufferDocumentIF;
 import org.jmeld.ui.util.ColorUtil;
 import org.jmeld.ui.util.Colors;
 import org.jmeld.ui.util.RevisionUtil;
+import org.jmeld.util.conf.ConfigurationListenerIF;
 
 public class RevisionBar
     extends JComponent
+    implements ConfigurationListenerIF
 {
   private BufferDiffPanel diffPanel;
   private FilePanel filePanel;
   private boolean original;
+  private Overview overview;
+  private OverviewWorker overviewWorker;
 
   public RevisionBar(BufferDiffPanel diffPanel,
       FilePanel filePanel,
@@ -57,6 +65,20 @@ public class RevisionBar
     setBorder(BorderFactory.createLineBorder(ColorUtil.darker(ColorUtil.darker(Colors.getPanelBackground()))));
 
     addMouseListener(getMouseListener());
+
+    JMeldSettings.getInstance().addConfigurationListener(this);
+  }
+
+  public void configurationChanged()
+  {
+    // The colors might have changed.
+    if (overviewWorker != null)
+    {
+      overviewWorker.cancel(true);
+      overviewWorker = null;
+    }
+    overview = null;
+    repaint();
   }
 
   private MouseListener getMouseListener()
@@ -78,6 +100,8 @@ public class RevisionBar
         JViewport viewport;
         int numberOfLines;
         JMChunk original;
+        JMDelta delta;
+        int index;
 
         r = getDrawableRectangle();
         if (r == null)
@@ -116,8 +140,11 @@ public class RevisionBar
         // that chunk.
         lineBefore = ((y - 3) * numberOfLines) / r.height;
         lineAfter = ((y + 3) * numberOfLines) / r.height;
-        for (JMDelta delta : revision.getDeltas())
+        index = revision.getDeltaIndex(true,
+                                       lineBefore) + 1;
+        if (index < revision.getDeltas().size())
         {
+          delta = revision.getDeltas().get(index);
           original = delta.getOriginal();
 
           // The chunk starts within the bounds of the line-resolution.
@@ -161,14 +188,15 @@ public class RevisionBar
     return r;
   }
 
+  /**
+   * Paint the overview of the revision. The overview is calculated in the background because a revision can have a lot
+   * of delta's. Until it is ready the previous overview is painted (stretched if the bar has been resized).
+   */
   public void paintComponent(Graphics g)
   {
     Rectangle r;
     Graphics2D g2;
     JMRevision revision;
-    JMChunk chunk;
-    int y;
-    int height;
     int numberOfLines;
     Rectangle clipBounds;
 
@@ -190,37 +218,191 @@ public class RevisionBar
     }
 
     numberOfLines = getNumberOfLines(revision);
-    if (numberOfLines <= 0)
+    if (numberOfLines <= 0 || r.height <= 0)
     {
       return;
     }
 
-    for (JMDelta delta : revision.getDeltas())
+    if (overview == null || !overview.isUpToDate(revision,
+                                                  numberOfLines,
+                                                  r.height))
     {
-      if (delta.isChange() && !delta.isReallyChanged())
+      if (overviewWorker == null || !overviewWorker.overview.isUpToDate(revision,
+                                                                         numberOfLines,
+                                                                         r.height))
       {
-        continue;
-      }
+        if (overviewWorker != null)
+        {
+          overviewWorker.cancel(true);
+        }
 
-      chunk = original ? delta.getOriginal() : delta.getRevised();
+        overviewWorker = new OverviewWorker(new Overview(revision,
+                                                         numberOfLines,
+                                                         r.height));
+        overviewWorker.execute();
+      }
 
-      g.setColor(RevisionUtil.getColor(delta));
-      y = r.y + (r.height * chunk.getAnchor()) / numberOfLines;
-      height = (r.height * chunk.getSize()) / numberOfLines;
-      if (height <= 0)
+      if (overview == null || overview.revision != revision)
       {
-        height = 1;
+        return;
       }
-
-      g.fillRect(0,
-                 y,
-                 r.width,
-                 height);
     }
+
+    g.drawImage(overview.image,
+                0,
+                r.y,
+                r.width,
+                r.height,
+                null);
   }
 
   private int getNumberOfLines(JMRevision revision)
   {
     return original ? revision.getOrgSize() : revision.getRevSize();
   }
+
+  /**
+   * One pixel wide image with the color of the delta's for every pixel row of the bar.
+   */
+  private class Overview
+  {
+    private JMRevision revision;
+    private int modificationCount;
+    private int numberOfLines;
+    private int height;
+    // The chunks to paint: anchor, size and color of every chunk.
+    private int[] chunks;
+    private BufferedImage image;
+
+    Overview(JMRevision revision,
+        int numberOfLines,
+        int height)
+    {
+      this.revision = revision;
+      this.numberOfLines = numberOfLines;
+      this.height = height;
+
+      modificationCount = revision.getModificationCount();
+      initChunks();
+    }
+
+    /**
+     * The delta's can be changed on the event dispatch thread while the image is calculated. Therefore the chunks are
+     * copied here. A change that has not been reduced to nothing yet is painted, calculating the change revision of
+     * all delta's would take much longer than the overview itself.
+     */
+    private void initChunks()
+    {
+      int index;
+      JMChunk chunk;
+
+      chunks = new int[revision.getDeltas().size() * 3];
+      index = 0;
+      for (JMDelta delta : revision.getDeltas())
+      {
+        if (delta.isChange() && delta.getKnownReallyChanged() == Boolean.FALSE)
+        {
+          continue;
+        }
+
+        chunk = original ? delta.getOriginal() : delta.getRevised();
+        chunks[index++] = chunk.getAnchor();
+        chunks[index++] = chunk.getSize();
+        chunks[index++] = RevisionUtil.getColor(delta).getRGB();
+      }
+
+      chunks = Arrays.copyOf(chunks,
+                             index);
+    }
+
+    boolean isUpToDate(JMRevision revision,
+        int numberOfLines,
+        int height)
+    {
+      return this.revision == revision && modificationCount == revision.getModificationCount()
+          && this.numberOfLines == numberOfLines && this.height == height;
+    }
+
+    void calculate()
+    {
+      int[] rows;
+      int y;
+      int rowHeight;
+      int rgb;
+
+      rows = new int[height];
+      Arrays.fill(rows,
+                  Color.white.getRGB());
+
+      for (int index = 0; index < chunks.length; index += 3)
+      {
+        if (Thread.currentThread().isInterrupted())
+        {
+          return;
+        }
+
+        rgb = chunks[index + 2];
+        y = (int) (((long) height * chunks[index]) / numberOfLines);
+        rowHeight = (int) (((long) height * chunks[index + 1]) / numberOfLines);
+        if (rowHeight <= 0)
+        {
+          rowHeight = 1;
+        }
+
+        for (int i = y; i < y + rowHeight && i < height; i++)
+        {
+          rows[i] = rgb;
+        }
+      }
+
+      image = new BufferedImage(1,
+                                height,
+                                BufferedImage.TYPE_INT_RGB);
+      image.setRGB(0,
+                   0,
+                   1,
+                   height,
+                   rows,
+                   0,
+                   1);
+      chunks = null;
+    }
+  }
+
+  private class OverviewWorker
+      extends SwingWorker<Overview, Object>
+  {
+    private Overview overview;
+
+    OverviewWorker(Overview overview)
+    {
+      this.overview = overview;
+    }
+
+    @Override
+    public Overview doInBackground()
+    {
+      overview.calculate();
+
+      return overview;
+    }
+
+    @Override
+    protected void done()
+    {
+      if (overviewWorker != this)
+      {
+        return;
+      }
+
+      overviewWorker = null;
+      if (isCancelled() || overview.image == null)
+      {
+        return;
+      }
+
+      RevisionBar.this.overview = overview;
+      repaint();
+    }
+  }
 }
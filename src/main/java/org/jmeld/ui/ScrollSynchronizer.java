@@ -122,7 +122,6 @@ public class ScrollSynchronizer
     int currentIndex;
     int nextIndex;
     List<JMDelta> deltas;
-    int i;
 
     revision = diffPanel.getCurrentRevision();
     if (revision == null)
@@ -137,25 +136,37 @@ public class ScrollSynchronizer
     currentDelta = null;
     currentIndex = -1;
 
-    i = 0;
-    for (JMDelta delta : deltas)
+    if (!deltas.isEmpty())
     {
-      original = delta.getOriginal();
-
-      currentIndex = i;
-      i++;
+      // The last delta that starts before the line. If the line is not
+      //   within that delta then the next one is the current index.
+      currentIndex = revision.getDeltaIndex(true,
+                                            line);
+      if (currentIndex > 0)
+      {
+        // The line can also be at the end of the previous delta.
+        original = deltas.get(currentIndex - 1).getOriginal();
+        if (line <= original.getAnchor() + original.getSize())
+        {
+          currentIndex--;
+        }
+      }
 
-      if (line >= original.getAnchor())
+      if (currentIndex >= 0)
       {
+        original = deltas.get(currentIndex).getOriginal();
         if (line <= original.getAnchor() + original.getSize())
         {
-          currentDelta = delta;
-          break;
+          currentDelta = deltas.get(currentIndex);
+        }
+        else if (currentIndex < deltas.size() - 1)
+        {
+          currentIndex++;
         }
       }
       else
       {
-        break;
+        currentIndex = 0;
       }
     }
 
@@ -75,6 +75,25 @@ public class UINode
     return c;
   }
 
+  /**
+   * @return the index the child had.
+   */
+  public int removeChild(UINode child)
+  {
+    int index;
+
+    checkSort();
+    index = children.indexOf(child);
+    if (index != -1)
+    {
+      children.remove(index);
+      childrenMap.remove(child.getName());
+      child.setParent(null);
+    }
+
+    return index;
+  }
+
   private void setParent(UINode parent)
   {
     this.parent = parent;
@@ -58,6 +58,9 @@ public class EditorSettingsForm
     detectEncodingRadioButton = new javax.swing.JRadioButton();
     defaultEncodingRadioButton = new javax.swing.JRadioButton();
     detailHeader5 = new org.jmeld.ui.swing.DetailHeader();
+    detailHeader7 = new org.jmeld.ui.swing.DetailHeader();
+    jLabel7 = new javax.swing.JLabel();
+    diffAlgorithmComboBox = new javax.swing.JComboBox();
     ignoreCaseCheckBox = new javax.swing.JCheckBox();
     ignoreBlankLinesCheckBox = new javax.swing.JCheckBox();
     ignoreEOLCheckBox = new javax.swing.JCheckBox();
@@ -375,6 +378,15 @@ public class EditorSettingsForm
                                                                     0,
                                                                     0));
 
+    detailHeader7.setText("Diff");
+
+    jLabel7.setText("Algorithm");
+
+    diffAlgorithmComboBox.setModel(new javax.swing.DefaultComboBoxModel(new String[]
+    {
+        "Item 1", "Item 2", "Item 3", "Item 4"
+    }));
+
     detailHeader6.setText("Toolbar appearance");
 
     jLabel6.setText("Icon in button");
@@ -430,6 +442,18 @@ public class EditorSettingsForm
                          org.jdesktop.layout.GroupLayout.PREFERRED_SIZE,
                          org.jdesktop.layout.GroupLayout.DEFAULT_SIZE,
                          org.jdesktop.layout.GroupLayout.PREFERRED_SIZE)
+                    .add(detailHeader7,
+                         org.jdesktop.layout.GroupLayout.PREFERRED_SIZE,
+                         org.jdesktop.layout.GroupLayout.DEFAULT_SIZE,
+                         org.jdesktop.layout.GroupLayout.PREFERRED_SIZE)
+                    .add(jPanel2Layout.createSequentialGroup().add(12,
+                                                                   12,
+                                                                   12)
+                        .add(jLabel7).addPreferredGap(org.jdesktop.layout.LayoutStyle.RELATED)
+                        .add(diffAlgorithmComboBox,
+                             org.jdesktop.layout.GroupLayout.PREFERRED_SIZE,
+                             org.jdesktop.layout.GroupLayout.DEFAULT_SIZE,
+                             org.jdesktop.layout.GroupLayout.PREFERRED_SIZE))
                     .add(detailHeader6,
                          org.jdesktop.layout.GroupLayout.PREFERRED_SIZE,
                          org.jdesktop.layout.GroupLayout.DEFAULT_SIZE,
@@ -473,6 +497,16 @@ public class EditorSettingsForm
                          org.jdesktop.layout.GroupLayout.PREFERRED_SIZE,
                          org.jdesktop.layout.GroupLayout.DEFAULT_SIZE,
                          org.jdesktop.layout.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(org.jdesktop.layout.LayoutStyle.RELATED).add(detailHeader7,
+                                                                              org.jdesktop.layout.GroupLayout.PREFERRED_SIZE,
+                                                                              org.jdesktop.layout.GroupLayout.DEFAULT_SIZE,
+                                                                              org.jdesktop.layout.GroupLayout.PREFERRED_SIZE)
+                .addPreferredGap(org.jdesktop.layout.LayoutStyle.RELATED)
+                .add(jPanel2Layout.createParallelGroup(org.jdesktop.layout.GroupLayout.BASELINE).add(jLabel7)
+                    .add(diffAlgorithmComboBox,
+                         org.jdesktop.layout.GroupLayout.PREFERRED_SIZE,
+                         org.jdesktop.layout.GroupLayout.DEFAULT_SIZE,
+                         org.jdesktop.layout.GroupLayout.PREFERRED_SIZE))
                 .addPreferredGap(org.jdesktop.layout.LayoutStyle.RELATED).add(detailHeader6,
                                                                               org.jdesktop.layout.GroupLayout.PREFERRED_SIZE,
                                                                               org.jdesktop.layout.GroupLayout.DEFAULT_SIZE,
@@ -565,7 +599,9 @@ public class EditorSettingsForm
   protected org.jmeld.ui.swing.DetailHeader detailHeader4;
   protected org.jmeld.ui.swing.DetailHeader detailHeader5;
   protected org.jmeld.ui.swing.DetailHeader detailHeader6;
+  protected org.jmeld.ui.swing.DetailHeader detailHeader7;
   protected javax.swing.JRadioButton detectEncodingRadioButton;
+  protected javax.swing.JComboBox diffAlgorithmComboBox;
   protected javax.swing.JButton fontChooserButton;
   protected org.jmeld.ui.swing.GradientLabel gradientLabel1;
   protected javax.swing.JCheckBox ignoreBlankLinesCheckBox;
@@ -580,6 +616,7 @@ public class EditorSettingsForm
   protected javax.swing.JLabel jLabel4;
   protected javax.swing.JLabel jLabel5;
   protected javax.swing.JLabel jLabel6;
+  protected javax.swing.JLabel jLabel7;
   protected javax.swing.JPanel jPanel1;
   protected javax.swing.JPanel jPanel2;
   protected javax.swing.JCheckBox leftsideReadonlyCheckBox;
@@ -16,6 +16,7 @@ import javax.swing.JDialog;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 import org.jmeld.JMeld;
+import org.jmeld.diff.JMDiffAlgorithmType;
 import org.jmeld.settings.EditorSettings;
 import org.jmeld.settings.JMeldSettings;
 import org.jmeld.ui.util.EmptyIcon;
@@ -90,6 +91,11 @@ public class EditorSettingsPanel
     specificEncodingComboBox.setSelectedItem(getEditorSettings().getSpecificFileEncodingName());
     specificEncodingComboBox.addActionListener(getSpecificEncodingNameAction());
 
+    // Diff:
+    diffAlgorithmComboBox.setModel(getDiffAlgorithmModel());
+    diffAlgorithmComboBox.setSelectedItem(getEditorSettings().getDiffAlgorithm());
+    diffAlgorithmComboBox.addActionListener(getDiffAlgorithmAction());
+
     // Toolbar appearance:
     toolbarButtonIconComboBox.setModel(getToolbarButtonIconModel());
     toolbarButtonIconComboBox.setSelectedItem(getEditorSettings().getToolbarButtonIcon());
@@ -259,6 +265,13 @@ public class EditorSettingsPanel
     };
   }
 
+  private ActionListener getDiffAlgorithmAction()
+  {
+    return (e) -> {
+      getEditorSettings().setDiffAlgorithm((JMDiffAlgorithmType) diffAlgorithmComboBox.getSelectedItem());
+    };
+  }
+
   private ActionListener getLookAndFeelAction()
   {
     return (e) -> {
@@ -342,6 +355,11 @@ public class EditorSettingsPanel
     return new DefaultComboBoxModel(LookAndFeelManager.getInstance().getInstalledLookAndFeels().toArray());
   }
 
+  private ComboBoxModel getDiffAlgorithmModel()
+  {
+    return new DefaultComboBoxModel(getEditorSettings().getDiffAlgorithms());
+  }
+
   private ComboBoxModel getToolbarButtonIconModel()
   {
     return new DefaultComboBoxModel(getEditorSettings().getToolbarButtonIcons());
@@ -402,6 +420,8 @@ public class EditorSettingsPanel
     detectEncodingRadioButton.setSelected(settings.getDetectFileEncodingEnabled());
     specificEncodingRadioButton.setSelected(settings.getSpecificFileEncodingEnabled());
 
+    diffAlgorithmComboBox.setSelectedItem(getEditorSettings().getDiffAlgorithm());
+
     toolbarButtonIconComboBox.setSelectedItem(getEditorSettings().getToolbarButtonIcon());
     toolbarButtonTextEnabledCheckBox.setSelected(getEditorSettings().isToolbarButtonTextEnabled());
 
@@ -54,13 +54,15 @@ public class JMHighlighter
     UPPER_LAYER = layers.get(layers.size() - 1);
   }
 
-  private Map<Integer, List<Highlighter.Highlight>> highlights;
+  private Map<Integer, Layer> highlights;
   private JTextComponent component;
   private boolean doNotRepaint;
+  private List<HighlightInfo> visibleHighlights;
 
   public JMHighlighter()
   {
-    highlights = new HashMap<Integer, List<Highlighter.Highlight>>();
+    highlights = new HashMap<Integer, Layer>();
+    visibleHighlights = new ArrayList<HighlightInfo>();
   }
 
   public void setDoNotRepaint(boolean doNotRepaint)
@@ -76,8 +78,7 @@ public class JMHighlighter
    */
   public void paint(Graphics g)
   {
-    int upperLayer;
-    List<Highlighter.Highlight> list;
+    Layer layerHighlights;
     Rectangle a;
     Insets insets;
     Rectangle clip;
@@ -108,13 +109,17 @@ public class JMHighlighter
     a = null;
     for (Integer layer : layers)
     {
-      list = highlights.get(layer);
-      if (list == null)
+      layerHighlights = highlights.get(layer);
+      if (layerHighlights == null)
       {
         continue;
       }
 
-      if (list.size() == 0)
+      // Don't paint highlighters that are not in sight!
+      layerHighlights.getHighlights(startOffset,
+                                    endOffset,
+                                    visibleHighlights);
+      if (visibleHighlights.isEmpty())
       {
         continue;
       }
@@ -129,14 +134,8 @@ public class JMHighlighter
         a.height -= insets.top + insets.bottom;
       }
 
-      for (Highlighter.Highlight hli : list)
+      for (HighlightInfo hli : visibleHighlights)
       {
-        // Don't paint highlighters that are not in sight!
-        if (hli.getStartOffset() > endOffset || hli.getEndOffset() < startOffset)
-        {
-          continue;
-        }
-
         hli.getPainter().paint(g,
                                hli.getStartOffset(),
                                hli.getEndOffset(),
@@ -251,8 +250,12 @@ public class JMHighlighter
     doc = component.getDocument();
 
     hli = (HighlightInfo) object;
+
+    // The highlight is inserted again at its new position.
+    getLayer(layer).remove(hli);
     hli.p0 = doc.createPosition(p0);
     hli.p1 = doc.createPosition(p1);
+    getLayer(layer).add(hli);
 
     repaint();
   }
@@ -279,9 +282,9 @@ public class JMHighlighter
     index = 0;
     for (Integer layer : layers)
     {
-      for (Highlighter.Highlight hli : getLayer(layer))
+      for (int i = 0; i < getLayer(layer).size(); i++)
       {
-        result[index] = hli;
+        result[index] = getLayer(layer).get(i);
         index++;
       }
     }
@@ -289,14 +292,14 @@ public class JMHighlighter
     return result;
   }
 
-  private List<Highlighter.Highlight> getLayer(Integer layer)
+  private Layer getLayer(Integer layer)
   {
-    List<Highlighter.Highlight> result;
+    Layer result;
 
     result = highlights.get(layer);
     if (result == null)
     {
-      result = new ArrayList<Highlighter.Highlight>();
+      result = new Layer();
       highlights.put(layer,
                      result);
     }
@@ -336,4 +339,168 @@ public class JMHighlighter
       return painter;
     }
   }
+
+  /**
+   * The highlights of one layer sorted on their start offset. Positions move along with the text of the document so
+   * the highlights stay sorted when the document is edited.
+   * <p>
+   * The layer is indexed by a tree on top of the sorted highlights in which every node holds the position of the
+   * highlight that ends last in its subtree. The order of positions never changes by an edit so the tree stays valid
+   * until the layer itself is changed. Finding the k visible highlights takes O(k log n).
+   */
+  private static class Layer
+  {
+    private List<HighlightInfo> list = new ArrayList<HighlightInfo>();
+    private Position[] maxEnds;
+    private int numberOfLeaves;
+
+    int size()
+    {
+      return list.size();
+    }
+
+    HighlightInfo get(int index)
+    {
+      return list.get(index);
+    }
+
+    void add(HighlightInfo hli)
+    {
+      int index;
+
+      // Highlights are mostly added in ascending order.
+      index = list.size();
+      if (index > 0 && list.get(index - 1).getStartOffset() > hli.getStartOffset())
+      {
+        index = getToIndex(hli.getStartOffset());
+      }
+
+      list.add(index,
+               hli);
+      maxEnds = null;
+    }
+
+    void remove(Object hli)
+    {
+      if (list.remove(hli))
+      {
+        maxEnds = null;
+      }
+    }
+
+    void clear()
+    {
+      list.clear();
+      maxEnds = null;
+    }
+
+    /**
+     * Collect the highlights that overlap with the range in ascending order.
+     */
+    void getHighlights(int startOffset,
+        int endOffset,
+        List<HighlightInfo> result)
+    {
+      result.clear();
+      if (list.isEmpty())
+      {
+        return;
+      }
+
+      if (maxEnds == null)
+      {
+        initMaxEnds();
+      }
+
+      collect(1,
+              0,
+              numberOfLeaves,
+              startOffset,
+              getToIndex(endOffset),
+              result);
+    }
+
+    private void collect(int node,
+        int fromIndex,
+        int toIndex,
+        int startOffset,
+        int endIndex,
+        List<HighlightInfo> result)
+    {
+      int middle;
+
+      if (fromIndex >= endIndex || maxEnds[node] == null || maxEnds[node].getOffset() < startOffset)
+      {
+        return;
+      }
+
+      if (node >= numberOfLeaves)
+      {
+        result.add(list.get(fromIndex));
+        return;
+      }
+
+      middle = (fromIndex + toIndex) >>> 1;
+      collect(2 * node,
+              fromIndex,
+              middle,
+              startOffset,
+              endIndex,
+              result);
+      collect(2 * node + 1,
+              middle,
+              toIndex,
+              startOffset,
+              endIndex,
+              result);
+    }
+
+    /**
+     * @return the index after the last highlight that starts at or before the offset.
+     */
+    private int getToIndex(int offset)
+    {
+      int low;
+      int high;
+      int mid;
+
+      low = 0;
+      high = list.size();
+      while (low < high)
+      {
+        mid = (low + high) >>> 1;
+        if (list.get(mid).getStartOffset() <= offset)
+        {
+          low = mid + 1;
+        }
+        else
+        {
+          high = mid;
+        }
+      }
+
+      return low;
+    }
+
+    private void initMaxEnds()
+    {
+      Position left;
+      Position right;
+
+      numberOfLeaves = Integer.highestOneBit(Math.max(1,
+                                                      list.size() - 1)) << 1;
+      maxEnds = new Position[2 * numberOfLeaves];
+      for (int i = 0; i < list.size(); i++)
+      {
+        maxEnds[numberOfLeaves + i] = list.get(i).p1;
+      }
+
+      for (int node = numberOfLeaves - 1; node > 0; node--)
+      {
+        left = maxEnds[2 * node];
+        right = maxEnds[2 * node + 1];
+        maxEnds[node] = right == null || (left != null && left.getOffset() > right.getOffset()) ? left : right;
+      }
+    }
+  }
 }
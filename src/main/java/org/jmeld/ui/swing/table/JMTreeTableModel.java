@@ -20,6 +20,7 @@ import java.util.ArrayList;
 import java.util.List;
 import javax.swing.table.TableCellEditor;
 import javax.swing.table.TableCellRenderer;
+import javax.swing.tree.TreePath;
 import org.jdesktop.swingx.treetable.DefaultTreeTableModel;
 import org.jmeld.ui.UINode;
 
@@ -33,6 +34,12 @@ public abstract class JMTreeTableModel
     columns = new ArrayList<Column>();
   }
 
+  @Override
+  public UINode getRoot()
+  {
+    return (UINode) super.getRoot();
+  }
+
   public Object getChild(Object parent,
       int index)
   {
@@ -44,6 +51,42 @@ public abstract class JMTreeTableModel
     return ((UINode) parent).getChildCount();
   }
 
+  /**
+   * The values of a node have changed.
+   */
+  public void nodeChanged(UINode node)
+  {
+    modelSupport.firePathChanged(getPath(node));
+  }
+
+  /**
+   * A child (with all its descendants) has been added to a parent.
+   */
+  public void nodeInserted(UINode parent,
+      UINode child)
+  {
+    modelSupport.fireChildAdded(getPath(parent),
+                                parent.getIndex(child),
+                                child);
+  }
+
+  /**
+   * A child (with all its descendants) has been removed from a parent.
+   */
+  public void nodeRemoved(UINode parent,
+      int index,
+      UINode child)
+  {
+    modelSupport.fireChildRemoved(getPath(parent),
+                                  index,
+                                  child);
+  }
+
+  public TreePath getPath(UINode node)
+  {
+    return new TreePath(getPathToRoot(node));
+  }
+
   public Column addColumn(String id,
       String columnGroupName,
       String columnName,
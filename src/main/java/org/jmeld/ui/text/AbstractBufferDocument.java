@@ -19,11 +19,9 @@ package org.jmeld.ui.text;
 import java.io.Reader;
 import java.io.Writer;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
-import javax.swing.text.BadLocationException;
 import javax.swing.text.DefaultEditorKit;
 import javax.swing.text.Element;
 import javax.swing.text.GapContent;
@@ -39,17 +37,27 @@ public abstract class AbstractBufferDocument
   // instance variables:
   private String name;
   private String shortName;
+  private LineIndex lineIndex;
   private Line[] lineArray;
-  private int[] lineOffsetArray;
   private PlainDocument document;
-  private MyGapContent content;
+  private BufferContentIF content;
   private List<BufferDocumentChangeListenerIF> listeners;
 
   // Variables to detect if this document has been changed (and needs
   //   to be saved!)
   private boolean changed;
   private int originalLength;
-  private int digest;
+  private long digest;
+  // The digest of the current content. It is maintained on every edit
+  //   by replacing the part of the changed lines.
+  private long lineDigest;
+  private boolean lineDigestValid;
+  // The hashes of the lines when the document was read or written.
+  private int[] originalLineHashes;
+
+  // Incremented on every change so background tasks can detect that
+  //   their result is outdated.
+  private int version;
 
   public AbstractBufferDocument()
   {
@@ -104,40 +112,44 @@ public abstract class AbstractBufferDocument
     return changed;
   }
 
+  public int getVersion()
+  {
+    return version;
+  }
+
   public Line[] getLines()
   {
     initLines();
 
+    if (lineArray == null)
+    {
+      lineArray = lineIndex.toArray();
+    }
+
     return lineArray;
   }
 
   public String getLineText(int lineNumber)
   {
-    Line[] la;
-
-    la = getLines();
-    if (la == null)
-    {
-      return null;
-    }
+    initLines();
 
-    if (lineNumber >= la.length || lineNumber < 0)
+    if (lineNumber >= lineIndex.size() || lineNumber < 0)
     {
       return "<NO LINE>";
     }
 
-    return la[lineNumber].toString();
+    return lineIndex.get(lineNumber).toString();
   }
 
   public int getNumberOfLines()
   {
-    return getLines().length;
+    initLines();
+
+    return lineIndex.size();
   }
 
   public int getOffsetForLine(int lineNumber)
   {
-    Line[] la;
-
     if (lineNumber < 0)
     {
       return -1;
@@ -148,49 +160,54 @@ public abstract class AbstractBufferDocument
       return 0;
     }
 
-    la = getLines();
-    if (la == null)
-    {
-      return -1;
-    }
+    initLines();
 
-    if (lineNumber > la.length)
+    if (lineNumber > lineIndex.size())
     {
-      lineNumber = la.length;
+      lineNumber = lineIndex.size();
     }
 
-    return la[lineNumber - 1].getOffset();
+    return lineIndex.get(lineNumber - 1).getOffset();
   }
 
+  /**
+   * The line that contains offset. The end offset of a line is the start of the next line.
+   */
   public int getLineForOffset(int offset)
   {
-    int searchIndex;
-    Line[] la;
+    int low;
+    int high;
+    int mid;
 
     if (offset < 0)
     {
       return 0;
     }
 
-    la = getLines();
-    if (la == null)
-    {
-      return 0;
-    }
+    initLines();
 
-    if (offset >= lineOffsetArray[lineOffsetArray.length - 1])
+    if (offset >= lineIndex.get(lineIndex.size() - 1).getOffset())
     {
-      return lineOffsetArray.length - 1;
+      return lineIndex.size() - 1;
     }
 
-    searchIndex = Arrays.binarySearch(lineOffsetArray,
-                                      offset);
-    if (searchIndex >= 0)
+    // Search the first line that ends after offset.
+    low = 0;
+    high = lineIndex.size() - 1;
+    while (low < high)
     {
-      return searchIndex + 1;
+      mid = (low + high) >>> 1;
+      if (lineIndex.get(mid).getOffset() <= offset)
+      {
+        low = mid + 1;
+      }
+      else
+      {
+        high = mid;
+      }
     }
 
-    return (-searchIndex) - 1;
+    return low;
   }
 
   public void read()
@@ -198,7 +215,6 @@ public abstract class AbstractBufferDocument
   {
     try
     {
-      Reader reader;
       StopWatch stopWatch;
 
       if (document != null)
@@ -210,18 +226,13 @@ public abstract class AbstractBufferDocument
       stopWatch.start();
       System.out.println("before read : " + this);
 
-      content = new MyGapContent(getBufferSize() + 500);
-      document = new PlainDocument(content);
-
-      reader = getReader();
-      new DefaultEditorKit().read(reader,
-                                  document,
-                                  0);
-      reader.close();
+      content = createContent();
+      document = createDocument(content);
 
       System.out.println("create document took " + stopWatch.getElapsedTime());
       document.addDocumentListener(this);
 
+      version++;
       reset();
 
       initLines();
@@ -238,37 +249,148 @@ public abstract class AbstractBufferDocument
     }
   }
 
+  BufferContentIF createContent()
+      throws JMeldException
+  {
+    return new MyGapContent(getBufferSize() + 500);
+  }
+
+  /**
+   * Create the swing document on the content and fill it.
+   */
+  PlainDocument createDocument(BufferContentIF content)
+      throws Exception
+  {
+    PlainDocument plainDocument;
+    Reader reader;
+
+    plainDocument = new PlainDocument(content);
+
+    reader = getReader();
+    new DefaultEditorKit().read(reader,
+                                plainDocument,
+                                0);
+    reader.close();
+
+    return plainDocument;
+  }
+
+  /**
+   * The content of the document can't be edited. For instance a mapped file that can be larger than the heap.
+   */
+  boolean hasFixedContent()
+  {
+    return false;
+  }
+
   private void initLines()
   {
     Element paragraph;
-    Element e;
-    int size;
-    Line line;
+    Line[] lines;
 
-    if (lineArray != null)
+    if (lineIndex != null)
     {
       return;
     }
 
     paragraph = document.getDefaultRootElement();
-    size = paragraph.getElementCount();
-    //lineArray = new Line[size - 1];
-    lineArray = new Line[size];
-    lineOffsetArray = new int[lineArray.length];
-    for (int i = 0; i < lineArray.length; i++)
+    if (hasFixedContent())
+    {
+      // The lines never change. They are created when they are asked for
+      //   instead of keeping an element and a line for every line.
+      lineIndex = new FixedLineIndex(paragraph.getElementCount(),
+                                     IndexLine::new);
+      return;
+    }
+
+    lines = new Line[paragraph.getElementCount()];
+    for (int i = 0; i < lines.length; i++)
+    {
+      lines[i] = new ElementLine(paragraph.getElement(i));
+    }
+
+    lineIndex = new LineIndex(lines);
+    lineArray = lines;
+  }
+
+  /**
+   * Replace only the lines that have been changed by an edit. The lines after the edit keep their element and the
+   * offsets of an element are shifted by the document.
+   */
+  private int updateLines(DocumentEvent de)
+  {
+    Element paragraph;
+    DocumentEvent.ElementChange change;
+    Element[] added;
+    Line[] addedLines;
+    int numberOfLinesChanged;
+
+    int index;
+
+    paragraph = document.getDefaultRootElement();
+    change = de.getChange(paragraph);
+    if (change == null)
+    {
+      // The edit was within one line.
+      index = getLineForOffset(de.getOffset());
+      if (lineDigestValid)
+      {
+        lineDigest -= getDigest(index,
+                                index + 1);
+      }
+
+      lineIndex.get(index).resetHash();
+
+      if (lineDigestValid)
+      {
+        lineDigest += getDigest(index,
+                                index + 1);
+      }
+
+      return 0;
+    }
+
+    index = change.getIndex();
+    added = change.getChildrenAdded();
+    addedLines = new Line[added.length];
+    for (int i = 0; i < added.length; i++)
+    {
+      addedLines[i] = new ElementLine(added[i]);
+    }
+
+    if (lineDigestValid)
+    {
+      lineDigest -= getDigest(index,
+                              index + change.getChildrenRemoved().length);
+    }
+
+    numberOfLinesChanged = lineIndex.size();
+    lineIndex.replace(index,
+                      change.getChildrenRemoved().length,
+                      addedLines);
+    lineArray = null;
+
+    if (lineIndex.size() != paragraph.getElementCount())
     {
-      e = paragraph.getElement(i);
-      line = new Line(e);
+      // Should not happen; start all over.
+      reset();
+      initLines();
+      lineDigestValid = false;
+    }
 
-      lineArray[i] = line;
-      lineOffsetArray[i] = line.getOffset();
+    if (lineDigestValid)
+    {
+      lineDigest += getDigest(index,
+                              index + addedLines.length);
     }
+
+    return lineIndex.size() - numberOfLinesChanged;
   }
 
   public void reset()
   {
+    lineIndex = null;
     lineArray = null;
-    lineOffsetArray = null;
   }
 
   public void write()
@@ -302,6 +424,7 @@ public abstract class AbstractBufferDocument
 
   class MyGapContent
       extends GapContent
+      implements BufferContentIF
   {
     public MyGapContent(int length)
     {
@@ -331,11 +454,12 @@ public abstract class AbstractBufferDocument
       return getCharArray()[offset];
     }
 
-    public boolean equals(MyGapContent c2,
+    public boolean equals(BufferContentIF content2,
         int start1,
         int end1,
         int start2)
     {
+      MyGapContent c2;
       char[] array1;
       char[] array2;
       int g1_0;
@@ -346,6 +470,15 @@ public abstract class AbstractBufferDocument
       int o1;
       int o2;
 
+      if (!(content2 instanceof MyGapContent))
+      {
+        return content2.equals(this,
+                               start2,
+                               start2 + end1 - start1,
+                               start1);
+      }
+
+      c2 = (MyGapContent) content2;
       array1 = getCharArray();
       array2 = c2.getCharArray();
 
@@ -440,32 +573,26 @@ public abstract class AbstractBufferDocument
 
       return h;
     }
-
-    public int getDigest()
-    {
-      return hashCode(0,
-                      document.getLength());
-    }
   }
 
-  public class Line
+  public abstract class Line
       implements Comparable
   {
-    Element element;
-
-    Line(Element element)
-    {
-      this.element = element;
-    }
+    // 0 if the hashcode has not been calculated yet.
+    private int hash;
 
-    MyGapContent getContent()
+    BufferContentIF getContent()
     {
       return content;
     }
 
+    abstract int getStartOffset();
+
+    abstract int getEndOffset();
+
     public int getOffset()
     {
-      return element.getEndOffset();
+      return getEndOffset();
     }
 
     public void print()
@@ -478,7 +605,6 @@ public abstract class AbstractBufferDocument
     @Override
     public boolean equals(Object o)
     {
-      Element element2;
       Line line2;
       int start1;
       int start2;
@@ -491,12 +617,11 @@ public abstract class AbstractBufferDocument
       }
 
       line2 = ((Line) o);
-      element2 = line2.element;
 
-      start1 = element.getStartOffset();
-      end1 = element.getEndOffset();
-      start2 = element2.getStartOffset();
-      end2 = element2.getEndOffset();
+      start1 = getStartOffset();
+      end1 = getEndOffset();
+      start2 = line2.getStartOffset();
+      end2 = line2.getEndOffset();
 
       // If the length is different the element is not equal!
       if ((end1 - start1) != (end2 - start2))
@@ -510,11 +635,25 @@ public abstract class AbstractBufferDocument
                             start2);
     }
 
+    /**
+     * The hashcode is kept because it is used by the diff and by the digest of the document. It is reset when the
+     * text of the line is edited.
+     */
     @Override
     public int hashCode()
     {
-      return content.hashCode(element.getStartOffset(),
-                              element.getEndOffset());
+      if (hash == 0)
+      {
+        hash = content.hashCode(getStartOffset(),
+                                getEndOffset());
+      }
+
+      return hash;
+    }
+
+    void resetHash()
+    {
+      hash = 0;
     }
 
     @Override
@@ -522,8 +661,8 @@ public abstract class AbstractBufferDocument
     {
       try
       {
-        return content.getString(element.getStartOffset(),
-                                 element.getEndOffset() - element.getStartOffset());
+        return content.getString(getStartOffset(),
+                                 getEndOffset() - getStartOffset());
       }
       catch (Exception ex)
       {
@@ -538,6 +677,55 @@ public abstract class AbstractBufferDocument
     }
   }
 
+  /**
+   * A line of an editable document. The offsets of the element are shifted by the swing document when text is inserted
+   * or removed before the line.
+   */
+  private class ElementLine
+      extends Line
+  {
+    private Element element;
+
+    ElementLine(Element element)
+    {
+      this.element = element;
+    }
+
+    int getStartOffset()
+    {
+      return element.getStartOffset();
+    }
+
+    int getEndOffset()
+    {
+      return element.getEndOffset();
+    }
+  }
+
+  /**
+   * A line of a document with fixed content. Only the line number is kept, the offsets are looked up in the document.
+   */
+  private class IndexLine
+      extends Line
+  {
+    private int index;
+
+    IndexLine(int index)
+    {
+      this.index = index;
+    }
+
+    int getStartOffset()
+    {
+      return document.getDefaultRootElement().getElement(index).getStartOffset();
+    }
+
+    int getEndOffset()
+    {
+      return document.getDefaultRootElement().getElement(index).getEndOffset();
+    }
+  }
+
   public void print()
   {
     Line[] la;
@@ -572,48 +760,131 @@ public abstract class AbstractBufferDocument
   private void initDigest()
   {
     originalLength = document != null ? document.getLength() : 0;
-    digest = createDigest();
+    if (isReadonly())
+    {
+      // The content can't become different from the file.
+      digest = 0;
+      lineDigestValid = false;
+      originalLineHashes = null;
+    }
+    else
+    {
+      digest = createDigest();
+      originalLineHashes = new int[lineIndex.size()];
+      for (int i = 0; i < originalLineHashes.length; i++)
+      {
+        originalLineHashes[i] = lineIndex.get(i).hashCode();
+      }
+    }
     changed = false;
 
     fireDocumentChanged(new JMDocumentEvent(this));
   }
 
-  public int createDigest()
+  /**
+   * Calculate the digest of the whole document.
+   */
+  public long createDigest()
+  {
+    initLines();
+
+    lineDigest = getDigest(0,
+                           lineIndex.size() - 1);
+    lineDigestValid = true;
+
+    return lineDigest;
+  }
+
+  /**
+   * The digest is the sum of the hashes of all pairs of adjacent lines. Lines can be inserted and removed without
+   * recalculating the lines that follow (as with a weight on the position of a line). A sum doesn't keep the order of
+   * the pairs: if 2 blocks that are surrounded by the same line are swapped the digest stays the same. So a digest that
+   * is different means that the document has been changed, but an equal digest has to be confirmed with
+   * isOriginalContent().
+   * <p>
+   * This method returns the part of the digest of the pairs that end at the lines fromLine up to and including toLine.
+   */
+  private long getDigest(int fromLine,
+      int toLine)
+  {
+    long result;
+    int previousHash;
+    int hash;
+
+    toLine = Math.min(toLine,
+                      lineIndex.size() - 1);
+    previousHash = fromLine > 0 ? lineIndex.get(fromLine - 1).hashCode() : 0;
+
+    result = 0;
+    for (int i = fromLine; i <= toLine; i++)
+    {
+      hash = lineIndex.get(i).hashCode();
+      result += getPairHash(previousHash,
+                            hash);
+      previousHash = hash;
+    }
+
+    return result;
+  }
+
+  /**
+   * Compare the hashes of the lines in order with the hashes of the lines when the document was read or written.
+   */
+  private boolean isOriginalContent()
+  {
+    if (originalLineHashes == null || originalLineHashes.length != lineIndex.size())
+    {
+      return false;
+    }
+
+    for (int i = 0; i < originalLineHashes.length; i++)
+    {
+      if (originalLineHashes[i] != lineIndex.get(i).hashCode())
+      {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  private static long getPairHash(int hash1,
+      int hash2)
   {
-    return content.getDigest();
+    long h;
+
+    // Mix the bits (finalizer of MurmurHash3) so that a sum of pair
+    //   hashes doesn't easily cancel out.
+    h = ((long) hash1 << 32) | (hash2 & 0xFFFFFFFFL);
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+
+    return h;
   }
 
   private void documentChanged(DocumentEvent de)
   {
     boolean newChanged;
-    int newDigest;
     int startLine;
     int numberOfLinesChanged;
     JMDocumentEvent jmde;
-    String text;
 
+    version++;
     jmde = new JMDocumentEvent(this,
                                de);
     numberOfLinesChanged = 0;
 
-    if (lineArray != null)
+    if (lineIndex == null)
+    {
+      lineDigestValid = false;
+    }
+    else
     {
       // Make large documents perform well!
-      if (de.getType() == DocumentEvent.EventType.INSERT)
-      {
-        try
-        {
-          text = document.getText(de.getOffset(),
-                                  de.getLength());
-        }
-        catch (BadLocationException ex)
-        {
-        }
-      }
-
-      numberOfLinesChanged = getLines().length;
-      reset();
-      numberOfLinesChanged = getLines().length - numberOfLinesChanged;
+      numberOfLinesChanged = updateLines(de);
 
       startLine = getLineForOffset(de.getOffset() + 1);
       if (startLine < 0)
@@ -632,10 +903,14 @@ public abstract class AbstractBufferDocument
     }
     else
     {
-      // Calculate the digest in order to see of a buffer has been
+      // Compare the digest in order to see of a buffer has been
       //   changed (and should be saved)
-      newDigest = createDigest();
-      if (newDigest != digest)
+      if (!lineDigestValid)
+      {
+        createDigest();
+      }
+
+      if (lineDigest != digest || !isOriginalContent())
       {
         newChanged = true;
       }
@@ -0,0 +1,37 @@
+/*
+   JMeld is a visual diff and merge tool.
+   Copyright (C) 2007  Kees Kuip
+   This library is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Lesser General Public
+   License as published by the Free Software Foundation; either
+   version 2.1 of the License, or (at your option) any later version.
+   This library is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Lesser General Public License for more details.
+   You should have received a copy of the GNU Lesser General Public
+   License along with this library; if not, write to the Free Software
+   Foundation, Inc., 51 Franklin Street, Fifth Floor,
+   Boston, MA  02110-1301  USA
+ */
+package org.jmeld.ui.text;
+
+import javax.swing.text.AbstractDocument;
+
+/**
+ * The content of a BufferDocument. Lines of different documents are compared directly on their content.
+ * <p>
+ * hashCode() must be calculated as String.hashCode() (except that 0 is never returned) so that equal lines in
+ * different kinds of content have the same hashcode.
+ */
+interface BufferContentIF
+    extends AbstractDocument.Content
+{
+  public boolean equals(BufferContentIF c2,
+      int start1,
+      int end1,
+      int start2);
+
+  public int hashCode(int start,
+      int end);
+}
@@ -37,6 +37,8 @@ public interface BufferDocumentIF
 
   public boolean isChanged();
 
+  public int getVersion();
+
   public PlainDocument getDocument();
 
   public BlameIF getVersionControlBlame();
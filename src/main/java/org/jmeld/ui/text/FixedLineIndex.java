@@ -0,0 +1,74 @@
+/*
+   JMeld is a visual diff and merge tool.
+   Copyright (C) 2007  Kees Kuip
+   This library is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Lesser General Public
+   License as published by the Free Software Foundation; either
+   version 2.1 of the License, or (at your option) any later version.
+   This library is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Lesser General Public License for more details.
+   You should have received a copy of the GNU Lesser General Public
+   License along with this library; if not, write to the Free Software
+   Foundation, Inc., 51 Franklin Street, Fifth Floor,
+   Boston, MA  02110-1301  USA
+ */
+package org.jmeld.ui.text;
+
+import java.util.function.IntFunction;
+
+/**
+ * The lines of a document that can't be edited. No line is kept: a line is created every time it is asked for. A very
+ * large document doesn't need an object for every line.
+ */
+class FixedLineIndex
+    extends LineIndex
+{
+  // Instance variables:
+  private int size;
+  private IntFunction<AbstractBufferDocument.Line> lineFactory;
+
+  FixedLineIndex(int size,
+      IntFunction<AbstractBufferDocument.Line> lineFactory)
+  {
+    super(new AbstractBufferDocument.Line[0]);
+
+    this.size = size;
+    this.lineFactory = lineFactory;
+  }
+
+  @Override
+  int size()
+  {
+    return size;
+  }
+
+  @Override
+  AbstractBufferDocument.Line get(int index)
+  {
+    return lineFactory.apply(index);
+  }
+
+  @Override
+  void replace(int index,
+      int numberOfRemovedLines,
+      AbstractBufferDocument.Line[] addedLines)
+  {
+    throw new UnsupportedOperationException("The lines of this document can't be changed");
+  }
+
+  @Override
+  AbstractBufferDocument.Line[] toArray()
+  {
+    AbstractBufferDocument.Line[] result;
+
+    result = new AbstractBufferDocument.Line[size];
+    for (int i = 0; i < size; i++)
+    {
+      result[i] = lineFactory.apply(i);
+    }
+
+    return result;
+  }
+}
@@ -0,0 +1,171 @@
+/*
+   JMeld is a visual diff and merge tool.
+   Copyright (C) 2007  Kees Kuip
+   This library is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Lesser General Public
+   License as published by the Free Software Foundation; either
+   version 2.1 of the License, or (at your option) any later version.
+   This library is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Lesser General Public License for more details.
+   You should have received a copy of the GNU Lesser General Public
+   License along with this library; if not, write to the Free Software
+   Foundation, Inc., 51 Franklin Street, Fifth Floor,
+   Boston, MA  02110-1301  USA
+ */
+package org.jmeld.ui.text;
+
+import java.util.Arrays;
+
+/**
+ * The lines of a document kept in a gap buffer. An edit only replaces the lines it touches. Lines are moved across the
+ * gap when the next edit is somewhere else, which costs little because most edits are close to each other.
+ * <p>
+ * The offsets are not kept here. Every line is an element of the swing document and the positions of the element are
+ * shifted by the document itself.
+ */
+class LineIndex
+{
+  // Instance variables:
+  private AbstractBufferDocument.Line[] lines;
+  private int gapStart;
+  private int gapEnd;
+
+  LineIndex(AbstractBufferDocument.Line[] lines)
+  {
+    this.lines = lines;
+    gapStart = lines.length;
+    gapEnd = lines.length;
+  }
+
+  int size()
+  {
+    return lines.length - (gapEnd - gapStart);
+  }
+
+  AbstractBufferDocument.Line get(int index)
+  {
+    if (index >= gapStart)
+    {
+      index += gapEnd - gapStart;
+    }
+
+    return lines[index];
+  }
+
+  /**
+   * Replace numberOfRemovedLines lines at index with the added lines.
+   */
+  void replace(int index,
+      int numberOfRemovedLines,
+      AbstractBufferDocument.Line[] addedLines)
+  {
+    moveGap(index);
+
+    // Removed lines are moved into the gap.
+    Arrays.fill(lines,
+                gapEnd,
+                gapEnd + numberOfRemovedLines,
+                null);
+    gapEnd += numberOfRemovedLines;
+
+    ensureGap(addedLines.length);
+    System.arraycopy(addedLines,
+                     0,
+                     lines,
+                     gapStart,
+                     addedLines.length);
+    gapStart += addedLines.length;
+  }
+
+  private void moveGap(int index)
+  {
+    int gapSize;
+    int count;
+
+    gapSize = gapEnd - gapStart;
+    if (index < gapStart)
+    {
+      count = gapStart - index;
+      System.arraycopy(lines,
+                       index,
+                       lines,
+                       index + gapSize,
+                       count);
+      // Don't keep references to lines in the gap.
+      Arrays.fill(lines,
+                  index,
+                  Math.min(gapStart,
+                           index + gapSize),
+                  null);
+    }
+    else if (index > gapStart)
+    {
+      count = index - gapStart;
+      System.arraycopy(lines,
+                       gapEnd,
+                       lines,
+                       gapStart,
+                       count);
+      Arrays.fill(lines,
+                  Math.max(gapEnd,
+                           index),
+                  gapEnd + count,
+                  null);
+    }
+
+    gapStart = index;
+    gapEnd = index + gapSize;
+  }
+
+  private void ensureGap(int size)
+  {
+    AbstractBufferDocument.Line[] newLines;
+    int newGapSize;
+    int tail;
+
+    if (gapEnd - gapStart >= size)
+    {
+      return;
+    }
+
+    newGapSize = Math.max(size,
+                          Math.max(16,
+                                   lines.length / 8));
+    tail = lines.length - gapEnd;
+    newLines = new AbstractBufferDocument.Line[gapStart + newGapSize + tail];
+    System.arraycopy(lines,
+                     0,
+                     newLines,
+                     0,
+                     gapStart);
+    System.arraycopy(lines,
+                     gapEnd,
+                     newLines,
+                     gapStart + newGapSize,
+                     tail);
+
+    lines = newLines;
+    gapEnd = gapStart + newGapSize;
+  }
+
+  AbstractBufferDocument.Line[] toArray()
+  {
+    AbstractBufferDocument.Line[] result;
+
+    result = new AbstractBufferDocument.Line[size()];
+    System.arraycopy(lines,
+                     0,
+                     result,
+                     0,
+                     gapStart);
+    System.arraycopy(lines,
+                     gapEnd,
+                     result,
+                     gapStart,
+                     lines.length - gapEnd);
+
+    return result;
+  }
+}
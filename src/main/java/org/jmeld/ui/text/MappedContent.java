@@ -0,0 +1,526 @@
+/*
+   JMeld is a visual diff and merge tool.
+   Copyright (C) 2007  Kees Kuip
+   This library is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Lesser General Public
+   License as published by the Free Software Foundation; either
+   version 2.1 of the License, or (at your option) any later version.
+   This library is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Lesser General Public License for more details.
+   You should have received a copy of the GNU Lesser General Public
+   License along with this library; if not, write to the Free Software
+   Foundation, Inc., 51 Franklin Street, Fifth Floor,
+   Boston, MA  02110-1301  USA
+ */
+package org.jmeld.ui.text;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.undo.UndoableEdit;
+import org.jmeld.JMeldException;
+
+/**
+ * Read-only content of a memory-mapped file. Only the start of every line is kept (as a byte offset and as a
+ * character offset). The characters of a line are decoded when they are needed and only a limited number of decoded
+ * lines is cached.
+ * <p>
+ * Line separators (\n, \r\n and \r) are presented as a single \n, just like DefaultEditorKit does. Only UTF-8 and
+ * charsets that use 1 byte per character are supported because the number of characters in a line has to be known
+ * without decoding it.
+ */
+class MappedContent
+    implements BufferContentIF
+{
+  // Class variables:
+  // Map the file in segments. One mapping can't be larger than 2Gb.
+  private static final int SEGMENT_SHIFT = 30;
+  private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+  private static final int DECODED_LINE_CACHE_SIZE = 2048;
+
+  // Instance variables:
+  private ByteBuffer[] segments;
+  private long size;
+  private CharsetDecoder decoder;
+  private boolean utf8;
+  private int numberOfLines;
+  // Both arrays have an extra entry with the end of the last line.
+  private long[] lineByteOffsets;
+  private int[] lineCharOffsets;
+  private Map<Integer, char[]> decodedLines;
+  private byte[] lineBytes;
+
+  MappedContent(File file,
+      Charset charset)
+      throws JMeldException
+  {
+    utf8 = StandardCharsets.UTF_8.equals(charset);
+    decoder = charset.newDecoder();
+    decoder.onMalformedInput(CodingErrorAction.REPLACE);
+    decoder.onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    decodedLines = new LinkedHashMap<Integer, char[]>(DECODED_LINE_CACHE_SIZE, 0.75f, true)
+    {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Integer, char[]> eldest)
+      {
+        return size() > DECODED_LINE_CACHE_SIZE;
+      }
+    };
+    lineBytes = new byte[256];
+
+    map(file);
+    initLines();
+  }
+
+  /**
+   * Can a file with this charset be mapped?
+   */
+  static boolean isSupported(Charset charset)
+  {
+    if (StandardCharsets.UTF_8.equals(charset))
+    {
+      return true;
+    }
+
+    try
+    {
+      return charset.newEncoder().maxBytesPerChar() == 1.0f;
+    }
+    catch (UnsupportedOperationException ex)
+    {
+      // Decode-only charset
+      return false;
+    }
+  }
+
+  private void map(File file)
+      throws JMeldException
+  {
+    RandomAccessFile raf;
+    FileChannel channel;
+    long position;
+
+    try
+    {
+      raf = new RandomAccessFile(file,
+                                 "r");
+      try
+      {
+        // The mapping stays valid after the channel is closed.
+        channel = raf.getChannel();
+        size = channel.size();
+        segments = new ByteBuffer[(int) ((size + SEGMENT_MASK) >>> SEGMENT_SHIFT)];
+        for (int i = 0; i < segments.length; i++)
+        {
+          position = (long) i << SEGMENT_SHIFT;
+          segments[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                                    position,
+                                    Math.min(size - position,
+                                             SEGMENT_MASK + 1));
+        }
+      }
+      finally
+      {
+        raf.close();
+      }
+    }
+    catch (Exception ex)
+    {
+      throw new JMeldException("Could not map file: " + file.getAbsolutePath(),
+                               ex);
+    }
+  }
+
+  /**
+   * Scan the file once and remember where every line starts.
+   */
+  private void initLines()
+      throws JMeldException
+  {
+    ByteBuffer segment;
+    long position;
+    long charOffset;
+    int lineChars;
+    int b;
+
+    lineByteOffsets = new long[1024];
+    lineCharOffsets = new int[1024];
+    numberOfLines = 0;
+    charOffset = 0;
+    lineChars = 0;
+
+    position = 0;
+    for (int s = 0; s < segments.length; s++)
+    {
+      segment = segments[s];
+      for (int i = 0; i < segment.limit(); i++, position++)
+      {
+        b = segment.get(i);
+        if (b == '\n' || b == '\r')
+        {
+          if (b == '\r' && position + 1 < size && getByte(position + 1) == '\n')
+          {
+            // \r\n is one separator
+            continue;
+          }
+
+          charOffset = addLine(charOffset,
+                               lineChars + 1);
+          lineByteOffsets[numberOfLines] = position + 1;
+          lineChars = 0;
+          continue;
+        }
+
+        if (!utf8)
+        {
+          lineChars++;
+        }
+        else if ((b & 0xC0) != 0x80)
+        {
+          // Not a continuation byte: a new character. 4 byte sequences
+          //   become a surrogate pair.
+          lineChars += (b & 0xF8) == 0xF0 ? 2 : 1;
+        }
+      }
+    }
+
+    // The last line ends with the implicit newline of a swing document.
+    addLine(charOffset,
+            lineChars + 1);
+    lineByteOffsets[numberOfLines] = size;
+  }
+
+  private long addLine(long charOffset,
+      int lineChars)
+      throws JMeldException
+  {
+    if (numberOfLines + 1 == lineByteOffsets.length)
+    {
+      lineByteOffsets = Arrays.copyOf(lineByteOffsets,
+                                      lineByteOffsets.length * 2);
+      lineCharOffsets = Arrays.copyOf(lineCharOffsets,
+                                      lineCharOffsets.length * 2);
+    }
+
+    lineCharOffsets[numberOfLines] = (int) charOffset;
+    charOffset += lineChars;
+    if (charOffset >= Integer.MAX_VALUE)
+    {
+      throw new JMeldException("File has too many characters to display");
+    }
+
+    numberOfLines++;
+    lineCharOffsets[numberOfLines] = (int) charOffset;
+
+    return charOffset;
+  }
+
+  private byte getByte(long position)
+  {
+    return segments[(int) (position >>> SEGMENT_SHIFT)].get((int) (position & SEGMENT_MASK));
+  }
+
+  int getNumberOfLines()
+  {
+    return numberOfLines;
+  }
+
+  int getLineStartOffset(int line)
+  {
+    return lineCharOffsets[line];
+  }
+
+  int getLineEndOffset(int line)
+  {
+    return lineCharOffsets[line + 1];
+  }
+
+  int getLineIndex(int offset)
+  {
+    int index;
+
+    if (offset >= lineCharOffsets[numberOfLines])
+    {
+      return numberOfLines - 1;
+    }
+
+    index = Arrays.binarySearch(lineCharOffsets,
+                                0,
+                                numberOfLines,
+                                offset);
+    if (index >= 0)
+    {
+      return index;
+    }
+
+    return -index - 2;
+  }
+
+  /**
+   * The characters of a line including the newline.
+   */
+  private char[] getLineChars(int line)
+  {
+    char[] chars;
+    CharBuffer decoded;
+    long start;
+    long end;
+    int length;
+
+    chars = decodedLines.get(line);
+    if (chars != null)
+    {
+      return chars;
+    }
+
+    start = lineByteOffsets[line];
+    end = lineByteOffsets[line + 1];
+    if (line < numberOfLines - 1)
+    {
+      // Strip the line separator
+      end--;
+      if (end > start && getByte(end) == '\n' && getByte(end - 1) == '\r')
+      {
+        end--;
+      }
+    }
+
+    length = (int) (end - start);
+    if (lineBytes.length < length)
+    {
+      lineBytes = new byte[Math.max(length,
+                                    lineBytes.length * 2)];
+    }
+    for (int i = 0; i < length; i++)
+    {
+      lineBytes[i] = getByte(start + i);
+    }
+
+    try
+    {
+      decoded = decoder.reset().decode(ByteBuffer.wrap(lineBytes,
+                                                       0,
+                                                       length));
+    }
+    catch (Exception ex)
+    {
+      ex.printStackTrace();
+      decoded = CharBuffer.allocate(0);
+    }
+
+    // The number of characters was counted when the lines were
+    //   initialized. A malformed sequence can decode to a different
+    //   number of characters so the line is padded or cut.
+    chars = new char[lineCharOffsets[line + 1] - lineCharOffsets[line]];
+    Arrays.fill(chars,
+                '\uFFFD');
+    decoded.get(chars,
+                0,
+                Math.min(decoded.remaining(),
+                         chars.length - 1));
+    chars[chars.length - 1] = '\n';
+
+    decodedLines.put(line,
+                     chars);
+
+    return chars;
+  }
+
+  public int length()
+  {
+    return lineCharOffsets[numberOfLines];
+  }
+
+  public synchronized void getChars(int where,
+      int len,
+      Segment txt)
+      throws BadLocationException
+  {
+    char[] lineChars;
+    char[] chars;
+    int line;
+    int offset;
+    int copied;
+    int n;
+
+    if (where < 0 || len < 0 || where + len > length())
+    {
+      throw new BadLocationException("Invalid range",
+                                     where);
+    }
+
+    line = getLineIndex(where);
+    lineChars = getLineChars(line);
+    offset = where - lineCharOffsets[line];
+    if (offset + len <= lineChars.length)
+    {
+      // Most requests are within one line. The cached line can be
+      //   used because it is never changed.
+      txt.array = lineChars;
+      txt.offset = offset;
+      txt.count = len;
+      return;
+    }
+
+    chars = new char[len];
+    copied = 0;
+    while (copied < len)
+    {
+      lineChars = getLineChars(line);
+      offset = where + copied - lineCharOffsets[line];
+      n = Math.min(lineChars.length - offset,
+                   len - copied);
+      System.arraycopy(lineChars,
+                       offset,
+                       chars,
+                       copied,
+                       n);
+      copied += n;
+      line++;
+    }
+
+    txt.array = chars;
+    txt.offset = 0;
+    txt.count = len;
+  }
+
+  public String getString(int where,
+      int len)
+      throws BadLocationException
+  {
+    Segment segment;
+
+    segment = new Segment();
+    getChars(where,
+             len,
+             segment);
+
+    return segment.toString();
+  }
+
+  public synchronized boolean equals(BufferContentIF c2,
+      int start1,
+      int end1,
+      int start2)
+  {
+    Segment s1;
+    Segment s2;
+    int size;
+
+    s1 = new Segment();
+    s2 = new Segment();
+    size = end1 - start1;
+
+    try
+    {
+      getChars(start1,
+               size,
+               s1);
+      c2.getChars(start2,
+                  size,
+                  s2);
+    }
+    catch (BadLocationException ex)
+    {
+      return false;
+    }
+
+    for (int i = 0; i < size; i++)
+    {
+      if (s1.array[s1.offset + i] != s2.array[s2.offset + i])
+      {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  public synchronized int hashCode(int start,
+      int end)
+  {
+    Segment segment;
+    int h;
+
+    segment = new Segment();
+    try
+    {
+      getChars(start,
+               end - start,
+               segment);
+    }
+    catch (BadLocationException ex)
+    {
+      return 1;
+    }
+
+    h = 0;
+    for (int i = 0; i < segment.count; i++)
+    {
+      h = 31 * h + segment.array[segment.offset + i];
+    }
+
+    if (h == 0)
+    {
+      h = 1;
+    }
+
+    return h;
+  }
+
+  public Position createPosition(int offset)
+      throws BadLocationException
+  {
+    return new FixedPosition(offset);
+  }
+
+  public UndoableEdit insertString(int where,
+      String str)
+      throws BadLocationException
+  {
+    throw new BadLocationException("Content is read-only",
+                                   where);
+  }
+
+  public UndoableEdit remove(int where,
+      int nitems)
+      throws BadLocationException
+  {
+    throw new BadLocationException("Content is read-only",
+                                   where);
+  }
+
+  /**
+   * Text never moves in read-only content.
+   */
+  private static class FixedPosition
+      implements Position
+  {
+    private int offset;
+
+    FixedPosition(int offset)
+    {
+      this.offset = offset;
+    }
+
+    public int getOffset()
+    {
+      return offset;
+    }
+  }
+}
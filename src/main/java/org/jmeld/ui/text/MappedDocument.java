@@ -0,0 +1,177 @@
+/*
+   JMeld is a visual diff and merge tool.
+   Copyright (C) 2007  Kees Kuip
+   This library is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Lesser General Public
+   License as published by the Free Software Foundation; either
+   version 2.1 of the License, or (at your option) any later version.
+   This library is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Lesser General Public License for more details.
+   You should have received a copy of the GNU Lesser General Public
+   License along with this library; if not, write to the Free Software
+   Foundation, Inc., 51 Franklin Street, Fifth Floor,
+   Boston, MA  02110-1301  USA
+ */
+package org.jmeld.ui.text;
+
+import javax.swing.text.AttributeSet;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.PlainDocument;
+import javax.swing.text.SimpleAttributeSet;
+
+/**
+ * A read-only PlainDocument on MappedContent. A PlainDocument keeps an element (and 2 positions) for every line. This
+ * document creates the line elements when they are asked for.
+ */
+class MappedDocument
+    extends PlainDocument
+{
+  // Class variables:
+  private static final long serialVersionUID = 8484017764401252669L;
+
+  // Instance variables:
+  private MappedContent content;
+  private Element root;
+
+  MappedDocument(MappedContent content)
+  {
+    super(content);
+
+    this.content = content;
+    root = new RootElement();
+  }
+
+  @Override
+  public Element getDefaultRootElement()
+  {
+    return root;
+  }
+
+  private class RootElement
+      implements Element
+  {
+    public Document getDocument()
+    {
+      return MappedDocument.this;
+    }
+
+    public Element getParentElement()
+    {
+      return null;
+    }
+
+    public String getName()
+    {
+      return ParagraphElementName;
+    }
+
+    public AttributeSet getAttributes()
+    {
+      return SimpleAttributeSet.EMPTY;
+    }
+
+    public int getStartOffset()
+    {
+      return 0;
+    }
+
+    public int getEndOffset()
+    {
+      return content.length();
+    }
+
+    public int getElementIndex(int offset)
+    {
+      if (offset <= 0)
+      {
+        return 0;
+      }
+
+      return content.getLineIndex(offset);
+    }
+
+    public int getElementCount()
+    {
+      return content.getNumberOfLines();
+    }
+
+    public Element getElement(int index)
+    {
+      if (index < 0 || index >= content.getNumberOfLines())
+      {
+        return null;
+      }
+
+      return new LineElement(index);
+    }
+
+    public boolean isLeaf()
+    {
+      return false;
+    }
+  }
+
+  private class LineElement
+      implements Element
+  {
+    private int line;
+
+    LineElement(int line)
+    {
+      this.line = line;
+    }
+
+    public Document getDocument()
+    {
+      return MappedDocument.this;
+    }
+
+    public Element getParentElement()
+    {
+      return root;
+    }
+
+    public String getName()
+    {
+      return ContentElementName;
+    }
+
+    public AttributeSet getAttributes()
+    {
+      return SimpleAttributeSet.EMPTY;
+    }
+
+    public int getStartOffset()
+    {
+      return content.getLineStartOffset(line);
+    }
+
+    public int getEndOffset()
+    {
+      return content.getLineEndOffset(line);
+    }
+
+    public int getElementIndex(int offset)
+    {
+      return -1;
+    }
+
+    public int getElementCount()
+    {
+      return 0;
+    }
+
+    public Element getElement(int index)
+    {
+      return null;
+    }
+
+    public boolean isLeaf()
+    {
+      return true;
+    }
+  }
+}
@@ -0,0 +1,114 @@
+/*
+   JMeld is a visual diff and merge tool.
+   Copyright (C) 2007  Kees Kuip
+   This library is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Lesser General Public
+   License as published by the Free Software Foundation; either
+   version 2.1 of the License, or (at your option) any later version.
+   This library is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Lesser General Public License for more details.
+   You should have received a copy of the GNU Lesser General Public
+   License along with this library; if not, write to the Free Software
+   Foundation, Inc., 51 Franklin Street, Fifth Floor,
+   Boston, MA  02110-1301  USA
+ */
+package org.jmeld.ui.text;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.nio.charset.Charset;
+import javax.swing.text.PlainDocument;
+import org.jmeld.JMeldException;
+import org.jmeld.util.CharsetDetector;
+
+/**
+ * A read-only document for (very) large files. The file is memory-mapped instead of being read into the heap. Files
+ * in a charset that MappedContent doesn't support are read like a FileDocument but stay read-only.
+ */
+public class MappedFileDocument
+    extends FileDocument
+{
+  // Instance variables:
+  private File file;
+
+  public MappedFileDocument(File file)
+  {
+    super(file);
+
+    this.file = file;
+  }
+
+  @Override
+  BufferContentIF createContent()
+      throws JMeldException
+  {
+    Charset charset;
+
+    charset = detectCharset();
+    if (!MappedContent.isSupported(charset))
+    {
+      return super.createContent();
+    }
+
+    return new MappedContent(file,
+                             charset);
+  }
+
+  @Override
+  PlainDocument createDocument(BufferContentIF content)
+      throws Exception
+  {
+    if (content instanceof MappedContent)
+    {
+      return new MappedDocument((MappedContent) content);
+    }
+
+    return super.createDocument(content);
+  }
+
+  @Override
+  boolean hasFixedContent()
+  {
+    return getDocument() instanceof MappedDocument;
+  }
+
+  private Charset detectCharset()
+      throws JMeldException
+  {
+    BufferedInputStream bis;
+
+    try
+    {
+      bis = new BufferedInputStream(new FileInputStream(file));
+      try
+      {
+        return CharsetDetector.getInstance().getCharset(bis);
+      }
+      finally
+      {
+        bis.close();
+      }
+    }
+    catch (Exception ex)
+    {
+      throw new JMeldException("Could not open file: " + file.getAbsolutePath(),
+                               ex);
+    }
+  }
+
+  @Override
+  public void write()
+      throws JMeldException
+  {
+    throw new JMeldException("Document (name=" + getName() + ") is read-only");
+  }
+
+  @Override
+  public boolean isReadonly()
+  {
+    return true;
+  }
+}
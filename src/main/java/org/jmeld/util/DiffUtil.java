@@ -148,34 +148,20 @@ public class DiffUtil
       int line,
       boolean originalDelta)
   {
-    JMDelta previousDelta;
-    int anchor;
+    int index;
 
     if (revision == null)
     {
       return null;
     }
 
-    previousDelta = null;
-    for (JMDelta delta : revision.getDeltas())
+    index = revision.getDeltaIndex(originalDelta,
+                                   line);
+    if (index == -1)
     {
-      if (originalDelta)
-      {
-        anchor = delta.getOriginal().getAnchor();
-      }
-      else
-      {
-        anchor = delta.getRevised().getAnchor();
-      }
-
-      if (anchor > line)
-      {
-        break;
-      }
-
-      previousDelta = delta;
+      return null;
     }
 
-    return previousDelta;
+    return revision.getDeltas().get(index);
   }
 }
@@ -22,24 +22,12 @@ public class TokenizerFactory
   private static TokenizerFactory instance = new TokenizerFactory();
 
   // instance variables:
-  private WordTokenizer innerDiffTokenizer;
   private WordTokenizer fileNameTokenizer;
 
   private TokenizerFactory()
   {
   }
 
-  public static synchronized WordTokenizer getInnerDiffTokenizer()
-  {
-    if (instance.innerDiffTokenizer == null)
-    {
-      instance.innerDiffTokenizer = new WordTokenizer("\\s|;|:|\\(|\\)|\\[|\\]|[-+*&^%\\/}{=<>`'\"|]+|\\.");
-      instance.innerDiffTokenizer = new WordTokenizer("\\b\\B*");
-    }
-
-    return instance.innerDiffTokenizer;
-  }
-
   public static synchronized WordTokenizer getFileNameTokenizer()
   {
     if (instance.fileNameTokenizer == null)
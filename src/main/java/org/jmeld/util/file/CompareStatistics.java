@@ -0,0 +1,90 @@
+/*
+   JMeld is a visual diff and merge tool.
+   Copyright (C) 2007  Kees Kuip
+   This library is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Lesser General Public
+   License as published by the Free Software Foundation; either
+   version 2.1 of the License, or (at your option) any later version.
+   This library is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Lesser General Public License for more details.
+   You should have received a copy of the GNU Lesser General Public
+   License along with this library; if not, write to the Free Software
+   Foundation, Inc., 51 Franklin Street, Fifth Floor,
+   Boston, MA  02110-1301  USA
+ */
+package org.jmeld.util.file;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Counts the stage at which the comparison of 2 files has been decided. The stages are executed in the order of the
+ * enum: every stage reads more than the previous one. The counters can be updated by more than one thread.
+ */
+public class CompareStatistics
+{
+  public enum Stage
+  {
+    // Size, type or the same file. Nothing is read.
+    METADATA("metadata"),
+    // Both files have a valid hash in the ContentHashCache.
+    CACHE("cache"),
+    // Blocks at the head, the middle and the tail are different.
+    SAMPLE("sampled"),
+    // The files have been read completely.
+    FULL("full"),
+    // The files have been compared with the ignore options.
+    IGNORE("ignore");
+
+    private String text;
+
+    Stage(String text)
+    {
+      this.text = text;
+    }
+
+    public String getText()
+    {
+      return text;
+    }
+  }
+
+  // Instance variables:
+  private AtomicIntegerArray counters;
+
+  public CompareStatistics()
+  {
+    counters = new AtomicIntegerArray(Stage.values().length);
+  }
+
+  public void count(Stage stage)
+  {
+    counters.incrementAndGet(stage.ordinal());
+  }
+
+  public int getCount(Stage stage)
+  {
+    return counters.get(stage.ordinal());
+  }
+
+  @Override
+  public String toString()
+  {
+    StringBuilder sb;
+
+    sb = new StringBuilder();
+    for (Stage stage : Stage.values())
+    {
+      if (sb.length() > 0)
+      {
+        sb.append(", ");
+      }
+      sb.append(stage.getText());
+      sb.append(": ");
+      sb.append(getCount(stage));
+    }
+
+    return sb.toString();
+  }
+}
@@ -24,34 +24,52 @@ import java.io.Reader;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
 import org.jmeld.util.Ignore;
+import org.jmeld.util.file.CompareStatistics.Stage;
 import org.jmeld.util.node.BufferNode;
 import org.jmeld.util.node.FileNode;
 
 public class CompareUtil
 {
-  private static final int MAX_LINE_NUMBER = 1000;
-  private static char[] leftLine = new char[MAX_LINE_NUMBER];
-  private static char[] rightLine = new char[MAX_LINE_NUMBER];
-  private static CharBuffer leftLineBuffer = CharBuffer.allocate(10000);
-  private static CharBuffer rightLineBuffer = CharBuffer.allocate(10000);
-  private static CharBuffer leftLineOutputBuffer = CharBuffer.allocate(10000);
-  private static CharBuffer rightLineOutputBuffer = CharBuffer.allocate(10000);
+  // Files are compared in blocks of this size. Every thread that compares files
+  //   allocates 2 direct buffers once and reuses them.
+  private static final int COMPARE_BLOCK_SIZE = 256 * 1024;
+  private static final ThreadLocal<ByteBuffer[]> compareBuffers = ThreadLocal
+      .withInitial(() -> new ByteBuffer[] { ByteBuffer.allocateDirect(COMPARE_BLOCK_SIZE),
+          ByteBuffer.allocateDirect(COMPARE_BLOCK_SIZE) });
+  // Files of the same size are first compared by a block of this size at
+  //   the head, the middle and the tail.
+  private static final int SAMPLE_BLOCK_SIZE = 64 * 1024;
 
   private CompareUtil()
   {
   }
 
   public static boolean contentEquals(BufferNode nodeLeft, BufferNode nodeRight, Ignore ignore)
+  {
+    return contentEquals(nodeLeft, nodeRight, ignore, new CompareStatistics());
+  }
+
+  /**
+   * Test if the contents of 2 nodes are equal.
+   *
+   * @param statistics
+   *          counts the stage at which the comparison has been decided.
+   */
+  public static boolean contentEquals(BufferNode nodeLeft, BufferNode nodeRight, Ignore ignore,
+      CompareStatistics statistics)
   {
     if (nodeLeft instanceof FileNode && nodeRight instanceof FileNode)
     {
-      return contentEquals((FileNode) nodeLeft, (FileNode) nodeRight, ignore);
+      return contentEquals((FileNode) nodeLeft, (FileNode) nodeRight, ignore, statistics);
     }
     else
     {
       try
       {
+        statistics.count(Stage.IGNORE);
         return contentEquals(nodeLeft.getDocument().getReader(), nodeRight.getDocument().getReader(), ignore);
       }
       catch (Exception ex)
@@ -63,33 +81,69 @@ public class CompareUtil
     return false;
   }
 
-  private static boolean contentEquals(FileNode nodeLeft, FileNode nodeRight, Ignore ignore)
+  /**
+   * Files are compared in stages. Every stage reads more than the previous one and the first stage that can decide
+   * stops the comparison:
+   * <ol>
+   * <li>metadata: the type, the size and the file key (hard links) that have been read when the directories were
+   * scanned.</li>
+   * <li>cache: the hashes in the ContentHashCache of files that haven't changed since they were hashed.</li>
+   * <li>sampled: a block at the head, the middle and the tail.</li>
+   * <li>full: all blocks until the first difference. The hash of equal files is stored in the ContentHashCache.</li>
+   * <li>ignore: the text without the ignored characters.</li>
+   * </ol>
+   */
+  private static boolean contentEquals(FileNode nodeLeft, FileNode nodeRight, Ignore ignore,
+      CompareStatistics statistics)
   {
     File fileLeft;
     File fileRight;
+    BasicFileAttributes attributesLeft;
+    BasicFileAttributes attributesRight;
     RandomAccessFile fLeft;
     RandomAccessFile fRight;
-    FileChannel fcLeft;
-    FileChannel fcRight;
-    ByteBuffer bbLeft;
-    ByteBuffer bbRight;
     boolean equals;
+    Stage stage;
+    ContentHashCache.Entry entryLeft;
+    ContentHashCache.Entry entryRight;
+    Boolean cachedEquals;
+    Boolean fullEquals;
+    MessageDigest digest;
+    byte[] hash;
 
     fileLeft = nodeLeft.getFile();
     fileRight = nodeRight.getFile();
 
+    // The attributes have been read when the directories were scanned.
+    attributesLeft = nodeLeft.getAttributes();
+    attributesRight = nodeRight.getAttributes();
+    if (attributesLeft == null || attributesRight == null)
+    {
+      statistics.count(Stage.METADATA);
+      return false;
+    }
+
     fLeft = null;
     fRight = null;
 
     try
     {
-      if (fileLeft.isDirectory() || fileRight.isDirectory())
+      if (attributesLeft.isDirectory() || attributesRight.isDirectory())
       {
+        statistics.count(Stage.METADATA);
         return true;
       }
 
-      if (!ignore.getIgnore() && fileLeft.length() != fileRight.length())
+      // Both names are links to the same file.
+      if (isSameFile(attributesLeft, attributesRight))
       {
+        statistics.count(Stage.METADATA);
+        return true;
+      }
+
+      if (!ignore.getIgnore() && attributesLeft.size() != attributesRight.size())
+      {
+        statistics.count(Stage.METADATA);
         return false;
       }
 
@@ -99,25 +153,62 @@ public class CompareUtil
       //   equal we won't have to execute the expensive 
       //   contentEquals method below. This should speed up directory
       //   comparisons quite a bit.
-      if (!ignore.getIgnore() || fileLeft.length() == fileRight.length())
+      if (!ignore.getIgnore() || attributesLeft.size() == attributesRight.size())
       {
-        fLeft = new RandomAccessFile(fileLeft,
-                                     "r");
-        fRight = new RandomAccessFile(fileRight,
-                                      "r");
-        fcLeft = fLeft.getChannel();
-        fcRight = fRight.getChannel();
+        // Files that haven't changed since the last time they were hashed
+        //   can be compared without reading them.
+        entryLeft = ContentHashCache.createEntry(fileLeft, attributesLeft);
+        entryRight = ContentHashCache.createEntry(fileRight, attributesRight);
+        cachedEquals = ContentHashCache.getInstance().contentEquals(entryLeft, entryRight);
+        if (cachedEquals != null)
+        {
+          stage = Stage.CACHE;
+          equals = cachedEquals;
+        }
+        else
+        {
+          fLeft = new RandomAccessFile(fileLeft,
+                                       "r");
+          fRight = new RandomAccessFile(fileRight,
+                                        "r");
 
-        bbLeft = fcLeft.map(FileChannel.MapMode.READ_ONLY, 0, (int) fcLeft.size());
-        bbRight = fcRight.map(FileChannel.MapMode.READ_ONLY, 0, (int) fcRight.size());
+          if (!sampleEquals(fLeft.getChannel(), fRight.getChannel()))
+          {
+            stage = Stage.SAMPLE;
+            equals = false;
+          }
+          else
+          {
+            stage = Stage.FULL;
+            digest = ContentHashCache.createDigest();
+            fullEquals = contentEquals(fLeft.getChannel(), fRight.getChannel(), digest);
+            if (fullEquals == null)
+            {
+              // One of the files has been truncated while comparing.
+              equals = false;
+            }
+            else
+            {
+              // Only equal files have been read completely.
+              equals = fullEquals;
+              if (equals)
+              {
+                hash = digest.digest();
+                ContentHashCache.getInstance().put(entryLeft, hash);
+                ContentHashCache.getInstance().put(entryRight, hash);
+              }
+            }
+          }
+        }
 
-        equals = bbLeft.equals(bbRight);
         if (!ignore.getIgnore() || equals)
         {
+          statistics.count(stage);
           return equals;
         }
       }
 
+      statistics.count(Stage.IGNORE);
       equals = contentEquals(nodeLeft.getDocument().getReader(), nodeRight.getDocument().getReader(), ignore);
 
       return equals;
@@ -155,392 +246,183 @@ public class CompareUtil
     }
   }
 
-  public static boolean contentEquals(char[] left, char[] right, Ignore ignore)
+  /**
+   * The file key identifies a file on a filesystem (on unix it contains the device and the inode). It is null if the
+   * filesystem doesn't support it.
+   */
+  private static boolean isSameFile(BasicFileAttributes attributesLeft, BasicFileAttributes attributesRight)
   {
-    try
+    Object fileKey;
+
+    fileKey = attributesLeft.fileKey();
+
+    return fileKey != null && fileKey.equals(attributesRight.fileKey());
+  }
+
+  /**
+   * Compare a block at the head, the middle and the tail of 2 channels. Files of the same size usually differ there
+   * (headers, trailers, timestamps, checksums) so most different files are found without reading them completely.
+   *
+   * @return false if the channels are different, true if they might be equal.
+   */
+  private static boolean sampleEquals(FileChannel fcLeft, FileChannel fcRight)
+      throws IOException
+  {
+    ByteBuffer[] buffers;
+    long size;
+    long middle;
+
+    size = fcLeft.size();
+    if (size != fcRight.size())
     {
-      return contentEquals(new CharArrayReader(left), new CharArrayReader(right), ignore);
+      return false;
     }
-    catch (IOException ex)
+
+    // A small file is read completely anyway.
+    if (size <= 3 * SAMPLE_BLOCK_SIZE)
     {
-      // IOException will never happen!
-      return false;
+      return true;
     }
+
+    buffers = compareBuffers.get();
+    middle = (size - SAMPLE_BLOCK_SIZE) / 2;
+
+    return blockEquals(fcLeft, fcRight, 0, SAMPLE_BLOCK_SIZE, buffers)
+           && blockEquals(fcLeft, fcRight, size - SAMPLE_BLOCK_SIZE, size, buffers)
+           && blockEquals(fcLeft, fcRight, middle, middle + SAMPLE_BLOCK_SIZE, buffers);
   }
 
   /**
-   * Test if 2 readers are equals (with ignore possibilities). Synchronized because leftLine and rightLine are static
-   * variables for performance reasons.
+   * Test if 2 channels contain the same bytes. The channels are read in blocks into direct buffers that are reused by
+   * the current thread. Files of any size can be compared without mapping them into memory.
+   * The comparison stops at the first block that is different.
+   *
+   * @param digest
+   *          is updated with the content of the channels as long as they are equal.
+   * @return TRUE or FALSE, or null if one of the channels has been truncated while reading it.
    */
-  private static synchronized boolean contentEquals(Reader readerLeft, Reader readerRight, Ignore ignore)
+  private static Boolean contentEquals(FileChannel fcLeft, FileChannel fcRight, MessageDigest digest)
       throws IOException
   {
-    boolean leftEOF, rightEOF;
+    ByteBuffer[] buffers;
+    long size;
+    long position;
+    int length;
 
-    try
+    size = fcLeft.size();
+    if (size != fcRight.size())
     {
-      for (;;)
-      {
-        for (;;)
-        {
-          leftEOF = readLine(readerLeft, leftLineBuffer);
+      return Boolean.FALSE;
+    }
 
-          removeIgnoredChars(leftLineBuffer, ignore, leftLineOutputBuffer);
-          if (leftLineOutputBuffer.remaining() != 0)
-          {
-            break;
-          }
+    buffers = compareBuffers.get();
 
-          if (leftEOF)
-          {
-            break;
-          }
-        }
+    for (position = 0; position < size; position += COMPARE_BLOCK_SIZE)
+    {
+      length = (int) (Math.min(position + COMPARE_BLOCK_SIZE, size) - position);
+      if (!readBlock(fcLeft, position, length, buffers[0]) || !readBlock(fcRight, position, length, buffers[1]))
+      {
+        return null;
+      }
 
-        for (;;)
-        {
-          rightEOF = readLine(readerRight, rightLineBuffer);
+      if (!buffers[0].equals(buffers[1]))
+      {
+        return Boolean.FALSE;
+      }
 
-          removeIgnoredChars(rightLineBuffer, ignore, rightLineOutputBuffer);
-          if (rightLineOutputBuffer.remaining() != 0)
-          {
-            break;
-          }
+      digest.update(buffers[0]);
+    }
 
-          if (rightEOF)
-          {
-            break;
-          }
-        }
+    return Boolean.TRUE;
+  }
 
-        if (leftLineOutputBuffer.remaining() != 0 && rightLineOutputBuffer.remaining() != 0)
-        {
-          if (!leftLineOutputBuffer.equals(rightLineOutputBuffer))
-          {
-            return false;
-          }
-        }
+  private static boolean blockEquals(FileChannel fcLeft, FileChannel fcRight, long start, long end,
+      ByteBuffer[] buffers)
+      throws IOException
+  {
+    ByteBuffer bbLeft;
+    ByteBuffer bbRight;
+    int length;
 
-        if (leftEOF && !rightEOF || !leftEOF && rightEOF)
-        {
-          return false;
-        }
+    length = (int) (end - start);
+    bbLeft = buffers[0];
+    bbRight = buffers[1];
 
-        if (leftEOF && rightEOF)
-        {
-          return true;
-        }
-      }
-    }
-    finally
+    if (!readBlock(fcLeft, start, length, bbLeft) || !readBlock(fcRight, start, length, bbRight))
     {
-      readerLeft.close();
-      readerRight.close();
+      // One of the files has been truncated while comparing.
+      return false;
     }
+
+    return bbLeft.equals(bbRight);
   }
 
-  private static boolean readLine(Reader reader, CharBuffer lineBuffer)
+  private static boolean readBlock(FileChannel fc, long position, int length, ByteBuffer buffer)
       throws IOException
   {
-    int c, nextChar;
+    int count;
 
-    lineBuffer.clear();
-    while ((c = reader.read()) != -1)
+    buffer.clear();
+    buffer.limit(length);
+    while (buffer.hasRemaining())
     {
-      if (lineBuffer.length() == 0)
+      count = fc.read(buffer, position + buffer.position());
+      if (count == -1)
       {
-        throw new IOException("Line to long");
-      }
-
-      lineBuffer.put((char) c);
-
-      if (c == '\n')
-      {
-        break;
+        return false;
       }
+    }
+    buffer.flip();
 
-      if (c == '\r')
-      {
-        reader.mark(1);
-        nextChar = reader.read();
-        if (nextChar == '\n')
-        {
-          lineBuffer.put((char) nextChar);
-          break;
-        }
-        else
-        {
-          reader.reset();
-        }
+    return true;
+  }
 
-        break;
-      }
+  public static boolean contentEquals(char[] left, char[] right, Ignore ignore)
+  {
+    try
+    {
+      return contentEquals(new CharArrayReader(left), new CharArrayReader(right), ignore);
     }
-
-    if (c == -1)
+    catch (IOException ex)
     {
-      return true;
+      // IOException will never happen!
+      return false;
     }
-
-    return false;
   }
 
   /**
-   * Test if 2 readers are equals (with ignore possibilities). Synchronized because leftLine and rightLine are static
-   * variables for performance reasons.
+   * Test if 2 readers are equals (with ignore possibilities). The ignored characters are removed while the readers are
+   * read and the comparison stops at the first difference. Lines are never stored so files with very long lines can
+   * be compared.
    */
-  private static synchronized boolean contentEquals_old(Reader readerLeft, Reader readerRight, Ignore ignore)
+  private static boolean contentEquals(Reader readerLeft, Reader readerRight, Ignore ignore)
       throws IOException
   {
-    boolean equals;
-    boolean leftFound;
-    boolean rightFound;
-    int leftChar;
-    int rightChar;
-    int nextChar;
-    boolean eol;
-    boolean previousEolLeft;
-    boolean previousEolRight;
-    int leftLineIndex;
-    int rightLineIndex;
-    boolean whitespaceAtBegin;
-    int whitespaceIndex;
-
-    leftLineIndex = 0;
-    rightLineIndex = 0;
-
-    equals = false;
-    leftChar = 0;
-    rightChar = 0;
-    previousEolLeft = true;
-    previousEolRight = true;
+    NormalizedLineStream left;
+    NormalizedLineStream right;
+    int c;
 
+    left = new NormalizedLineStream(readerLeft, ignore);
+    right = new NormalizedLineStream(readerRight, ignore);
     try
     {
-      for (;;)
+      do
       {
-        leftFound = false;
-        whitespaceAtBegin = true;
-        whitespaceIndex = -1;
-        while ((leftChar = readerLeft.read()) != -1)
-        {
-          eol = isEOL(leftChar);
-
-          if ((ignore.getIgnoreEOL() || ignore.getIgnoreBlankLines() || ignore.getIgnoreWhitespace()) && eol)
-          {
-            readerLeft.mark(1);
-            nextChar = readerLeft.read();
-
-            // Try to read the following combinations as 1 newline:
-            // 1. '\n'
-            // 2. '\r'
-            // 3. '\r\n'
-            // 4. '\n\r'
-            if (!((leftChar == '\n' && nextChar == '\r') || (leftChar == '\r' && nextChar == '\n')))
-            {
-              // The next character doesn't belong to a newline -> unread it!
-              readerLeft.reset();
-            }
-
-            // Replace all combinations of a newline with '\n'. The compare is now easy.
-            leftChar = '\n';
-          }
-
-          if (ignore.getIgnoreBlankLines() && previousEolLeft && eol)
-          {
-            continue;
-          }
-
-          if (!eol)
-          {
-            if (ignore.getIgnoreWhitespace())
-            {
-              if (Character.isWhitespace(leftChar))
-              {
-                if (whitespaceIndex == -1)
-                {
-                  whitespaceIndex = leftLineIndex;
-                }
-              }
-              else
-              {
-                if (whitespaceIndex != -1)
-                {
-                  if (whitespaceAtBegin)
-                  {
-                    whitespaceAtBegin = false;
-                    if (ignore.getIgnoreWhitespaceAtBegin())
-                    {
-                      leftLineIndex = whitespaceIndex;
-                    }
-                  }
-                  else
-                  {
-                    if (ignore.getIgnoreWhitespaceInBetween())
-                    {
-                      leftLineIndex = whitespaceIndex;
-                    }
-                  }
-                  whitespaceIndex = -1;
-                }
-              }
-            }
-
-            if (ignore.getIgnoreCase())
-            {
-              leftChar = Character.toLowerCase(leftChar);
-            }
-          }
-
-          previousEolLeft = eol;
-
-          leftLine[leftLineIndex] = (char) leftChar;
-          leftLineIndex++;
-
-          if (eol || leftLineIndex >= MAX_LINE_NUMBER)
-          {
-            if (whitespaceIndex != -1 && ignore.getIgnoreWhitespaceAtEnd())
-            {
-              leftLineIndex = whitespaceIndex;
-            }
-
-            break;
-          }
-        }
-
-        rightFound = false;
-        whitespaceAtBegin = true;
-        whitespaceIndex = -1;
-        while ((rightChar = readerRight.read()) != -1)
+        c = left.read();
+        if (c != right.read())
         {
-          eol = isEOL(rightChar);
-
-          if ((ignore.getIgnoreEOL() || ignore.getIgnoreBlankLines() || ignore.getIgnoreWhitespace()) && eol)
-          {
-            readerRight.mark(1);
-            nextChar = readerRight.read();
-
-            // Try to read the following combinations as 1 newline:
-            // 1. '\n'
-            // 2. '\r'
-            // 3. '\r\n'
-            // 4. '\n\r'
-            if (!((rightChar == '\n' && nextChar == '\r') || (rightChar == '\r' && nextChar == '\n')))
-            {
-              // The next character doesn't belong to a newline -> unread it!
-              readerRight.reset();
-            }
-
-            rightChar = '\n';
-          }
-
-          if (ignore.getIgnoreBlankLines() && previousEolRight && eol)
-          {
-            continue;
-          }
-
-          if (!eol)
-          {
-            if (ignore.getIgnoreWhitespace())
-            {
-              if (Character.isWhitespace(rightChar))
-              {
-                if (whitespaceIndex == -1)
-                {
-                  whitespaceIndex = rightLineIndex;
-                }
-              }
-              else
-              {
-                if (whitespaceIndex != -1)
-                {
-                  if (whitespaceAtBegin)
-                  {
-                    whitespaceAtBegin = false;
-                    if (ignore.getIgnoreWhitespaceAtBegin())
-                    {
-                      rightLineIndex = whitespaceIndex;
-                    }
-                  }
-                  else
-                  {
-                    if (ignore.getIgnoreWhitespaceInBetween())
-                    {
-                      rightLineIndex = whitespaceIndex;
-                    }
-                  }
-                  whitespaceIndex = -1;
-                }
-              }
-            }
-            if (ignore.getIgnoreCase())
-            {
-              rightChar = Character.toLowerCase(rightChar);
-            }
-          }
-
-          previousEolRight = eol;
-
-          rightLine[rightLineIndex] = (char) rightChar;
-          rightLineIndex++;
-
-          if (eol || rightLineIndex >= MAX_LINE_NUMBER)
-          {
-            if (whitespaceIndex != -1 && ignore.getIgnoreWhitespaceAtEnd())
-            {
-              rightLineIndex = whitespaceIndex;
-            }
-
-            break;
-          }
-        }
-
-        if (leftLineIndex > 0 && leftLineIndex == rightLineIndex)
-        {
-          if (equals(leftLine, rightLine, leftLineIndex))
-          {
-            leftLineIndex = 0;
-            rightLineIndex = 0;
-            continue;
-          }
-
-          equals = false;
-          break;
-        }
-
-        if (leftLineIndex != rightLineIndex)
-        {
-          equals = false;
-          break;
-        }
-
-        if (leftLineIndex == 0 && rightLineIndex == 0)
-        {
-          equals = true;
-          break;
+          return false;
         }
       }
+      while (c != NormalizedLineStream.END_OF_STREAM);
+
+      return true;
     }
     finally
     {
-      readerLeft.close();
-      readerRight.close();
+      left.close();
+      right.close();
     }
-
-    return equals;
-  }
-
-  private static boolean equals(char[] a1, char[] a2, int size)
-  {
-    for (int i = 0; i < size; i++)
-    {
-      if (a1[i] != a2[i])
-      {
-        return false;
-      }
-    }
-
-    return true;
   }
 
   public static boolean isEOL(int character)
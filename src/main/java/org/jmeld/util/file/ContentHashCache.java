@@ -0,0 +1,337 @@
+/*
+   JMeld is a visual diff and merge tool.
+   Copyright (C) 2007  Kees Kuip
+   This library is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Lesser General Public
+   License as published by the Free Software Foundation; either
+   version 2.1 of the License, or (at your option) any later version.
+   This library is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Lesser General Public License for more details.
+   You should have received a copy of the GNU Lesser General Public
+   License along with this library; if not, write to the Free Software
+   Foundation, Inc., 51 Franklin Street, Fifth Floor,
+   Boston, MA  02110-1301  USA
+ */
+package org.jmeld.util.file;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.jmeld.settings.JMeldSettings;
+
+/**
+ * Persistent cache of content hashes of files. An entry is only valid as long as the size, the last modification time
+ * and the file key (inode) of the file are unchanged. If 2 files both have a valid entry their contents can be compared
+ * without reading them.
+ * <p>
+ * The cache is stored next to the settings file. It holds at least DEFAULT_MAX_ENTRIES and grows with the number of
+ * files in the largest directory comparison. The least recently used entries are evicted first.
+ */
+public class ContentHashCache
+{
+  // Class variables:
+  private static final String FILENAME = "JMeldContentHashCache.dat";
+  private static final int MAGIC = 0x4A4D4843;
+  private static final int VERSION = 1;
+  private static final int DEFAULT_MAX_ENTRIES = 250000;
+  private static final String DIGEST_ALGORITHM = "SHA-256";
+  private static ContentHashCache instance;
+
+  // Instance variables:
+  private File file;
+  private Map<String, Entry> entries;
+  private int maxEntries;
+  private boolean changed;
+
+  private ContentHashCache(File file)
+  {
+    this.file = file;
+
+    maxEntries = DEFAULT_MAX_ENTRIES;
+    entries = new LinkedHashMap<String, Entry>(1024, 0.75f, true)
+    {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, ContentHashCache.Entry> eldest)
+      {
+        return size() > maxEntries;
+      }
+    };
+
+    load();
+  }
+
+  public static synchronized ContentHashCache getInstance()
+  {
+    File settingsFile;
+
+    if (instance == null)
+    {
+      settingsFile = new File(JMeldSettings.getInstance().getConfigurationFileName());
+      instance = new ContentHashCache(new File(settingsFile.getParentFile(), FILENAME));
+    }
+
+    return instance;
+  }
+
+  /**
+   * Use another file to store the cache.
+   */
+  static synchronized void setFile(File file)
+  {
+    instance = new ContentHashCache(file);
+  }
+
+  public static MessageDigest createDigest()
+  {
+    try
+    {
+      return MessageDigest.getInstance(DIGEST_ALGORITHM);
+    }
+    catch (Exception ex)
+    {
+      // Every java platform is required to support SHA-256
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  /**
+   * Create an entry from the attributes that identify the current version of a file. The attributes should be read
+   * BEFORE the content is hashed. If the file is changed while it is hashed the entry will be outdated immediately. The
+   * modification time is kept with the best resolution the filesystem offers.
+   */
+  public static Entry createEntry(File file, BasicFileAttributes attributes)
+  {
+    Object fileKey;
+
+    try
+    {
+      fileKey = attributes.fileKey();
+
+      return new Entry(file.getAbsolutePath(), attributes.size(), attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS),
+          fileKey == null ? "" : fileKey.toString());
+    }
+    catch (Exception ex)
+    {
+      return null;
+    }
+  }
+
+  /**
+   * Compare 2 files with the cached hashes.
+   *
+   * @return TRUE or FALSE if both files have a valid entry in the cache, null if the files have to be compared.
+   */
+  public synchronized Boolean contentEquals(Entry left, Entry right)
+  {
+    Entry cachedLeft;
+    Entry cachedRight;
+
+    cachedLeft = get(left);
+    if (cachedLeft == null)
+    {
+      return null;
+    }
+
+    cachedRight = get(right);
+    if (cachedRight == null)
+    {
+      return null;
+    }
+
+    return Arrays.equals(cachedLeft.hash, cachedRight.hash);
+  }
+
+  /**
+   * Make sure that the hashes of all the files of a directory comparison fit in the cache. Otherwise a large comparison
+   * would evict it's own entries before they can be used the next time.
+   */
+  public synchronized void ensureCapacity(int numberOfFiles)
+  {
+    maxEntries = Math.max(maxEntries, numberOfFiles);
+  }
+
+  public synchronized void put(Entry entry, byte[] hash)
+  {
+    if (entry == null)
+    {
+      return;
+    }
+
+    entry.hash = hash;
+    entries.put(entry.path, entry);
+    changed = true;
+  }
+
+  private Entry get(Entry entry)
+  {
+    Entry cached;
+
+    if (entry == null)
+    {
+      return null;
+    }
+
+    cached = entries.get(entry.path);
+    if (cached == null)
+    {
+      return null;
+    }
+
+    if (!cached.isSameVersion(entry))
+    {
+      entries.remove(entry.path);
+      changed = true;
+      return null;
+    }
+
+    return cached;
+  }
+
+  private void load()
+  {
+    DataInputStream in;
+    int count;
+    Entry entry;
+
+    if (!file.exists())
+    {
+      return;
+    }
+
+    try
+    {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+      try
+      {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION)
+        {
+          return;
+        }
+
+        count = in.readInt();
+        ensureCapacity(count);
+        for (int i = 0; i < count; i++)
+        {
+          entry = new Entry(in.readUTF(), in.readLong(), in.readLong(), in.readUTF());
+          entry.hash = new byte[in.readUnsignedByte()];
+          in.readFully(entry.hash);
+          entries.put(entry.path, entry);
+        }
+      }
+      finally
+      {
+        in.close();
+      }
+    }
+    catch (Exception ex)
+    {
+      // A corrupt cache is not a problem. It will be rebuild.
+      ex.printStackTrace();
+      entries.clear();
+    }
+  }
+
+  /**
+   * The cache is written to a temporary file that replaces the old file when it is complete. A crash while saving never
+   * leaves a truncated cache behind.
+   */
+  public synchronized void save()
+  {
+    File tempFile;
+    DataOutputStream out;
+
+    if (!changed)
+    {
+      return;
+    }
+
+    tempFile = null;
+    try
+    {
+      tempFile = File.createTempFile(FILENAME, ".tmp", file.getAbsoluteFile().getParentFile());
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+      try
+      {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(entries.size());
+        // Entries are written in LRU order so the order survives a restart.
+        for (Entry entry : entries.values())
+        {
+          out.writeUTF(entry.path);
+          out.writeLong(entry.size);
+          out.writeLong(entry.lastModified);
+          out.writeUTF(entry.fileKey);
+          out.writeByte(entry.hash.length);
+          out.write(entry.hash);
+        }
+      }
+      finally
+      {
+        out.close();
+      }
+
+      try
+      {
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                   StandardCopyOption.REPLACE_EXISTING);
+      }
+      catch (AtomicMoveNotSupportedException ex)
+      {
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+
+      changed = false;
+    }
+    catch (Exception ex)
+    {
+      ex.printStackTrace();
+      if (tempFile != null)
+      {
+        tempFile.delete();
+      }
+    }
+  }
+
+  public static class Entry
+  {
+    private String path;
+    private long size;
+    private long lastModified;
+    private String fileKey;
+    private byte[] hash;
+
+    private Entry(String path, long size, long lastModified, String fileKey)
+    {
+      this.path = path;
+      this.size = size;
+      this.lastModified = lastModified;
+      this.fileKey = fileKey;
+    }
+
+    public long getSize()
+    {
+      return size;
+    }
+
+    private boolean isSameVersion(Entry entry)
+    {
+      return size == entry.size && lastModified == entry.lastModified && fileKey.equals(entry.fileKey);
+    }
+  }
+}
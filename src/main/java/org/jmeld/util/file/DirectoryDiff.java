@@ -17,10 +17,36 @@
 package org.jmeld.util.file;
 
 import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.swing.SwingUtilities;
 import org.apache.jmeld.tools.ant.DirectoryScanner;
+import org.jmeld.settings.FolderSettings;
 import org.jmeld.settings.JMeldSettings;
 import org.jmeld.settings.util.Filter;
 import org.jmeld.ui.StatusBar;
@@ -37,6 +63,14 @@ public class DirectoryDiff
   private JMDiffNode rootNode;
   private Map<String, JMDiffNode> nodes;
   private Filter filter;
+  // The nodes that have been submitted to be compared.
+  private Set<JMDiffNode> comparedNodes;
+  private ExecutorService compareExecutor;
+  private CompletionService<JMDiffNode> completionService;
+  private CompareStatistics statistics;
+  private DirectoryWatcher watcher;
+  private ExecutorService updateExecutor;
+  private FolderDiffListenerIF listener;
 
   public DirectoryDiff(File leftDirectory,
       File rightDirectory,
@@ -69,16 +103,24 @@ public class DirectoryDiff
 
   public Collection<JMDiffNode> getNodes()
   {
-    return nodes.values();
+    // The nodes can be changed by the watcher.
+    synchronized (nodes)
+    {
+      return new ArrayList<JMDiffNode>(nodes.values());
+    }
   }
 
-  public void diff()
+  /**
+   * The left and the right directory are scanned at the same time. Every file that is found is added to the nodes
+   * immediately and as soon as a file has been found on both sides its contents are compared. So comparing overlaps
+   * with scanning.
+   */
+  public synchronized void diff()
   {
-    DirectoryScanner ds;
-    JMDiffNode node;
+    ExecutorService scanExecutor;
+    Future<?> leftScan;
+    Future<?> rightScan;
     StopWatch stopWatch;
-    int numberOfNodes;
-    int currentNumber;
     FileNode fn;
 
     stopWatch = new StopWatch();
@@ -91,78 +133,207 @@ public class DirectoryDiff
                               false);
     nodes = new HashMap<String, JMDiffNode>();
 
-    ds = new DirectoryScanner();
-    ds.setShowStateOn(true);
-    ds.setBasedir(leftDirectory);
-    if (filter != null)
+    startComparisons();
+    scanExecutor = Executors.newFixedThreadPool(2);
+    try
     {
-      ds.setIncludes(filter.getIncludes());
-      ds.setExcludes(filter.getExcludes());
+      leftScan = scanExecutor.submit(() -> scan(leftDirectory,
+                                                true));
+      rightScan = scanExecutor.submit(() -> scan(rightDirectory,
+                                                 false));
+      leftScan.get();
+      rightScan.get();
+
+      synchronized (nodes)
+      {
+        ContentHashCache.getInstance().ensureCapacity(2 * nodes.size());
+
+        for (JMDiffNode n : nodes.values())
+        {
+          // Make sure that each node has it's opposite. 
+          // This makes the following copying actions possible :
+          // - copy 'left' to 'not existing'
+          // - copy 'right' to 'not existing'
+          if (n.getBufferNodeRight() == null || n.getBufferNodeLeft() == null)
+          {
+            if (n.getBufferNodeRight() == null)
+            {
+              fn = (FileNode) n.getBufferNodeLeft();
+              fn = new FileNode(fn.getName(),
+                                new File(rightDirectory,
+                                         fn.getName()));
+              n.setBufferNodeRight(fn);
+            }
+            else
+            {
+              fn = (FileNode) n.getBufferNodeRight();
+              fn = new FileNode(fn.getName(),
+                                new File(leftDirectory,
+                                         fn.getName()));
+              n.setBufferNodeLeft(fn);
+            }
+          }
+
+          compare(n);
+        }
+
+        // The scanning threads add the children in an unpredictable order.
+        rootNode.sortChildren();
+      }
+
+      waitForComparisons();
     }
-    ds.setCaseSensitive(true);
-    ds.scan();
+    catch (InterruptedException ex)
+    {
+      Thread.currentThread().interrupt();
+    }
+    catch (ExecutionException ex)
+    {
+      if (ex.getCause() instanceof RuntimeException)
+      {
+        throw (RuntimeException) ex.getCause();
+      }
 
-    for (FileNode fileNode : ds.getIncludedFilesMap().values())
+      ex.getCause().printStackTrace();
+    }
+    finally
     {
-      node = addNode(fileNode.getName());
-      node.setBufferNodeLeft(fileNode);
+      scanExecutor.shutdownNow();
+      compareExecutor.shutdownNow();
     }
 
-    ds = new DirectoryScanner();
+    ContentHashCache.getInstance().save();
+
+    StatusBar.getInstance().setState("Ready comparing directories (took %d seconds; decided by %s)",
+                                     stopWatch.getElapsedTime() / 1000,
+                                     statistics);
+    StatusBar.getInstance().stop();
+  }
+
+  private void scan(File directory,
+      boolean left)
+  {
+    DirectoryScanner ds;
+
+    ds = createScanner(directory);
     ds.setShowStateOn(true);
-    ds.setBasedir(rightDirectory);
+    ds.setIncludedFileListener(fileNode -> addFileNode(fileNode,
+                                                       left));
+    ds.scan();
+  }
+
+  private DirectoryScanner createScanner(File directory)
+  {
+    DirectoryScanner ds;
+
+    ds = new DirectoryScanner();
+    ds.setBasedir(directory);
     if (filter != null)
     {
       ds.setIncludes(filter.getIncludes());
       ds.setExcludes(filter.getExcludes());
     }
     ds.setCaseSensitive(true);
-    ds.scan();
 
-    for (FileNode fileNode : ds.getIncludedFilesMap().values())
+    return ds;
+  }
+
+  /**
+   * Called by the scanning threads for every file that has been found.
+   */
+  private void addFileNode(FileNode fileNode,
+      boolean left)
+  {
+    JMDiffNode node;
+
+    synchronized (nodes)
     {
       node = addNode(fileNode.getName());
-      node.setBufferNodeRight(fileNode);
+      if (left)
+      {
+        node.setBufferNodeLeft(fileNode);
+      }
+      else
+      {
+        node.setBufferNodeRight(fileNode);
+      }
+
+      if (node.getBufferNodeLeft() != null && node.getBufferNodeRight() != null)
+      {
+        compare(node);
+      }
+    }
+  }
+
+  /**
+   * Start a pool of threads that compare the nodes that are passed to compare().
+   */
+  private void startComparisons()
+  {
+    comparedNodes = Collections.newSetFromMap(new IdentityHashMap<JMDiffNode, Boolean>());
+    statistics = new CompareStatistics();
+    compareExecutor = Executors.newFixedThreadPool(getCompareParallelism());
+    completionService = new ExecutorCompletionService<JMDiffNode>(compareExecutor);
+  }
+
+  /**
+   * Compare the contents of a node. The comparisons are independent of each other so they are executed by a pool of
+   * threads. Every node stores it's own result so the outcome doesn't depend on the order of execution.
+   */
+  private void compare(JMDiffNode node)
+  {
+    if (!comparedNodes.add(node))
+    {
+      return;
     }
 
+    completionService.submit(() ->
+    {
+      node.compareContents(statistics);
+      return node;
+    });
+  }
+
+  /**
+   * Wait until all comparisons are ready. Progress is reported from this thread only.
+   */
+  private void waitForComparisons()
+      throws InterruptedException
+  {
+    int numberOfNodes;
+
     StatusBar.getInstance().setState("Comparing nodes...");
-    numberOfNodes = nodes.size();
-    currentNumber = 0;
-    for (JMDiffNode n : nodes.values())
+    numberOfNodes = comparedNodes.size();
+
+    for (int currentNumber = 1; currentNumber <= numberOfNodes; currentNumber++)
     {
-      // Make sure that each node has it's opposite. 
-      // This makes the following copying actions possible :
-      // - copy 'left' to 'not existing'
-      // - copy 'right' to 'not existing'
-      if (n.getBufferNodeRight() == null || n.getBufferNodeLeft() == null)
+      try
       {
-        if (n.getBufferNodeRight() == null)
-        {
-          fn = (FileNode) n.getBufferNodeLeft();
-          fn = new FileNode(fn.getName(),
-                            new File(rightDirectory,
-                                     fn.getName()));
-          n.setBufferNodeRight(fn);
-        }
-        else
-        {
-          fn = (FileNode) n.getBufferNodeRight();
-          fn = new FileNode(fn.getName(),
-                            new File(leftDirectory,
-                                     fn.getName()));
-          n.setBufferNodeLeft(fn);
-        }
+        completionService.take().get();
+      }
+      catch (ExecutionException ex)
+      {
+        ex.getCause().printStackTrace();
       }
 
-      n.compareContents();
-
-      StatusBar.getInstance().setProgress(++currentNumber,
+      StatusBar.getInstance().setState("Comparing nodes (decided by %s)",
+                                       statistics);
+      StatusBar.getInstance().setProgress(currentNumber,
                                           numberOfNodes);
     }
+  }
 
-    StatusBar.getInstance()
-        .setState("Ready comparing directories (took " + (stopWatch.getElapsedTime() / 1000) + " seconds)");
-    StatusBar.getInstance().stop();
+  private int getCompareParallelism()
+  {
+    int parallelism;
+
+    parallelism = JMeldSettings.getInstance().getFolder().getCompareParallelism();
+    if (parallelism <= 0)
+    {
+      parallelism = Runtime.getRuntime().availableProcessors();
+    }
+
+    return parallelism;
   }
 
   private JMDiffNode addNode(String name)
@@ -213,6 +384,393 @@ public class DirectoryDiff
     return node;
   }
 
+  @Override
+  public void startWatching(FolderDiffListenerIF listener)
+  {
+    FolderSettings settings;
+    DirectoryScanner ds;
+    DirectoryWatcher dw;
+
+    settings = JMeldSettings.getInstance().getFolder();
+    if (watcher != null || !settings.getWatchDirectories())
+    {
+      return;
+    }
+
+    this.listener = listener;
+
+    // The changes are handled in another thread so the watcher doesn't
+    //   have to wait for them. Registering the directories walks both
+    //   trees, that is done in the same thread.
+    updateExecutor = Executors.newSingleThreadExecutor();
+    ds = createScanner(leftDirectory);
+    dw = new DirectoryWatcher(Arrays.asList(leftDirectory,
+                                            rightDirectory),
+                              settings.getWatchDelay(),
+                              ds::isScannedDirectory,
+                              names -> updateExecutor.execute(() -> filesChanged(names)));
+    watcher = dw;
+    updateExecutor.execute(() ->
+    {
+      try
+      {
+        dw.start();
+      }
+      catch (IOException ex)
+      {
+        // For instance: the system limit of watched directories has been reached.
+        ex.printStackTrace();
+        dw.stop();
+      }
+    });
+  }
+
+  @Override
+  public void stopWatching()
+  {
+    if (watcher != null)
+    {
+      watcher.stop();
+      watcher = null;
+      updateExecutor.shutdownNow();
+      updateExecutor = null;
+    }
+  }
+
+  /**
+   * Called with the names of files and directories that have been created, modified or deleted on the left or the right
+   * side. Only the nodes of those files are updated and compared again.
+   * <p>
+   * The files are examined in the update thread and compared by the pool of compare threads. The nodes are shown by
+   * the folder view, so they are added and removed on the event dispatch thread. The next changes are handled after
+   * that has been done.
+   */
+  private synchronized void filesChanged(Set<String> names)
+  {
+    DirectoryScanner ds;
+    Set<String> fileNames;
+    Map<String, JMDiffNode> addedNodes;
+    Set<JMDiffNode> changedNodes;
+    List<JMDiffNode> obsoleteNodes;
+
+    try
+    {
+      if (names.contains(""))
+      {
+        // Changes have been lost. The nodes are shown by the folder view,
+        //   it has to start a refresh of the whole folder diff.
+        SwingUtilities.invokeLater(() -> listener.folderDiffChanged());
+        return;
+      }
+
+      ds = createScanner(leftDirectory);
+      fileNames = new TreeSet<String>();
+      addedNodes = new LinkedHashMap<String, JMDiffNode>();
+      changedNodes = new LinkedHashSet<JMDiffNode>();
+      obsoleteNodes = new ArrayList<JMDiffNode>();
+
+      synchronized (nodes)
+      {
+        for (String name : names)
+        {
+          collectFileNames(name,
+                           fileNames);
+        }
+
+        for (String name : fileNames)
+        {
+          checkNode(name,
+                    ds,
+                    addedNodes,
+                    changedNodes,
+                    obsoleteNodes);
+        }
+      }
+
+      StatusBar.getInstance().start();
+      startComparisons();
+      try
+      {
+        for (JMDiffNode node : addedNodes.values())
+        {
+          compare(node);
+        }
+
+        for (JMDiffNode node : changedNodes)
+        {
+          compare(node);
+        }
+
+        waitForComparisons();
+      }
+      finally
+      {
+        compareExecutor.shutdownNow();
+      }
+      ContentHashCache.getInstance().save();
+
+      StatusBar.getInstance().setText("Compared %d changed files (decided by %s)",
+                                      comparedNodes.size(),
+                                      statistics);
+
+      SwingUtilities.invokeAndWait(() -> updateNodes(addedNodes.values(),
+                                                     changedNodes,
+                                                     obsoleteNodes));
+    }
+    catch (InterruptedException ex)
+    {
+      // Watching has been stopped.
+      Thread.currentThread().interrupt();
+    }
+    catch (InvocationTargetException ex)
+    {
+      ex.getCause().printStackTrace();
+    }
+  }
+
+  /**
+   * A changed directory stands for all the files in it: the files it contains now and the files it contained before.
+   */
+  private void collectFileNames(String name,
+      Set<String> fileNames)
+  {
+    JMDiffNode node;
+    String prefix;
+
+    fileNames.add(name);
+
+    node = nodes.get(name);
+    if ((node != null && !node.isLeaf()) || new File(leftDirectory,
+                                                     name).isDirectory()
+        || new File(rightDirectory,
+                    name).isDirectory())
+    {
+      prefix = name + File.separator;
+      for (String nodeName : nodes.keySet())
+      {
+        if (nodeName.startsWith(prefix))
+        {
+          fileNames.add(nodeName);
+        }
+      }
+
+      collectFileNames(leftDirectory,
+                       name,
+                       fileNames);
+      collectFileNames(rightDirectory,
+                       name,
+                       fileNames);
+    }
+  }
+
+  private void collectFileNames(File rootDirectory,
+      String name,
+      Set<String> fileNames)
+  {
+    Path root;
+    Path directory;
+
+    root = rootDirectory.toPath();
+    directory = root.resolve(name);
+    if (!Files.isDirectory(directory))
+    {
+      return;
+    }
+
+    try
+    {
+      Files.walkFileTree(directory,
+                         EnumSet.of(FileVisitOption.FOLLOW_LINKS),
+                         Integer.MAX_VALUE,
+                         new SimpleFileVisitor<Path>()
+                         {
+                           @Override
+                           public FileVisitResult visitFile(Path file,
+                               BasicFileAttributes attributes)
+                           {
+                             if (attributes.isRegularFile())
+                             {
+                               fileNames.add(root.relativize(file).toString());
+                             }
+                             return FileVisitResult.CONTINUE;
+                           }
+
+                           @Override
+                           public FileVisitResult visitFileFailed(Path file,
+                               IOException ex)
+                           {
+                             return FileVisitResult.CONTINUE;
+                           }
+                         });
+    }
+    catch (IOException ex)
+    {
+      ex.printStackTrace();
+    }
+  }
+
+  /**
+   * Check the node of a file against the files on disk. A node is added if the file has been created on one of the
+   * sides and it is obsolete if the file doesn't exist anymore on both sides. The nodes are not changed here.
+   */
+  private void checkNode(String name,
+      DirectoryScanner ds,
+      Map<String, JMDiffNode> addedNodes,
+      Set<JMDiffNode> changedNodes,
+      List<JMDiffNode> obsoleteNodes)
+  {
+    JMDiffNode node;
+    FileNode left;
+    FileNode right;
+
+    node = nodes.get(name);
+    if (node != null && !node.isLeaf())
+    {
+      // A directory. It is removed when its last file is removed.
+      resetContent(node,
+                   changedNodes);
+      return;
+    }
+
+    left = new FileNode(name,
+                        new File(leftDirectory,
+                                 name));
+    right = new FileNode(name,
+                         new File(rightDirectory,
+                                  name));
+    if (!ds.isIncludedFile(name) || (!isRegularFile(left) && !isRegularFile(right)))
+    {
+      if (node != null)
+      {
+        obsoleteNodes.add(node);
+      }
+      return;
+    }
+
+    if (node == null)
+    {
+      node = new JMDiffNode(name,
+                            true);
+      node.setBufferNodeLeft(left);
+      node.setBufferNodeRight(right);
+      addedNodes.put(name,
+                     node);
+    }
+    else
+    {
+      // The buffer nodes are kept because they can be used by an
+      //   open file comparison.
+      resetContent(node,
+                   changedNodes);
+    }
+
+    // A directory that has been created or removed on one side changes
+    //   the state of its node.
+    for (node = getExistingParent(name); node != null && node != rootNode; node = node.getParent())
+    {
+      resetContent(node,
+                   changedNodes);
+    }
+  }
+
+  /**
+   * @return the node of the nearest directory of a file that is already known.
+   */
+  private JMDiffNode getExistingParent(String name)
+  {
+    JMDiffNode parent;
+    int index;
+
+    parent = null;
+    while (parent == null && (index = name.lastIndexOf(File.separator)) != -1)
+    {
+      name = name.substring(0,
+                            index);
+      parent = nodes.get(name);
+    }
+
+    return parent;
+  }
+
+  /**
+   * Add and remove the nodes and tell the listener. Called on the event dispatch thread.
+   */
+  private void updateNodes(Collection<JMDiffNode> addedNodes,
+      Set<JMDiffNode> changedNodes,
+      List<JMDiffNode> obsoleteNodes)
+  {
+    Set<JMDiffNode> removedNodes;
+    JMDiffNode parent;
+
+    removedNodes = new LinkedHashSet<JMDiffNode>();
+
+    synchronized (nodes)
+    {
+      for (JMDiffNode node : obsoleteNodes)
+      {
+        removeNode(node,
+                   removedNodes);
+      }
+
+      for (JMDiffNode node : addedNodes)
+      {
+        addNode(node);
+        changedNodes.add(node);
+
+        // Directories that didn't exist yet have been created.
+        for (parent = node.getParent(); parent != rootNode; parent = parent.getParent())
+        {
+          if (changedNodes.add(parent))
+          {
+            parent.compareContents(statistics);
+          }
+        }
+      }
+
+      rootNode.sortChildren();
+    }
+
+    changedNodes.removeAll(removedNodes);
+
+    listener.nodesChanged(changedNodes,
+                          removedNodes);
+  }
+
+  private boolean isRegularFile(FileNode fileNode)
+  {
+    return fileNode.exists() && fileNode.getAttributes().isRegularFile();
+  }
+
+  private void resetContent(JMDiffNode node,
+      Set<JMDiffNode> changedNodes)
+  {
+    if (changedNodes.add(node))
+    {
+      ((FileNode) node.getBufferNodeLeft()).resetContent();
+      ((FileNode) node.getBufferNodeRight()).resetContent();
+    }
+  }
+
+  /**
+   * Remove a node and the directories that become empty.
+   */
+  private void removeNode(JMDiffNode node,
+      Set<JMDiffNode> removedNodes)
+  {
+    JMDiffNode parent;
+
+    do
+    {
+      parent = node.getParent();
+      parent.removeChild(node);
+      nodes.remove(node.getName());
+      removedNodes.add(node);
+
+      node = parent;
+    }
+    while (node != rootNode && node.getChildCount() == 0);
+  }
+
   public void print()
   {
     rootNode.print("");
@@ -0,0 +1,296 @@
+/*
+   JMeld is a visual diff and merge tool.
+   Copyright (C) 2007  Kees Kuip
+   This library is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Lesser General Public
+   License as published by the Free Software Foundation; either
+   version 2.1 of the License, or (at your option) any later version.
+   This library is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Lesser General Public License for more details.
+   You should have received a copy of the GNU Lesser General Public
+   License along with this library; if not, write to the Free Software
+   Foundation, Inc., 51 Franklin Street, Fifth Floor,
+   Boston, MA  02110-1301  USA
+ */
+package org.jmeld.util.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Watches all directories of one or more trees with a WatchService. The names of the files and directories that have
+ * been created, modified or deleted are collected until no event has arrived during the debounce delay (a build writes
+ * many files in a short time). Then they are reported at once. The names are relative to the root of their tree.
+ * <p>
+ * If events have been lost (the WatchService overflowed) the name of the root ("") is reported: everything might have
+ * changed.
+ * <p>
+ * Directories that are not accepted by the directory filter are not watched. Every watched directory uses a watch of
+ * the operating system and the number of watches is limited.
+ */
+class DirectoryWatcher
+    implements Runnable
+{
+  // Class variables:
+  // Names are reported at the latest after this number of debounce delays,
+  //   even if the events keep coming.
+  private static final int MAX_DELAYS = 10;
+
+  // Instance variables:
+  private List<Path> roots;
+  private long debounceDelay;
+  private Predicate<String> directoryFilter;
+  private Consumer<Set<String>> changeListener;
+  private volatile WatchService watchService;
+  private volatile boolean stopped;
+  // The root and the directory of every registered key.
+  private Map<WatchKey, Path[]> keys;
+
+  /**
+   * @param directoryFilter
+   *          is called with the name of a directory relative to its root. The root itself is always watched.
+   */
+  DirectoryWatcher(List<File> roots,
+      long debounceDelay,
+      Predicate<String> directoryFilter,
+      Consumer<Set<String>> changeListener)
+  {
+    this.roots = new ArrayList<Path>();
+    for (File root : roots)
+    {
+      this.roots.add(root.toPath());
+    }
+
+    this.debounceDelay = debounceDelay;
+    this.directoryFilter = directoryFilter;
+    this.changeListener = changeListener;
+  }
+
+  /**
+   * Register all directories and start watching them. This walks both trees, so it should not be called on the event
+   * dispatch thread. It can be stopped at any moment by calling stop() in another thread.
+   */
+  void start()
+      throws IOException
+  {
+    Thread thread;
+
+    watchService = FileSystems.getDefault().newWatchService();
+    if (stopped)
+    {
+      watchService.close();
+      return;
+    }
+
+    keys = new HashMap<WatchKey, Path[]>();
+    try
+    {
+      for (Path root : roots)
+      {
+        register(root,
+                 root);
+      }
+    }
+    catch (ClosedWatchServiceException ex)
+    {
+      // The watcher has been stopped while registering.
+      return;
+    }
+
+    thread = new Thread(this,
+                        "DirectoryWatcher");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  void stop()
+  {
+    WatchService ws;
+
+    stopped = true;
+    ws = watchService;
+    if (ws == null)
+    {
+      // start() will close the watch service.
+      return;
+    }
+
+    try
+    {
+      // The watching thread and start() stop with a
+      //   ClosedWatchServiceException.
+      ws.close();
+    }
+    catch (IOException ex)
+    {
+      ex.printStackTrace();
+    }
+  }
+
+  public void run()
+  {
+    Set<String> names;
+    WatchKey key;
+    long deadline;
+
+    try
+    {
+      for (;;)
+      {
+        names = new HashSet<String>();
+
+        key = watchService.take();
+        deadline = System.currentTimeMillis() + MAX_DELAYS * debounceDelay;
+        while (key != null)
+        {
+          handleEvents(key,
+                       names);
+          if (System.currentTimeMillis() >= deadline)
+          {
+            break;
+          }
+
+          key = watchService.poll(debounceDelay,
+                                  TimeUnit.MILLISECONDS);
+        }
+
+        if (names.isEmpty())
+        {
+          continue;
+        }
+
+        try
+        {
+          changeListener.accept(names);
+        }
+        catch (RuntimeException ex)
+        {
+          // Keep watching.
+          ex.printStackTrace();
+        }
+      }
+    }
+    catch (ClosedWatchServiceException ex)
+    {
+      // The watcher has been stopped.
+    }
+    catch (InterruptedException ex)
+    {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void handleEvents(WatchKey key,
+      Set<String> names)
+  {
+    Path[] rootAndDirectory;
+    Path root;
+    Path path;
+
+    rootAndDirectory = keys.get(key);
+    if (rootAndDirectory == null)
+    {
+      key.cancel();
+      return;
+    }
+
+    root = rootAndDirectory[0];
+    for (WatchEvent<?> event : key.pollEvents())
+    {
+      if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+      {
+        names.add("");
+        continue;
+      }
+
+      path = rootAndDirectory[1].resolve((Path) event.context());
+      names.add(root.relativize(path).toString());
+
+      // Files that are written into a new directory before it has been
+      //   registered are not reported. The name of the directory is
+      //   reported instead.
+      if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path))
+      {
+        try
+        {
+          register(root,
+                   path);
+        }
+        catch (IOException ex)
+        {
+          ex.printStackTrace();
+        }
+      }
+    }
+
+    if (!key.reset())
+    {
+      // The directory doesn't exist anymore.
+      keys.remove(key);
+    }
+  }
+
+  /**
+   * Register a directory and all its subdirectories that are accepted by the directory filter.
+   */
+  private void register(Path root,
+      Path directory)
+      throws IOException
+  {
+    Files.walkFileTree(directory,
+                       EnumSet.of(FileVisitOption.FOLLOW_LINKS),
+                       Integer.MAX_VALUE,
+                       new SimpleFileVisitor<Path>()
+                       {
+                         @Override
+                         public FileVisitResult preVisitDirectory(Path dir,
+                             BasicFileAttributes attributes)
+                             throws IOException
+                         {
+                           if (!dir.equals(root) && !directoryFilter.test(root.relativize(dir).toString()))
+                           {
+                             return FileVisitResult.SKIP_SUBTREE;
+                           }
+
+                           keys.put(dir.register(watchService,
+                                                 StandardWatchEventKinds.ENTRY_CREATE,
+                                                 StandardWatchEventKinds.ENTRY_DELETE,
+                                                 StandardWatchEventKinds.ENTRY_MODIFY),
+                                    new Path[] { root, dir });
+                           return FileVisitResult.CONTINUE;
+                         }
+
+                         @Override
+                         public FileVisitResult visitFileFailed(Path file,
+                             IOException ex)
+                         {
+                           // A broken link or a directory that can't be read.
+                           return FileVisitResult.CONTINUE;
+                         }
+                       });
+  }
+}
@@ -86,5 +86,17 @@ public abstract class FolderDiff
     diff();
   }
 
+  /**
+   * Keep the nodes up to date with the files on disk until stopWatching() is called. The listener is told which nodes
+   * have changed. A folder diff that can't watch its files ignores this.
+   */
+  public void startWatching(FolderDiffListenerIF listener)
+  {
+  }
+
+  public void stopWatching()
+  {
+  }
+
   public abstract void diff();
 }
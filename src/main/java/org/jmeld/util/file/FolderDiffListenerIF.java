@@ -0,0 +1,36 @@
+/*
+   JMeld is a visual diff and merge tool.
+   Copyright (C) 2007  Kees Kuip
+   This library is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Lesser General Public
+   License as published by the Free Software Foundation; either
+   version 2.1 of the License, or (at your option) any later version.
+   This library is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Lesser General Public License for more details.
+   You should have received a copy of the GNU Lesser General Public
+   License along with this library; if not, write to the Free Software
+   Foundation, Inc., 51 Franklin Street, Fifth Floor,
+   Boston, MA  02110-1301  USA
+ */
+package org.jmeld.util.file;
+
+import java.util.Collection;
+import org.jmeld.util.node.JMDiffNode;
+
+public interface FolderDiffListenerIF
+{
+  /**
+   * The nodes have been compared again because their files have been created, modified or deleted on disk. A changed
+   * node can be new. The removed nodes are no longer part of the folder diff. Called on the event dispatch thread.
+   */
+  public void nodesChanged(Collection<JMDiffNode> changedNodes,
+      Collection<JMDiffNode> removedNodes);
+
+  /**
+   * Changes have been lost, all nodes might have changed. The listener should refresh the whole folder diff. Called on
+   * the event dispatch thread.
+   */
+  public void folderDiffChanged();
+}
@@ -0,0 +1,125 @@
+/*
+   JMeld is a visual diff and merge tool.
+   Copyright (C) 2007  Kees Kuip
+   This library is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Lesser General Public
+   License as published by the Free Software Foundation; either
+   version 2.1 of the License, or (at your option) any later version.
+   This library is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Lesser General Public License for more details.
+   You should have received a copy of the GNU Lesser General Public
+   License along with this library; if not, write to the Free Software
+   Foundation, Inc., 51 Franklin Street, Fifth Floor,
+   Boston, MA  02110-1301  USA
+ */
+package org.jmeld.util.file;
+
+import java.nio.CharBuffer;
+import java.util.ArrayDeque;
+import org.jmeld.util.Ignore;
+
+/**
+ * A line and the same line without the characters that can be ignored. The buffers grow if a line doesn't fit.
+ * <p>
+ * Buffers are kept in a pool for every thread. A buffer is taken out of the pool with acquire() and must be returned
+ * with release(). A buffer can only be used by one thread, but threads don't have to wait for each other.
+ */
+public class LineBuffer
+{
+  // Class variables:
+  private static final int INITIAL_CAPACITY = 256;
+  // A buffer that has grown larger than this (for a very long line) is
+  //   not kept in the pool.
+  private static final int MAX_POOLED_CAPACITY = 64 * 1024;
+  private static final ThreadLocal<ArrayDeque<LineBuffer>> pool = ThreadLocal
+      .withInitial(() -> new ArrayDeque<LineBuffer>());
+
+  // Instance variables:
+  private CharBuffer input;
+  private CharBuffer output;
+
+  private LineBuffer()
+  {
+    input = CharBuffer.allocate(INITIAL_CAPACITY);
+    output = CharBuffer.allocate(INITIAL_CAPACITY);
+  }
+
+  public static LineBuffer acquire()
+  {
+    LineBuffer lineBuffer;
+
+    lineBuffer = pool.get().poll();
+    if (lineBuffer == null)
+    {
+      lineBuffer = new LineBuffer();
+    }
+
+    lineBuffer.clear();
+
+    return lineBuffer;
+  }
+
+  public void release()
+  {
+    if (input.capacity() > MAX_POOLED_CAPACITY)
+    {
+      return;
+    }
+
+    pool.get().push(this);
+  }
+
+  public void clear()
+  {
+    input.clear();
+    output.clear();
+  }
+
+  public void put(CharSequence text)
+  {
+    ensureCapacity(input.position() + text.length());
+    for (int i = 0; i < text.length(); i++)
+    {
+      input.put(text.charAt(i));
+    }
+  }
+
+  /**
+   * Remove the characters that can be ignored from the line.
+   *
+   * @return the line without the ignored characters. The buffer is reused by the next call.
+   */
+  public CharBuffer removeIgnoredChars(Ignore ignore)
+  {
+    // The output is never longer than the input except for a blank line
+    //   that is not ignored (it becomes a newline).
+    if (output.capacity() < input.capacity())
+    {
+      output = CharBuffer.allocate(input.capacity());
+    }
+
+    CompareUtil.removeIgnoredChars(input,
+                                   ignore,
+                                   output);
+
+    return output;
+  }
+
+  private void ensureCapacity(int capacity)
+  {
+    CharBuffer newInput;
+
+    if (capacity <= input.capacity())
+    {
+      return;
+    }
+
+    newInput = CharBuffer.allocate(Math.max(capacity,
+                                            input.capacity() * 2));
+    input.flip();
+    newInput.put(input);
+    input = newInput;
+  }
+}
@@ -0,0 +1,348 @@
+/*
+   JMeld is a visual diff and merge tool.
+   Copyright (C) 2007  Kees Kuip
+   This library is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Lesser General Public
+   License as published by the Free Software Foundation; either
+   version 2.1 of the License, or (at your option) any later version.
+   This library is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Lesser General Public License for more details.
+   You should have received a copy of the GNU Lesser General Public
+   License along with this library; if not, write to the Free Software
+   Foundation, Inc., 51 Franklin Street, Fifth Floor,
+   Boston, MA  02110-1301  USA
+ */
+package org.jmeld.util.file;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import org.jmeld.util.Ignore;
+
+/**
+ * The characters of a reader without the characters that can be ignored. The rules are the same as in
+ * CompareUtil.removeIgnoredChars() but they are applied while the reader is read, so a line is never stored.
+ * <p>
+ * read() returns END_OF_LINE after every line that is not ignored completely. Two readers are equal (with the ignore
+ * options) if their streams are equal.
+ * <p>
+ * Only whitespace has to be kept until it is known if it is at the begin, in between or at the end of a line. That is
+ * not even necessary if those options are the same.
+ */
+class NormalizedLineStream
+{
+  // Class variables:
+  static final int END_OF_STREAM = -1;
+  static final int END_OF_LINE = -2;
+  private static final int BLOCK_SIZE = 8 * 1024;
+
+  // Instance variables:
+  private Reader reader;
+  private boolean ignoreWhitespaceAtBegin;
+  private boolean ignoreWhitespaceInBetween;
+  private boolean ignoreWhitespaceAtEnd;
+  private boolean ignoreEOL;
+  private boolean ignoreBlankLines;
+  private boolean ignoreCase;
+  // The characters that have been read from the reader:
+  private char[] input;
+  private int inputPosition;
+  private int inputLength;
+  private boolean endOfStream;
+  // The characters (and END_OF_LINE) that can be returned by read():
+  private int[] output;
+  private int outputPosition;
+  private int outputLength;
+  // The whitespace that has been read but not yet handled:
+  private char[] whitespace;
+  private int whitespaceLength;
+  // The state of the current line:
+  private boolean lineStarted;
+  private boolean whitespaceAtBegin;
+  private boolean blankLine;
+
+  NormalizedLineStream(Reader reader,
+      Ignore ignore)
+  {
+    this.reader = reader;
+
+    ignoreWhitespaceAtBegin = ignore.getIgnoreWhitespaceAtBegin();
+    ignoreWhitespaceInBetween = ignore.getIgnoreWhitespaceInBetween();
+    ignoreWhitespaceAtEnd = ignore.getIgnoreWhitespaceAtEnd();
+    ignoreEOL = ignore.getIgnoreEOL();
+    ignoreBlankLines = ignore.getIgnoreBlankLines();
+    ignoreCase = ignore.getIgnoreCase();
+
+    input = new char[BLOCK_SIZE];
+    output = new int[64];
+    whitespace = new char[64];
+
+    startLine();
+  }
+
+  /**
+   * @return the next character, END_OF_LINE or END_OF_STREAM.
+   */
+  int read()
+      throws IOException
+  {
+    while (outputPosition == outputLength)
+    {
+      outputPosition = 0;
+      outputLength = 0;
+
+      if (!readLinePart())
+      {
+        return END_OF_STREAM;
+      }
+    }
+
+    return output[outputPosition++];
+  }
+
+  /**
+   * Handle input until some output is available or until a line has ended.
+   *
+   * @return false if the end of the stream has been reached.
+   */
+  private boolean readLinePart()
+      throws IOException
+  {
+    char c;
+
+    for (;;)
+    {
+      if (inputPosition == inputLength)
+      {
+        if (endOfStream || !fill())
+        {
+          if (lineStarted)
+          {
+            endLine(null);
+            return true;
+          }
+
+          return false;
+        }
+      }
+
+      c = input[inputPosition++];
+      lineStarted = true;
+
+      if (c == '\n')
+      {
+        endLine("\n");
+        return true;
+      }
+
+      if (c == '\r')
+      {
+        if (inputPosition == inputLength && !endOfStream)
+        {
+          fill();
+        }
+
+        if (inputPosition < inputLength && input[inputPosition] == '\n')
+        {
+          inputPosition++;
+          endLine("\r\n");
+        }
+        else
+        {
+          endLine("\r");
+        }
+
+        return true;
+      }
+
+      if (Character.isWhitespace(c))
+      {
+        addWhitespace(c);
+      }
+      else
+      {
+        flushWhitespace();
+        emitContent(c);
+      }
+
+      if (outputLength > 0)
+      {
+        return true;
+      }
+    }
+  }
+
+  private boolean fill()
+      throws IOException
+  {
+    int length;
+
+    // Keep the input that has not been handled yet.
+    length = inputLength - inputPosition;
+    System.arraycopy(input,
+                     inputPosition,
+                     input,
+                     0,
+                     length);
+    inputPosition = 0;
+    inputLength = length;
+
+    length = reader.read(input,
+                         inputLength,
+                         input.length - inputLength);
+    if (length == -1)
+    {
+      endOfStream = true;
+      return false;
+    }
+
+    inputLength += length;
+    return true;
+  }
+
+  private void addWhitespace(char c)
+  {
+    // Whitespace after the begin of a line is either in between or at the
+    //   end of a line. It doesn't have to be kept if both are handled the
+    //   same way.
+    if (!whitespaceAtBegin && ignoreWhitespaceInBetween == ignoreWhitespaceAtEnd)
+    {
+      if (!ignoreWhitespaceInBetween)
+      {
+        blankLine = false;
+        emit(c);
+      }
+
+      return;
+    }
+
+    if (whitespaceLength == whitespace.length)
+    {
+      whitespace = Arrays.copyOf(whitespace,
+                                 whitespace.length * 2);
+    }
+
+    whitespace[whitespaceLength++] = c;
+  }
+
+  /**
+   * A character that is not whitespace has been read so the kept whitespace is at the begin or in between.
+   */
+  private void flushWhitespace()
+  {
+    for (int i = 0; i < whitespaceLength; i++)
+    {
+      emitContent(whitespace[i]);
+    }
+
+    whitespaceLength = 0;
+  }
+
+  /**
+   * Handle a character that is not at the end of a line. This follows CompareUtil.removeIgnoredChars().
+   */
+  private void emitContent(char c)
+  {
+    if (Character.isWhitespace(c))
+    {
+      if (whitespaceAtBegin)
+      {
+        if (ignoreWhitespaceAtBegin)
+        {
+          return;
+        }
+      }
+      else
+      {
+        if (ignoreWhitespaceInBetween)
+        {
+          return;
+        }
+      }
+    }
+
+    whitespaceAtBegin = false;
+    blankLine = false;
+    emit(c);
+  }
+
+  /**
+   * @param lineEnding
+   *          the characters that ended the line or null at the end of the stream.
+   */
+  private void endLine(String lineEnding)
+  {
+    // The kept whitespace is at the end of the line.
+    if (!ignoreWhitespaceAtEnd)
+    {
+      for (int i = 0; i < whitespaceLength; i++)
+      {
+        blankLine = false;
+        emit(whitespace[i]);
+      }
+    }
+    whitespaceLength = 0;
+
+    if (blankLine && ignoreBlankLines)
+    {
+      // The whole line is ignored. Only the line ending could have
+      //   been written, but that has not happened yet.
+      startLine();
+      return;
+    }
+
+    if (lineEnding != null && !ignoreEOL)
+    {
+      for (int i = 0; i < lineEnding.length(); i++)
+      {
+        emit(lineEnding.charAt(i));
+      }
+    }
+    else if (blankLine)
+    {
+      // A line that is empty after removing the ignored characters.
+      emit('\n');
+    }
+
+    addOutput(END_OF_LINE);
+
+    startLine();
+  }
+
+  private void startLine()
+  {
+    lineStarted = false;
+    whitespaceAtBegin = true;
+    blankLine = true;
+    whitespaceLength = 0;
+  }
+
+  private void emit(char c)
+  {
+    if (ignoreCase)
+    {
+      c = Character.toLowerCase(c);
+    }
+
+    addOutput(c);
+  }
+
+  private void addOutput(int c)
+  {
+    if (outputLength == output.length)
+    {
+      output = Arrays.copyOf(output,
+                             output.length * 2);
+    }
+
+    output[outputLength++] = c;
+  }
+
+  void close()
+      throws IOException
+  {
+    reader.close();
+  }
+}
@@ -17,25 +17,46 @@
 package org.jmeld.util.node;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
 import org.jmeld.ui.text.FileDocument;
+import org.jmeld.ui.text.MappedFileDocument;
 
 public class FileNode
     extends JMeldNode
     implements BufferNode
 {
+  // Larger files are memory-mapped and shown read-only.
+  private static final long MAPPED_DOCUMENT_SIZE = 64L * 1024L * 1024L;
+
   private File file;
   private long fileLastModified;
   private FileDocument document;
-  private boolean exists;
+  // null if the file doesn't exist.
+  private BasicFileAttributes attributes;
 
   public FileNode(String name,
       File file)
+  {
+    this(name,
+         file,
+         readAttributes(file));
+  }
+
+  /**
+   * @param attributes
+   *          the attributes of the file if they are already known (for instance when scanning a directory). null if
+   *          the file doesn't exist.
+   */
+  public FileNode(String name,
+      File file,
+      BasicFileAttributes attributes)
   {
     super(name,
-          !file.isDirectory());
+          attributes == null || !attributes.isDirectory());
     this.file = file;
-
-    initialize();
+    this.attributes = attributes;
   }
 
   public File getFile()
@@ -52,7 +73,15 @@ public class FileNode
 
   public boolean exists()
   {
-    return exists;
+    return attributes != null;
+  }
+
+  /**
+   * The attributes of the file at the time this node was created or reset. null if the file doesn't exist.
+   */
+  public BasicFileAttributes getAttributes()
+  {
+    return attributes;
   }
 
   public FileDocument getDocument()
@@ -62,7 +91,14 @@ public class FileNode
       initialize();
       if (exists())
       {
-        document = new FileDocument(file);
+        if (attributes.size() >= MAPPED_DOCUMENT_SIZE)
+        {
+          document = new MappedFileDocument(file);
+        }
+        else
+        {
+          document = new FileDocument(file);
+        }
         fileLastModified = file.lastModified();
       }
     }
@@ -73,7 +109,7 @@ public class FileNode
   @Override
   public long getSize()
   {
-    return file.length();
+    return attributes == null ? 0 : attributes.size();
   }
 
   private boolean isDocumentOutOfDate()
@@ -97,7 +133,20 @@ public class FileNode
 
   private void initialize()
   {
-    exists = file.exists();
+    attributes = readAttributes(file);
+  }
+
+  private static BasicFileAttributes readAttributes(File file)
+  {
+    try
+    {
+      return Files.readAttributes(file.toPath(),
+                                  BasicFileAttributes.class);
+    }
+    catch (IOException ex)
+    {
+      return null;
+    }
   }
 
   public boolean isReadonly()
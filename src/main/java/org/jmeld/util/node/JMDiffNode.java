@@ -3,6 +3,7 @@ package org.jmeld.util.node;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Enumeration;
 import java.util.List;
 import javax.swing.tree.TreeNode;
@@ -13,6 +14,7 @@ import org.jmeld.settings.JMeldSettings;
 import org.jmeld.ui.StatusBar;
 import org.jmeld.ui.text.BufferDocumentIF;
 import org.jmeld.util.Ignore;
+import org.jmeld.util.file.CompareStatistics;
 import org.jmeld.util.file.CompareUtil;
 import org.jmeld.util.file.cmd.AbstractCmd;
 import org.jmeld.util.file.cmd.CopyFileCmd;
@@ -93,6 +95,24 @@ public class JMDiffNode
     child.setParent(this);
   }
 
+  public void removeChild(JMDiffNode child)
+  {
+    children.remove(child);
+    child.setParent(null);
+  }
+
+  /**
+   * Sort the children (and their children) by name.
+   */
+  public void sortChildren()
+  {
+    children.sort(Comparator.comparing(JMDiffNode::getName));
+    for (JMDiffNode child : children)
+    {
+      child.sortChildren();
+    }
+  }
+
   private void setParent(JMDiffNode parent)
   {
     this.parent = parent;
@@ -238,6 +258,15 @@ public class JMDiffNode
   }
 
   public void compareContents()
+  {
+    compareContents(new CompareStatistics());
+  }
+
+  /**
+   * @param statistics
+   *          counts the stage at which the comparison of the files has been decided.
+   */
+  public void compareContents(CompareStatistics statistics)
   {
     boolean equals;
 
@@ -267,7 +296,8 @@ public class JMDiffNode
 
     equals = CompareUtil.contentEquals(nodeLeft,
                                        nodeRight,
-                                       ignore);
+                                       ignore,
+                                       statistics);
     setCompareState(equals ? Compare.Equal : Compare.NotEqual);
   }
 
@@ -0,0 +1,183 @@
+/*
+ * Copyright  2002-2004 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.jmeld.tools.ant;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.apache.jmeld.tools.ant.types.selectors.SelectorUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DirectoryScannerTest
+{
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+  private File root;
+
+  @Before
+  public void createTree()
+      throws Exception
+  {
+    root = folder.getRoot();
+    for (String name : Arrays.asList("src/A.java", "src/a/B.java", "src/a/b/C.java", "src/a/b/c.txt", "src/test/T.java",
+        "doc/index.html", "doc/src/D.java", "build/A.class", "build/src/E.java", "CVS/Entries", "src/CVS/Entries",
+        "README", "x/y/z/Z.java"))
+    {
+      Files.createDirectories(new File(root,
+                                       name).getParentFile().toPath());
+      Files.createFile(new File(root,
+                                name).toPath());
+    }
+  }
+
+  @Test
+  public void scanIncludesTheMatchingFiles()
+      throws Exception
+  {
+    check(Arrays.asList("src/**/*.java"),
+          null);
+    check(Arrays.asList("**/*.java"),
+          Arrays.asList("build/"));
+    check(Arrays.asList("src/a/*/*", "doc/*"),
+          Arrays.asList("**/*.txt"));
+    check(null,
+          Arrays.asList("**/CVS/**", "build/**"));
+    check(Arrays.asList("**/src/**"),
+          Arrays.asList("src/a/"));
+  }
+
+  @Test
+  public void scanSkipsDirectoriesWithoutIncludedFiles()
+  {
+    DirectoryScanner scanner;
+
+    scanner = createScanner(Arrays.asList("src/**/*.java", "x/y/*.java"),
+                            Arrays.asList("build/**", "src/CVS/"));
+
+    assertTrue(scanner.couldHoldIncluded("src"));
+    assertTrue(scanner.couldHoldIncluded(getName("src/a/b")));
+    assertTrue(scanner.couldHoldIncluded("x"));
+    assertTrue(scanner.couldHoldIncluded(getName("x/y")));
+    assertFalse(scanner.couldHoldIncluded(getName("x/y/z")));
+    assertFalse(scanner.couldHoldIncluded("doc"));
+    assertFalse(scanner.couldHoldIncluded("build"));
+
+    assertTrue(scanner.isScannedDirectory(getName("src/a")));
+    assertFalse(scanner.isScannedDirectory(getName("src/CVS")));
+    assertFalse(scanner.isScannedDirectory("doc"));
+  }
+
+  private void check(List<String> includes,
+      List<String> excludes)
+      throws Exception
+  {
+    DirectoryScanner scanner;
+    List<String> expected;
+
+    scanner = createScanner(includes,
+                            excludes);
+    scanner.scan();
+
+    expected = walk(includes == null ? Arrays.asList("**") : normalize(includes),
+                    excludes == null ? Collections.<String> emptyList() : normalize(excludes));
+    assertEquals(includes + " " + excludes,
+                 expected,
+                 new ArrayList<String>(scanner.getIncludedFiles()));
+  }
+
+  /**
+   * @return the files that match an include and no exclude, without any pruning.
+   */
+  private List<String> walk(List<String> includes,
+      List<String> excludes)
+      throws Exception
+  {
+    try (Stream<Path> paths = Files.walk(root.toPath()))
+    {
+      return paths.filter(Files::isRegularFile).map(path -> root.toPath().relativize(path).toString())
+          .filter(name -> matches(includes,
+                                  name) && !matches(excludes,
+                                                    name))
+          .sorted().collect(Collectors.toList());
+    }
+  }
+
+  private boolean matches(List<String> patterns,
+      String name)
+  {
+    for (String pattern : patterns)
+    {
+      if (SelectorUtils.matchPath(pattern,
+                                  name))
+      {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  private DirectoryScanner createScanner(List<String> includes,
+      List<String> excludes)
+  {
+    DirectoryScanner scanner;
+
+    scanner = new DirectoryScanner();
+    scanner.setBasedir(root);
+    scanner.setIncludes(includes);
+    scanner.setExcludes(excludes);
+
+    return scanner;
+  }
+
+  private List<String> normalize(List<String> patterns)
+  {
+    List<String> result;
+
+    result = new ArrayList<String>();
+    for (String pattern : patterns)
+    {
+      pattern = getName(pattern);
+      if (pattern.endsWith(File.separator))
+      {
+        pattern += "**";
+      }
+      result.add(pattern);
+    }
+
+    return result;
+  }
+
+  private String getName(String name)
+  {
+    return name.replace('/',
+                        File.separatorChar);
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright  2002-2004 The Apache Software Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.jmeld.tools.ant.types.selectors;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+public class PatternMatcherTest
+{
+  private static final List<String> PATTERNS = Arrays.asList("**", "**/x/**", "*.java", "**/*.java", "a/*/b", "a/b/",
+      "build/**", "src/**/test/*.java", "A/B", "?.txt", "/abs/**", "**/CVS", "a/**/b/**/c", "x*/**/y?");
+  private static final List<String> PATHS = Arrays.asList("", "a", "a/b", "a/x/b", "a/x/y/b", "x", "x/y", "q/x/z",
+      "Foo.java", "src/Foo.java", "src/a/test/T.java", "src/test/T.java", "src/test/a/T.java", "A/B", "a/B", "build",
+      "build/c/d", "1.txt", "12.txt", "/abs/f", "abs/f", "CVS", "m/CVS", "m/CVS/n", "a/b/c", "a/q/b/r/c", "a/b/b/c",
+      "xa/y1", "xa/m/n/yz", "xa/m/n/y");
+
+  @Test
+  public void everyPatternMatchesLikeSelectorUtils()
+  {
+    for (boolean isCaseSensitive : new boolean[] { true, false })
+    {
+      for (String pattern : PATTERNS)
+      {
+        check(Collections.singletonList(pattern),
+              isCaseSensitive);
+      }
+    }
+  }
+
+  @Test
+  public void allPatternsMatchLikeSelectorUtils()
+  {
+    check(PATTERNS.subList(1,
+                           PATTERNS.size()),
+          true);
+    check(PATTERNS.subList(1,
+                           PATTERNS.size()),
+          false);
+  }
+
+  private void check(List<String> patterns,
+      boolean isCaseSensitive)
+  {
+    List<String> normalizedPatterns;
+    PatternMatcher matcher;
+    boolean expected;
+
+    normalizedPatterns = new ArrayList<String>();
+    for (String pattern : patterns)
+    {
+      normalizedPatterns.add(normalize(pattern));
+    }
+
+    matcher = new PatternMatcher(normalizedPatterns,
+                                 isCaseSensitive);
+    for (String path : PATHS)
+    {
+      path = normalize(path);
+
+      expected = false;
+      for (String pattern : normalizedPatterns)
+      {
+        expected |= SelectorUtils.matchPath(pattern,
+                                            path,
+                                            isCaseSensitive);
+      }
+
+      assertEquals(normalizedPatterns + " " + path + " caseSensitive=" + isCaseSensitive,
+                   expected,
+                   matcher.matches(path));
+    }
+  }
+
+  private String normalize(String path)
+  {
+    return path.replace('/',
+                        File.separatorChar);
+  }
+}
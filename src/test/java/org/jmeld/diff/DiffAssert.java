@@ -0,0 +1,161 @@
+/*
+   JMeld is a visual diff and merge tool.
+   Copyright (C) 2007  Kees Kuip
+   This library is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Lesser General Public
+   License as published by the Free Software Foundation; either
+   version 2.1 of the License, or (at your option) any later version.
+   This library is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Lesser General Public License for more details.
+   You should have received a copy of the GNU Lesser General Public
+   License along with this library; if not, write to the Free Software
+   Foundation, Inc., 51 Franklin Street, Fifth Floor,
+   Boston, MA  02110-1301  USA
+ */
+package org.jmeld.diff;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+/**
+ * Checks a diff without depending on the choices an algorithm makes.
+ */
+final class DiffAssert
+{
+  private DiffAssert()
+  {
+  }
+
+  /**
+   * Assert that the delta's are sorted, don't overlap and that all lines between them are equal.
+   */
+  static void assertValid(Object[] org,
+      Object[] rev,
+      JMRevision revision)
+  {
+    int orgIndex;
+    int revIndex;
+    JMChunk orgChunk;
+    JMChunk revChunk;
+
+    orgIndex = 0;
+    revIndex = 0;
+    for (JMDelta delta : revision.getDeltas())
+    {
+      orgChunk = delta.getOriginal();
+      revChunk = delta.getRevised();
+      assertTrue(delta.toString(),
+                 orgChunk.getSize() > 0 || revChunk.getSize() > 0);
+      assertEquals(delta.toString(),
+                   orgChunk.getAnchor() - orgIndex,
+                   revChunk.getAnchor() - revIndex);
+      assertEqualLines(org,
+                       orgIndex,
+                       rev,
+                       revIndex,
+                       orgChunk.getAnchor() - orgIndex);
+
+      orgIndex = orgChunk.getAnchor() + orgChunk.getSize();
+      revIndex = revChunk.getAnchor() + revChunk.getSize();
+    }
+
+    assertEquals(org.length - orgIndex,
+                 rev.length - revIndex);
+    assertEqualLines(org,
+                     orgIndex,
+                     rev,
+                     revIndex,
+                     org.length - orgIndex);
+  }
+
+  /**
+   * @return the number of lines that are removed and added.
+   */
+  static int getChangedLines(JMRevision revision)
+  {
+    int result;
+
+    result = 0;
+    for (JMDelta delta : revision.getDeltas())
+    {
+      result += delta.getOriginal().getSize() + delta.getRevised().getSize();
+    }
+
+    return result;
+  }
+
+  /**
+   * @return lines with values between 0 and numberOfValues.
+   */
+  static Integer[] createLines(Random random,
+      int size,
+      int numberOfValues)
+  {
+    Integer[] result;
+
+    result = new Integer[size];
+    for (int i = 0; i < size; i++)
+    {
+      result[i] = random.nextInt(numberOfValues);
+    }
+
+    return result;
+  }
+
+  /**
+   * @return a copy of the lines with some lines changed, removed and added.
+   */
+  static Integer[] edit(Random random,
+      Integer[] lines,
+      int numberOfEdits,
+      int numberOfValues)
+  {
+    Integer[] result;
+    int index;
+    int size;
+
+    result = lines;
+    for (int i = 0; i < numberOfEdits; i++)
+    {
+      lines = result;
+      index = random.nextInt(lines.length + 1);
+      size = Math.min(random.nextInt(4),
+                      lines.length - index);
+      result = new Integer[lines.length - size + random.nextInt(4)];
+      System.arraycopy(lines,
+                       0,
+                       result,
+                       0,
+                       index);
+      for (int j = index; j < result.length - (lines.length - index - size); j++)
+      {
+        result[j] = random.nextInt(numberOfValues);
+      }
+      System.arraycopy(lines,
+                       index + size,
+                       result,
+                       result.length - (lines.length - index - size),
+                       lines.length - index - size);
+    }
+
+    return result;
+  }
+
+  private static void assertEqualLines(Object[] org,
+      int orgIndex,
+      Object[] rev,
+      int revIndex,
+      int size)
+  {
+    for (int i = 0; i < size; i++)
+    {
+      assertEquals("line " + (orgIndex + i),
+                   org[orgIndex + i],
+                   rev[revIndex + i]);
+    }
+  }
+}
@@ -0,0 +1,141 @@
+/*
+   JMeld is a visual diff and merge tool.
+   Copyright (C) 2007  Kees Kuip
+   This library is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Lesser General Public
+   License as published by the Free Software Foundation; either
+   version 2.1 of the License, or (at your option) any later version.
+   This library is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Lesser General Public License for more details.
+   You should have received a copy of the GNU Lesser General Public
+   License along with this library; if not, write to the Free Software
+   Foundation, Inc., 51 Franklin Street, Fifth Floor,
+   Boston, MA  02110-1301  USA
+ */
+package org.jmeld.diff;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import org.junit.Test;
+
+public class Eclipse2DiffTest
+{
+  @Test
+  public void limitedDiffsAreValid()
+      throws Exception
+  {
+    Random random;
+    Integer[] org;
+    Integer[] rev;
+    int changedLines;
+    JMRevision revision;
+
+    random = new Random(1);
+    for (int i = 0; i < 200; i++)
+    {
+      org = DiffAssert.createLines(random,
+                                   random.nextInt(300),
+                                   5 + random.nextInt(50));
+      rev = DiffAssert.edit(random,
+                            org,
+                            random.nextInt(50),
+                            50);
+
+      revision = diff(org,
+                      rev,
+                      0);
+      DiffAssert.assertValid(org,
+                             rev,
+                             revision);
+      changedLines = DiffAssert.getChangedLines(revision);
+
+      // A smaller limit finds fewer differences so more lines are changed.
+      for (long memoryLimit : new long[] { 10000, 5000, 3000 })
+      {
+        revision = diff(org,
+                        rev,
+                        memoryLimit);
+        DiffAssert.assertValid(org,
+                               rev,
+                               revision);
+        assertTrue(DiffAssert.getChangedLines(revision) >= changedLines);
+      }
+    }
+  }
+
+  @Test
+  public void limitThatCanNotHoldTheResultChangesEverything()
+      throws Exception
+  {
+    Random random;
+    Integer[] org;
+    Integer[] rev;
+
+    random = new Random(2);
+    org = DiffAssert.createLines(random,
+                                 1000,
+                                 10);
+    rev = DiffAssert.edit(random,
+                          org,
+                          10,
+                          10);
+    // Make sure there is no common prefix or suffix.
+    org[0] = -1;
+    org[org.length - 1] = -1;
+
+    assertEquals(org.length + rev.length,
+                 DiffAssert.getChangedLines(diff(org,
+                                                 rev,
+                                                 1)));
+  }
+
+  @Test
+  public void limitIsUsedForLargeDiffs()
+      throws Exception
+  {
+    Random random;
+    Integer[] org;
+    Integer[] rev;
+    JMRevision revision;
+    JMRevision limitedRevision;
+
+    // Small enough that the diff without a limit is not capped in time.
+    random = new Random(3);
+    org = DiffAssert.createLines(random,
+                                 8000,
+                                 1000);
+    rev = DiffAssert.edit(random,
+                          org,
+                          2000,
+                          1000);
+
+    revision = diff(org,
+                    rev,
+                    0);
+    limitedRevision = diff(org,
+                           rev,
+                           100000);
+    DiffAssert.assertValid(org,
+                           rev,
+                           limitedRevision);
+    assertTrue(DiffAssert.getChangedLines(limitedRevision) > DiffAssert.getChangedLines(revision));
+  }
+
+  private JMRevision diff(Integer[] org,
+      Integer[] rev,
+      long memoryLimit)
+      throws Exception
+  {
+    Eclipse2Diff diff;
+
+    diff = new Eclipse2Diff();
+    diff.setMemoryLimit(memoryLimit);
+
+    return diff.diff(org,
+                     rev);
+  }
+}
@@ -0,0 +1,148 @@
+/*
+   JMeld is a visual diff and merge tool.
+   Copyright (C) 2007  Kees Kuip
+   This library is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Lesser General Public
+   License as published by the Free Software Foundation; either
+   version 2.1 of the License, or (at your option) any later version.
+   This library is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Lesser General Public License for more details.
+   You should have received a copy of the GNU Lesser General Public
+   License along with this library; if not, write to the Free Software
+   Foundation, Inc., 51 Franklin Street, Fifth Floor,
+   Boston, MA  02110-1301  USA
+ */
+package org.jmeld.diff;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import org.junit.Test;
+
+public class HistogramDiffTest
+{
+  @Test
+  public void randomDiffsAreValid()
+      throws Exception
+  {
+    Random random;
+    Integer[] org;
+    Integer[] rev;
+
+    random = new Random(1);
+    // Few values use the fallback, many values use the anchors.
+    for (int numberOfValues : new int[] { 2, 5, 50, 100000 })
+    {
+      for (int i = 0; i < 200; i++)
+      {
+        org = DiffAssert.createLines(random,
+                                     random.nextInt(300),
+                                     numberOfValues);
+        rev = DiffAssert.edit(random,
+                              org,
+                              random.nextInt(20),
+                              numberOfValues);
+        DiffAssert.assertValid(org,
+                               rev,
+                               new HistogramDiff().diff(org,
+                                                        rev));
+      }
+    }
+  }
+
+  @Test
+  public void uniqueLinesGiveTheLongestCommonSubsequence()
+      throws Exception
+  {
+    Random random;
+    Integer[] org;
+    Integer[] rev;
+
+    // With unique lines every anchor is part of the longest common
+    //   subsequence, so the result is the same as the result of an LCS.
+    random = new Random(2);
+    for (int i = 0; i < 100; i++)
+    {
+      org = createUniqueLines(1000,
+                              0);
+      rev = createUniqueLines(1000,
+                              0);
+      for (int j = 0; j < 20; j++)
+      {
+        rev[random.nextInt(rev.length)] = -1 - j;
+      }
+
+      assertEquals(new Eclipse2Diff().diff(org,
+                                           rev).getDeltas().toString(),
+                   new HistogramDiff().diff(org,
+                                            rev).getDeltas().toString());
+    }
+  }
+
+  @Test
+  public void differentLinesAreOneChange()
+      throws Exception
+  {
+    JMRevision revision;
+
+    revision = new HistogramDiff().diff(createUniqueLines(1000,
+                                                          0),
+                                        createUniqueLines(500,
+                                                          1000));
+    assertEquals(1,
+                 revision.getDeltas().size());
+    assertEquals(1500,
+                 DiffAssert.getChangedLines(revision));
+  }
+
+  @Test
+  public void equalLinesHaveNoDeltas()
+      throws Exception
+  {
+    assertTrue(new HistogramDiff().diff(createUniqueLines(1000,
+                                                          0),
+                                        createUniqueLines(1000,
+                                                          0)).getDeltas().isEmpty());
+  }
+
+  @Test(timeout = 10000)
+  public void manySmallChangesAreNotQuadratic()
+      throws Exception
+  {
+    Integer[] org;
+    Integer[] rev;
+    JMRevision revision;
+
+    // The anchors near the middle of a region split it in halves.
+    org = createUniqueLines(200000,
+                            0);
+    rev = createUniqueLines(200000,
+                            0);
+    for (int i = 0; i < rev.length; i += 2)
+    {
+      rev[i] = -1 - i;
+    }
+
+    revision = new HistogramDiff().diff(org,
+                                        rev);
+    assertEquals(100000,
+                 revision.getDeltas().size());
+  }
+
+  private Integer[] createUniqueLines(int size,
+      int first)
+  {
+    Integer[] result;
+
+    result = new Integer[size];
+    for (int i = 0; i < size; i++)
+    {
+      result[i] = first + i;
+    }
+
+    return result;
+  }
+}
@@ -0,0 +1,107 @@
+/*
+   JMeld is a visual diff and merge tool.
+   Copyright (C) 2007  Kees Kuip
+   This library is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Lesser General Public
+   License as published by the Free Software Foundation; either
+   version 2.1 of the License, or (at your option) any later version.
+   This library is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Lesser General Public License for more details.
+   You should have received a copy of the GNU Lesser General Public
+   License along with this library; if not, write to the Free Software
+   Foundation, Inc., 51 Franklin Street, Fifth Floor,
+   Boston, MA  02110-1301  USA
+ */
+package org.jmeld.diff;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jmeld.JMeldException;
+import org.jmeld.util.Ignore;
+import org.junit.Test;
+
+public class JMDiffTest
+{
+  @Test
+  public void algorithmsStopWhenCancelled()
+      throws Exception
+  {
+    JMDiffAlgorithmType[] types;
+    JMDiffAlgorithmIF algorithm;
+    AtomicInteger polls;
+
+    polls = new AtomicInteger();
+    types = new JMDiffAlgorithmType[] { JMDiffAlgorithmType.MYERS, JMDiffAlgorithmType.ECLIPSE2,
+        JMDiffAlgorithmType.HISTOGRAM };
+    for (JMDiffAlgorithmType type : types)
+    {
+      // Cancel at the second poll so the algorithm is stopped while it is
+      //   computing and not before it has started.
+      polls.set(0);
+      algorithm = type.createAlgorithm();
+      algorithm.setCancelCheck(() -> polls.incrementAndGet() > 1);
+      try
+      {
+        algorithm.diff(createLines(2000,
+                                   7),
+                       createLines(2000,
+                                   5));
+        fail(type + " was not cancelled");
+      }
+      catch (JMeldException ex)
+      {
+        assertTrue(type + " failed: " + ex.getCause(),
+                   ex.getCause() instanceof CancellationException);
+      }
+      catch (CancellationException ex)
+      {
+      }
+
+      assertEquals(type.toString(),
+                   2,
+                   polls.get());
+    }
+  }
+
+  @Test
+  public void interruptedDiffIsCancelled()
+  {
+    Thread.currentThread().interrupt();
+    try
+    {
+      new JMDiff(JMDiffAlgorithmType.HISTOGRAM).diff(createLines(2000,
+                                                                 7),
+                                                     createLines(2000,
+                                                                 5),
+                                                     Ignore.NULL_IGNORE);
+      fail("diff was not cancelled");
+    }
+    catch (JMeldException ex)
+    {
+    }
+    finally
+    {
+      Thread.interrupted();
+    }
+  }
+
+  private Integer[] createLines(int size,
+      int period)
+  {
+    Integer[] result;
+
+    result = new Integer[size];
+    for (int i = 0; i < size; i++)
+    {
+      result[i] = i % period;
+    }
+
+    return result;
+  }
+}
@@ -0,0 +1,197 @@
+/*
+   JMeld is a visual diff and merge tool.
+   Copyright (C) 2007  Kees Kuip
+   This library is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Lesser General Public
+   License as published by the Free Software Foundation; either
+   version 2.1 of the License, or (at your option) any later version.
+   This library is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Lesser General Public License for more details.
+   You should have received a copy of the GNU Lesser General Public
+   License along with this library; if not, write to the Free Software
+   Foundation, Inc., 51 Franklin Street, Fifth Floor,
+   Boston, MA  02110-1301  USA
+ */
+package org.jmeld.diff;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.jmeld.util.Ignore;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JMRevisionTest
+{
+  private List<String> org;
+  private List<String> rev;
+  private JMRevision revision;
+  private int editCount;
+
+  @Before
+  public void createRevision()
+      throws Exception
+  {
+    org = new ArrayList<String>();
+    for (int i = 0; i < 100; i++)
+    {
+      org.add("line " + i);
+    }
+
+    // Delta's at 10 (change), 30 (add), 50 (delete) and 99 (change).
+    rev = new ArrayList<String>(org);
+    rev.set(10,
+            "changed 10");
+    rev.addAll(30,
+               Arrays.asList("added 1", "added 2"));
+    rev.subList(52,
+                55).clear();
+    rev.set(rev.size() - 1,
+            "changed 99");
+
+    revision = diff();
+    assertEquals(4,
+                 revision.getDeltas().size());
+  }
+
+  @Test
+  public void editAtTheStart()
+      throws Exception
+  {
+    edit(true,
+         0,
+         1,
+         1);
+    edit(true,
+         0,
+         0,
+         2);
+    edit(false,
+         0,
+         3,
+         0);
+  }
+
+  @Test
+  public void editInTheMiddle()
+      throws Exception
+  {
+    edit(true,
+         40,
+         1,
+         1);
+    edit(false,
+         70,
+         0,
+         3);
+    edit(true,
+         20,
+         2,
+         0);
+  }
+
+  @Test
+  public void editAtTheEnd()
+      throws Exception
+  {
+    edit(true,
+         99,
+         1,
+         0);
+    edit(false,
+         rev.size(),
+         0,
+         2);
+    edit(true,
+         org.size() - 2,
+         2,
+         1);
+  }
+
+  @Test
+  public void editAcrossDeltas()
+      throws Exception
+  {
+    // Next to a delta, over a delta and over several delta's.
+    edit(true,
+         11,
+         1,
+         1);
+    edit(true,
+         8,
+         5,
+         2);
+    edit(false,
+         25,
+         40,
+         1);
+    edit(true,
+         5,
+         60,
+         0);
+  }
+
+  @Test
+  public void editThatRemovesADelta()
+      throws Exception
+  {
+    org.set(10,
+            "changed 10");
+    assertTrue(revision.update(org.toArray(),
+                               rev.toArray(),
+                               true,
+                               10,
+                               0));
+    check();
+    assertEquals(3,
+                 revision.getDeltas().size());
+  }
+
+  /**
+   * Replace lines on one side, update the revision incrementally and compare it with a full diff.
+   */
+  private void edit(boolean original,
+      int startLine,
+      int removed,
+      int added)
+      throws Exception
+  {
+    List<String> lines;
+
+    lines = original ? org : rev;
+    lines.subList(startLine,
+                  startLine + removed).clear();
+    for (int i = 0; i < added; i++)
+    {
+      lines.add(startLine + i,
+                "edit " + editCount++);
+    }
+
+    assertTrue(revision.update(org.toArray(),
+                               rev.toArray(),
+                               original,
+                               startLine,
+                               added - removed));
+    check();
+  }
+
+  private void check()
+      throws Exception
+  {
+    assertEquals(diff().getDeltas().toString(),
+                 revision.getDeltas().toString());
+  }
+
+  private JMRevision diff()
+      throws Exception
+  {
+    return new JMDiff(JMDiffAlgorithmType.ECLIPSE2).diff(org,
+                                                         rev,
+                                                         Ignore.NULL_IGNORE);
+  }
+}
@@ -0,0 +1,155 @@
+/*
+   JMeld is a visual diff and merge tool.
+   Copyright (C) 2007  Kees Kuip
+   This library is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Lesser General Public
+   License as published by the Free Software Foundation; either
+   version 2.1 of the License, or (at your option) any later version.
+   This library is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Lesser General Public License for more details.
+   You should have received a copy of the GNU Lesser General Public
+   License along with this library; if not, write to the Free Software
+   Foundation, Inc., 51 Franklin Street, Fifth Floor,
+   Boston, MA  02110-1301  USA
+ */
+package org.jmeld.ui.text;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AbstractBufferDocumentTest
+{
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void swappedBlocksAreChanged()
+      throws Exception
+  {
+    FileDocument document;
+
+    document = read("X\nA\nX\nB\nX\n");
+    replace(document,
+            2,
+            "B");
+    replace(document,
+            6,
+            "A");
+
+    // The digest of "X,B,X,A,X" is equal to the digest of "X,A,X,B,X".
+    assertTrue(document.isChanged());
+  }
+
+  @Test
+  public void swappedMethodsAreChanged()
+      throws Exception
+  {
+    FileDocument document;
+    String first;
+    String second;
+
+    first = "void a()\n{\n}\n";
+    second = "void b()\n{\n}\n";
+    document = read("\n" + first + "\n" + second + "\n");
+    replace(document,
+            1,
+            second + "\n" + first);
+
+    assertTrue(document.isChanged());
+  }
+
+  @Test
+  public void restoredContentIsNotChanged()
+      throws Exception
+  {
+    FileDocument document;
+
+    document = read("X\nA\nX\nB\nX\n");
+    replace(document,
+            2,
+            "B");
+    assertTrue(document.isChanged());
+
+    replace(document,
+            2,
+            "A");
+    assertFalse(document.isChanged());
+  }
+
+  @Test
+  public void mappedLinesAreEqualToFileLines()
+      throws Exception
+  {
+    File file;
+    FileDocument document;
+    MappedFileDocument mappedDocument;
+    AbstractBufferDocument.Line[] lines;
+    AbstractBufferDocument.Line[] mappedLines;
+
+    file = folder.newFile();
+    Files.write(file.toPath(),
+                "a\r\nb\n\nlast".getBytes(StandardCharsets.UTF_8));
+
+    document = new FileDocument(file);
+    document.read();
+    mappedDocument = new MappedFileDocument(file);
+    mappedDocument.read();
+
+    lines = document.getLines();
+    mappedLines = mappedDocument.getLines();
+    assertEquals(lines.length,
+                 mappedLines.length);
+    for (int i = 0; i < lines.length; i++)
+    {
+      assertEquals(lines[i].toString(),
+                   mappedLines[i].toString());
+      assertEquals(lines[i],
+                   mappedLines[i]);
+      assertEquals(lines[i].hashCode(),
+                   mappedLines[i].hashCode());
+      assertEquals(document.getOffsetForLine(i),
+                   mappedDocument.getOffsetForLine(i));
+      assertEquals(i,
+                   mappedDocument.getLineForOffset(mappedDocument.getOffsetForLine(i)));
+    }
+  }
+
+  private FileDocument read(String text)
+      throws Exception
+  {
+    File file;
+    FileDocument document;
+
+    file = folder.newFile();
+    Files.write(file.toPath(),
+                text.getBytes(StandardCharsets.UTF_8));
+
+    document = new FileDocument(file);
+    document.read();
+    assertFalse(document.isChanged());
+
+    return document;
+  }
+
+  private void replace(FileDocument document,
+      int offset,
+      String text)
+      throws Exception
+  {
+    document.getDocument().remove(offset,
+                                  text.length());
+    document.getDocument().insertString(offset,
+                                        text,
+                                        null);
+  }
+}
@@ -0,0 +1,164 @@
+/*
+   JMeld is a visual diff and merge tool.
+   Copyright (C) 2007  Kees Kuip
+   This library is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Lesser General Public
+   License as published by the Free Software Foundation; either
+   version 2.1 of the License, or (at your option) any later version.
+   This library is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Lesser General Public License for more details.
+   You should have received a copy of the GNU Lesser General Public
+   License along with this library; if not, write to the Free Software
+   Foundation, Inc., 51 Franklin Street, Fifth Floor,
+   Boston, MA  02110-1301  USA
+ */
+package org.jmeld.util.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.jmeld.util.node.JMDiffNode;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DirectoryDiffTest
+{
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+  private File cacheFile;
+  private File left;
+  private File right;
+
+  @Before
+  public void createDirectories()
+      throws Exception
+  {
+    // Don't use (or change) the cache of the user.
+    cacheFile = new File(folder.getRoot(),
+                         "cache.dat");
+    ContentHashCache.setFile(cacheFile);
+
+    left = folder.newFolder("left");
+    right = folder.newFolder("right");
+    for (int i = 0; i < 20; i++)
+    {
+      for (int j = 0; j < 20; j++)
+      {
+        // Files on both sides, files on one side and different files.
+        write(new File(left,
+                       "dir" + i + "/file" + j),
+              "content " + j);
+        write(new File(right,
+                       "dir" + (i + 10) + "/file" + j),
+              "content " + (j % 2));
+      }
+    }
+  }
+
+  @Test
+  public void nodesHaveTheExpectedState()
+  {
+    List<String> result;
+
+    result = diff(left,
+                  right);
+
+    // 10 directories with 20 files on one side, 10 directories with 20
+    //   files on both sides and the directories themselves.
+    assertEquals(30 * 20 + 30,
+                 result.size());
+    assertTrue(result.contains(getName("dir10/file0") + " " + JMDiffNode.Compare.Equal));
+    assertTrue(result.contains(getName("dir10/file1") + " " + JMDiffNode.Compare.Equal));
+    assertTrue(result.contains(getName("dir10/file3") + " " + JMDiffNode.Compare.NotEqual));
+    assertTrue(result.contains(getName("dir19/file2") + " " + JMDiffNode.Compare.NotEqual));
+    assertTrue(result.contains(getName("dir0/file0") + " " + JMDiffNode.Compare.RightMissing));
+    assertTrue(result.contains(getName("dir29/file19") + " " + JMDiffNode.Compare.LeftMissing));
+  }
+
+  @Test
+  public void runsHaveTheSameResult()
+  {
+    List<String> expected;
+
+    expected = diff(left,
+                    right);
+    // The next runs get the hashes of the equal files from the cache.
+    assertTrue(cacheFile.exists());
+    for (int run = 0; run < 5; run++)
+    {
+      assertEquals(expected,
+                   diff(left,
+                        right));
+    }
+  }
+
+  private String getName(String name)
+  {
+    return name.replace('/',
+                        File.separatorChar);
+  }
+
+  /**
+   * @return the name and the state of every node in the order of the tree.
+   */
+  private List<String> diff(File left,
+      File right)
+  {
+    DirectoryDiff diff;
+    List<String> result;
+
+    diff = new DirectoryDiff(left,
+                             right,
+                             null,
+                             DirectoryDiff.Mode.TWO_WAY);
+    diff.diff();
+
+    result = new ArrayList<String>();
+    collect(diff.getRootNode(),
+            result);
+
+    return result;
+  }
+
+  private void collect(JMDiffNode node,
+      List<String> result)
+  {
+    for (JMDiffNode child : node.getChildren())
+    {
+      result.add(child.getName() + " " + getCompareState(child));
+      collect(child,
+              result);
+    }
+  }
+
+  private JMDiffNode.Compare getCompareState(JMDiffNode node)
+  {
+    for (JMDiffNode.Compare state : JMDiffNode.Compare.values())
+    {
+      if (node.isCompareEqual(state))
+      {
+        return state;
+      }
+    }
+
+    return null;
+  }
+
+  private void write(File file,
+      String text)
+      throws Exception
+  {
+    file.getParentFile().mkdirs();
+    Files.write(file.toPath(),
+                text.getBytes(StandardCharsets.UTF_8));
+  }
+}